@@ -0,0 +1,134 @@
+package com.spring.hapi.fhirclient.bench;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.spring.hapi.fhirclient.Application;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Synthetic inputs shared by the benchmarks: large CapabilityStatements, search-set Bundles,
+ * generated YAML packs and an in-process WireMock FHIR server.
+ */
+final class BenchFixtures {
+  /** Params every generated resource advertises, so the shipped core pack validates. */
+  static final List<String> COMMON_PARAMS = List.of("identifier", "code", "date", "subject", "name", "birthdate");
+
+  private BenchFixtures() {}
+
+  /**
+   * R4 CapabilityStatement with {@code resources} resource types, each advertising {@link #COMMON_PARAMS}
+   * plus {@code extraParams} generated params ({@code p0..pN}) and the usual interactions.
+   */
+  static CapabilityStatement capabilityStatement(int resources, int extraParams) {
+    CapabilityStatement cs = new CapabilityStatement();
+    cs.setStatus(Enumerations.PublicationStatus.ACTIVE);
+    cs.setKind(CapabilityStatement.CapabilityStatementKind.INSTANCE);
+    cs.setFhirVersion(Enumerations.FHIRVersion._4_0_1);
+    CapabilityStatement.CapabilityStatementRestComponent rest = cs.addRest();
+    rest.setMode(CapabilityStatement.RestfulCapabilityMode.SERVER);
+    rest.addInteraction().setCode(CapabilityStatement.SystemRestfulInteraction.BATCH);
+    ResourceType[] types = ResourceType.values();
+    for (int i = 0; i < Math.min(resources, types.length); i++) {
+      CapabilityStatement.CapabilityStatementRestResourceComponent r = rest.addResource().setType(types[i].name());
+      r.addInteraction().setCode(CapabilityStatement.TypeRestfulInteraction.READ);
+      r.addInteraction().setCode(CapabilityStatement.TypeRestfulInteraction.SEARCHTYPE);
+      COMMON_PARAMS.forEach(p -> r.addSearchParam().setName(p).setType(Enumerations.SearchParamType.TOKEN));
+      for (int p = 0; p < extraParams; p++) {
+        r.addSearchParam().setName("p" + p).setType(Enumerations.SearchParamType.STRING);
+      }
+      r.addSearchInclude(types[i].name() + ":subject");
+    }
+    return cs;
+  }
+
+  /** Search-set Bundle of {@code entries} Observations with codings, values and references. */
+  static Bundle observationBundle(int entries) {
+    Bundle b = new Bundle().setType(Bundle.BundleType.SEARCHSET).setTotal(entries);
+    b.addLink().setRelation("self").setUrl("http://localhost/fhir/Observation?code=8480-6");
+    for (int i = 0; i < entries; i++) {
+      Observation o = new Observation();
+      o.setId("obs-" + i);
+      o.setStatus(Observation.ObservationStatus.FINAL);
+      o.addCategory(new CodeableConcept().addCoding(
+        new Coding("http://terminology.hl7.org/CodeSystem/observation-category", "vital-signs", "Vital Signs")));
+      o.setCode(new CodeableConcept().addCoding(new Coding("http://loinc.org", "8480-6", "Systolic blood pressure")));
+      o.setSubject(new Reference("Patient/p-" + (i % 50)));
+      o.setEffective(new DateTimeType("2024-01-" + String.format("%02d", i % 28 + 1) + "T10:00:00Z"));
+      o.setValue(new Quantity().setValue(100 + i % 60).setUnit("mmHg").setSystem("http://unitsofmeasure.org").setCode("mm[Hg]"));
+      b.addEntry().setFullUrl("http://localhost/fhir/Observation/obs-" + i).setResource(o)
+        .getSearch().setMode(Bundle.SearchEntryMode.MATCH);
+    }
+    return b;
+  }
+
+  static String json(FhirContext ctx, org.hl7.fhir.instance.model.api.IBaseResource resource) {
+    return ctx.newJsonParser().encodeResourceToString(resource);
+  }
+
+  /** YAML search pack with {@code searches} generated definitions. */
+  static String searchPackYaml(int searches) {
+    StringBuilder sb = new StringBuilder(searches * 256).append("pkg: \"bench\"\nsearches:\n");
+    for (int i = 0; i < searches; i++) {
+      sb.append("  search-").append(i).append(":\n")
+        .append("    resource: \"Observation\"\n")
+        .append("    path: \"/Observation\"\n")
+        .append("    params:\n")
+        .append("      code: \"${system}|${code").append(i % 10).append("}\"\n")
+        .append("      date: \"ge${since}\"\n")
+        .append("      subject: \"Patient/${patientId}\"\n")
+        .append("    count: 100\n")
+        .append("    summary: \"data\"\n")
+        .append("    sort: [\"-date\"]\n")
+        .append("    includes: [\"Observation:subject\"]\n")
+        .append("    elements: [\"id\", \"code\", \"value\"]\n");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Started WireMock server answering {@code /metadata} with a 150-resource CapabilityStatement and
+   * every search with a Bundle of {@code entries} Observations.
+   */
+  static WireMockServer stubServer(int entries) {
+    FhirContext ctx = FhirContext.forR4();
+    WireMockServer server = new WireMockServer(options().dynamicPort().disableRequestJournal());
+    server.start();
+    server.stubFor(get(urlPathEqualTo("/metadata")).willReturn(aResponse()
+      .withHeader("Content-Type", "application/fhir+json")
+      .withBody(json(ctx, capabilityStatement(150, 20)))));
+    server.stubFor(get(urlPathMatching("/(Patient|Observation)")).willReturn(aResponse()
+      .withHeader("Content-Type", "application/fhir+json")
+      .withBody(json(ctx, observationBundle(entries)))));
+    return server;
+  }
+
+  /** Application context pointed at {@code server}, with per-request logging interceptors off. */
+  static ConfigurableApplicationContext startContext(WireMockServer server) {
+    return new SpringApplicationBuilder(Application.class)
+      .web(WebApplicationType.NONE)
+      // command-line args, so they override application.yml
+      .run("--fhir-server.base-url=" + server.baseUrl(),
+        "--logging.file.name=target/jmh-app.log",
+        "--logging.level.root=WARN",
+        "--interceptors.logging.enabled=false",
+        "--interceptors.raw-url.enabled=false",
+        "--interceptors.request-log.enabled=false");
+  }
+}
@@ -0,0 +1,53 @@
+package com.spring.hapi.fhirclient.bench;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.spring.hapi.fhirclient.search.StreamingBundleReader;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a search-set page of {@code entries} Observations: HAPI's full Bundle parse versus the
+ * entry-at-a-time {@link StreamingBundleReader}. Run with {@code -prof gc} to compare allocation.
+ *
+ * Run: {@code mvn -Pbench test-compile exec:exec -Djmh.args="BundleParseBenchmark -prof gc"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BundleParseBenchmark {
+
+  @Param({"100", "1000"})
+  int entries;
+
+  FhirContext ctx;
+  byte[] body;
+  StreamingBundleReader reader;
+
+  @Setup
+  public void setUp() {
+    ctx = FhirContext.forR4();
+    body = BenchFixtures.json(ctx, BenchFixtures.observationBundle(entries)).getBytes(StandardCharsets.UTF_8);
+    reader = new StreamingBundleReader();
+  }
+
+  @Benchmark
+  public Bundle hapiParse() {
+    IParser parser = ctx.newJsonParser();
+    return parser.parseResource(Bundle.class, new ByteArrayInputStream(body));
+  }
+
+  @Benchmark
+  public String streamingRead(Blackhole bh) throws IOException {
+    return reader.read(new ByteArrayInputStream(body), ctx.newJsonParser(), bh::consume);
+  }
+}
@@ -0,0 +1,71 @@
+package com.spring.hapi.fhirclient.bench;
+
+import com.spring.hapi.fhirclient.metadata.CapabilityIndex;
+import com.spring.hapi.fhirclient.metadata.CapabilitySupport;
+import com.spring.hapi.fhirclient.search.SearchDef;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CapabilitySupport#assertSupported} against large CapabilityStatements: scanning the statement
+ * on every call versus the pre-built {@link CapabilityIndex}, plus the one-off cost of building the index.
+ *
+ * <p>The definition targets the last resource type in the statement and uses {@code params} params,
+ * so the statement scan is worst case.</p>
+ *
+ * Run: {@code mvn -Pbench test-compile exec:exec -Djmh.args=CapabilitySupportBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CapabilitySupportBenchmark {
+
+  @Param({"50", "150"})
+  int resources;
+
+  @Param({"20", "100"})
+  int extraParams;
+
+  @Param({"3", "10"})
+  int params;
+
+  CapabilityStatement cs;
+  CapabilityIndex index;
+  SearchDef def;
+
+  @Setup
+  public void setUp() {
+    cs = BenchFixtures.capabilityStatement(resources, extraParams);
+    index = CapabilityIndex.of(cs);
+    def = new SearchDef();
+    def.setResource(cs.getRestFirstRep().getResource().get(cs.getRestFirstRep().getResource().size() - 1).getType());
+    Map<String, String> p = new LinkedHashMap<>();
+    for (int i = 0; i < params; i++) p.put("p" + (extraParams - 1 - i), "${v" + i + "}");
+    def.setParams(p);
+  }
+
+  @Benchmark
+  public SearchDef statementScan() {
+    CapabilitySupport.assertSupported(cs, def);
+    return def;
+  }
+
+  @Benchmark
+  public SearchDef indexLookup() {
+    CapabilitySupport.assertSupported(index, def);
+    return def;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public CapabilityIndex indexBuild() {
+    return CapabilityIndex.of(cs);
+  }
+}
@@ -0,0 +1,62 @@
+package com.spring.hapi.fhirclient.bench;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.spring.hapi.fhirclient.bootstrap.VersionAdaptiveClientFactory;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link VersionAdaptiveClientFactory#create(String)} against an in-process stub server
+ * (one /metadata fetch, FhirContext construction, client set-up, CapabilityStatement parse and store),
+ * of {@link VersionAdaptiveClientFactory#createFromSnapshot(String)} from the stored statement, and of
+ * a cold {@link FhirContext} on its own (construction plus the first model scan).
+ *
+ * Run: {@code mvn -Pbench test-compile exec:exec -Djmh.args=ClientFactoryBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientFactoryBenchmark {
+
+  WireMockServer server;
+  ConfigurableApplicationContext context;
+  VersionAdaptiveClientFactory factory;
+
+  @Setup
+  public void setUp() {
+    server = BenchFixtures.stubServer(10);
+    context = BenchFixtures.startContext(server);
+    factory = context.getBean(VersionAdaptiveClientFactory.class);
+    factory.create(server.baseUrl());
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+    server.stop();
+  }
+
+  @Benchmark
+  public VersionedClient create() {
+    return factory.create(server.baseUrl());
+  }
+
+  @Benchmark
+  public VersionedClient createFromSnapshot() {
+    return factory.createFromSnapshot(server.baseUrl()).orElseThrow();
+  }
+
+  @Benchmark
+  public Object coldFhirContext() {
+    FhirContext ctx = FhirContext.forR4();
+    return ctx.getResourceDefinition(Patient.class);
+  }
+}
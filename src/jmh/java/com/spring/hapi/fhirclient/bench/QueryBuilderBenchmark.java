@@ -0,0 +1,83 @@
+package com.spring.hapi.fhirclient.bench;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import com.spring.hapi.fhirclient.search.CompiledSearch;
+import com.spring.hapi.fhirclient.search.QueryBuilder;
+import com.spring.hapi.fhirclient.search.SearchDef;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares per-call {@link QueryBuilder#build} against binding a pre-compiled {@link CompiledSearch}.
+ *
+ * <p>{@code params} is the number of templated params on the definition; {@code vars} is the size of the
+ * variables map passed in (the legacy builder does one {@code String.replace} per variable per param).</p>
+ *
+ * Run: {@code mvn -Pbench test-compile exec:exec -Djmh.args=QueryBuilderBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBuilderBenchmark {
+
+  @Param({"3", "10", "50"})
+  int params;
+
+  @Param({"3", "20", "100"})
+  int vars;
+
+  IGenericClient client;
+  QueryBuilder builder;
+  SearchDef def;
+  CompiledSearch compiled;
+  Map<String, Object> variables;
+
+  @Setup
+  public void setUp() {
+    FhirContext ctx = FhirContext.forR4();
+    ctx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    client = ctx.newRestfulGenericClient("http://localhost/fhir");
+    builder = new QueryBuilder();
+
+    def = new SearchDef();
+    def.setResource("Observation");
+    Map<String, String> p = new LinkedHashMap<>();
+    for (int i = 0; i < params; i++) {
+      p.put("param" + i, (i % 2 == 0) ? "${system" + (i % vars) + "}|${code" + (i % vars) + "}" : "ge${date" + (i % vars) + "}");
+    }
+    p.put("category", "http://terminology.hl7.org/CodeSystem/observation-category\\|vital-signs");
+    def.setParams(p);
+    def.setIncludes(List.of("Observation:subject", "Observation:performer"));
+    def.setSort(List.of("-date"));
+    def.setSummary("data");
+    def.setCount(100);
+    compiled = CompiledSearch.compile(def);
+
+    variables = new HashMap<>();
+    for (int i = 0; i < vars; i++) {
+      variables.put("system" + i, "http://loinc.org");
+      variables.put("code" + i, "8480-" + i);
+      variables.put("date" + i, "2024-01-0" + (i % 9 + 1));
+    }
+  }
+
+  @Benchmark
+  public Object legacyBuild() {
+    return builder.build(client, variables, def);
+  }
+
+  @Benchmark
+  public Object compiledBind() {
+    return compiled.bind(client, variables);
+  }
+}
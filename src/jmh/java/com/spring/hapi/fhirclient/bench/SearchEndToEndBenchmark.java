@@ -0,0 +1,54 @@
+package com.spring.hapi.fhirclient.bench;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.spring.hapi.fhirclient.search.FhirSearchService;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link FhirSearchService#run} through the full Spring context (pooled transport,
+ * interceptors, retry, metrics) against an in-process WireMock server returning {@code entries}
+ * Observations per page.
+ *
+ * Run: {@code mvn -Pbench test-compile exec:exec -Djmh.args=SearchEndToEndBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchEndToEndBenchmark {
+
+  @Param({"10", "100"})
+  int entries;
+
+  WireMockServer server;
+  ConfigurableApplicationContext context;
+  FhirSearchService searches;
+  Map<String, Object> vars;
+
+  @Setup
+  public void setUp() {
+    server = BenchFixtures.stubServer(entries);
+    context = BenchFixtures.startContext(server);
+    searches = context.getBean(FhirSearchService.class);
+    vars = Map.of("system", "http://hospital.example/mrn", "value", "12345");
+    searches.run("patients-by-identifier", vars);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+    server.stop();
+  }
+
+  @Benchmark
+  public Bundle run() {
+    return searches.run("patients-by-identifier", vars);
+  }
+}
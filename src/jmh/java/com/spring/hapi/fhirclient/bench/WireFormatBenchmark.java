@@ -0,0 +1,105 @@
+package com.spring.hapi.fhirclient.bench;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.spring.hapi.fhirclient.client.WireFormat;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.HttpTransportConfig;
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of receiving one search-set page of {@code entries} Observations in each wire format: the
+ * bytes on the wire (secondary metrics {@code wireBytes} and {@code rawBytes}, recorded in the JSON
+ * results next to the timing) and the time to decode and parse them with the parser
+ * {@link WireFormat} hands out. {@code format} is {@code json}, {@code json-pretty} (what a server
+ * sends without {@code _pretty=false}) or {@code xml}; {@code compression} is the
+ * {@code Content-Encoding}, decoded through {@link HttpTransportConfig#decode}. Brotli is not
+ * included as there is no Java encoder on the classpath to produce bodies.
+ *
+ * Run: {@code mvn -Pbench test-compile exec:exec -Djmh.args=WireFormatBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+
+  @Param({"100", "1000"})
+  int entries;
+
+  @Param({"json", "json-pretty", "xml"})
+  String format;
+
+  @Param({"identity", "gzip", "deflate"})
+  String compression;
+
+  FhirContext ctx;
+  WireFormat wire;
+  byte[] body;
+  int rawLength;
+
+  @Setup
+  public void setUp() {
+    ctx = FhirContext.forR4();
+    boolean xml = format.equals("xml");
+    wire = new WireFormat(new FhirClientProperties.Wire(xml ? "xml" : "json", null, false, null));
+    IParser encoder = (xml ? ctx.newXmlParser() : ctx.newJsonParser()).setPrettyPrint(format.equals("json-pretty"));
+    byte[] raw = encoder.encodeResourceToString(BenchFixtures.observationBundle(entries))
+      .getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    rawLength = raw.length;
+    body = compress(raw);
+  }
+
+  /**
+   * Size of one page. JMH sums {@code EVENTS} counters over measurement iterations and threads, so
+   * each holds its share of the size, and the reported score is the size itself.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class PageBytes {
+    /** Bytes on the wire, after {@code compression}. */
+    public double wireBytes;
+    /** Bytes of the encoded page before compression. */
+    public double rawBytes;
+    double share;
+
+    @Setup(Level.Trial)
+    public void share(BenchmarkParams params) {
+      share = 1.0 / (params.getMeasurement().getCount() * params.getThreads());
+    }
+  }
+
+  @Benchmark
+  public Bundle decodeAndParse(PageBytes bytes) throws IOException {
+    bytes.wireBytes = body.length * bytes.share;
+    bytes.rawBytes = rawLength * bytes.share;
+    InputStream in = new ByteArrayInputStream(body);
+    if (!compression.equals("identity")) in = HttpTransportConfig.decode(compression, in);
+    return wire.newParser(ctx).parseResource(Bundle.class, in);
+  }
+
+  private byte[] compress(byte[] raw) {
+    if (compression.equals("identity")) return raw;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream z = compression.equals("gzip") ? new GZIPOutputStream(out) : new DeflaterOutputStream(out)) {
+      z.write(raw);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
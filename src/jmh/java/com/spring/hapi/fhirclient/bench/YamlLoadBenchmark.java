@@ -0,0 +1,62 @@
+package com.spring.hapi.fhirclient.bench;
+
+import com.spring.hapi.fhirclient.search.SearchDef;
+import com.spring.hapi.fhirclient.search.YamlSearchRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link YamlSearchRepository#loadAll} on generated packs of {@code searches} definitions, split
+ * across {@code files} files.
+ *
+ * Run: {@code mvn -Pbench test-compile exec:exec -Djmh.args=YamlLoadBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class YamlLoadBenchmark {
+
+  @Param({"1000", "5000"})
+  int searches;
+
+  @Param({"1", "8"})
+  int files;
+
+  Path dir;
+  List<String> locations;
+  YamlSearchRepository repo;
+
+  @Setup
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("jmh-packs");
+    int perFile = searches / files;
+    for (int f = 0; f < files; f++) {
+      String yaml = BenchFixtures.searchPackYaml(perFile).replace("search-", "f" + f + "-search-");
+      Files.writeString(dir.resolve("bench" + f + ".searches.yml"), yaml);
+    }
+    locations = List.of("file:" + dir.toAbsolutePath() + "/*.searches.yml");
+    repo = new YamlSearchRepository();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (var paths = Files.list(dir)) {
+      for (Path p : paths.toList()) Files.delete(p);
+    }
+    Files.delete(dir);
+  }
+
+  @Benchmark
+  public Map<String, SearchDef> loadAll() {
+    return repo.loadAll(locations);
+  }
+}
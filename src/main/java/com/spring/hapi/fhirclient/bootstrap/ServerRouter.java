@@ -0,0 +1,90 @@
+package com.spring.hapi.fhirclient.bootstrap;
+
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.util.EndpointStats;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the replica a read runs against for a named server ({@code fhir-server.servers}).
+ *
+ * <p>Candidates are the server's URLs that {@link EndpointStats} does not currently consider ejected
+ * (all of them if every one is). Among those, {@code least-outstanding} takes the fewest requests in
+ * flight, breaking ties by smoothed latency; {@code latency-weighted} takes the lowest
+ * {@code (in flight + 1) x latency}. A replica with no latency sample yet scores as fastest, so new
+ * replicas get traffic. Scanning starts at a rotating offset, so equal replicas share load evenly.
+ * The chosen replica's client comes from {@link VersionedClientManager}.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class ServerRouter {
+  private final FhirClientProperties props;
+  private final VersionedClientManager clients;
+  private final EndpointStats stats;
+  private final AtomicInteger rotation = new AtomicInteger();
+
+  public ServerRouter(FhirClientProperties props, VersionedClientManager clients, EndpointStats stats) {
+    this.props = props;
+    this.clients = clients;
+    this.stats = stats;
+  }
+
+  /**
+   * Client for one replica of server {@code serverName} ({@value FhirClientProperties#DEFAULT_SERVER}
+   * when null).
+   *
+   * @throws IllegalArgumentException if the server is not configured
+   */
+  public VersionedClient select(String serverName) {
+    return clients.get(selectUrl(serverName));
+  }
+
+  /** Base URL {@link #select} would use right now. */
+  public String selectUrl(String serverName) {
+    List<String> urls = props.server(serverName).urls();
+    if (urls.size() == 1) return urls.get(0);
+    boolean anyHealthy = urls.stream().anyMatch(stats::healthy);
+    int n = urls.size();
+    int offset = Math.floorMod(rotation.getAndIncrement(), n);
+    boolean weighted = props.routing().selection() == FhirClientProperties.Selection.LATENCY_WEIGHTED;
+    String best = null;
+    double bestScore = Double.MAX_VALUE;
+    double bestLatency = Double.MAX_VALUE;
+    for (int i = 0; i < n; i++) {
+      String url = urls.get((offset + i) % n);
+      if (anyHealthy && !stats.healthy(url)) continue;
+      int outstanding = stats.outstanding(url);
+      double latency = stats.latencyNanos(url);
+      double score = weighted ? (outstanding + 1) * latency : outstanding;
+      if (score < bestScore || (score == bestScore && latency < bestLatency)) {
+        best = url;
+        bestScore = score;
+        bestLatency = latency;
+      }
+    }
+    return best;
+  }
+
+  /** True if {@code serverName} (null meaning the default server) is configured. */
+  public boolean exists(String serverName) {
+    String n = name(serverName);
+    return FhirClientProperties.DEFAULT_SERVER.equals(n) || props.servers().containsKey(n);
+  }
+
+  /** Name of the server that has {@code baseUrl} as a replica (see {@link FhirClientProperties#serverNameFor}). */
+  public String serverNameFor(String baseUrl) {
+    return props.serverNameFor(baseUrl);
+  }
+
+  /**
+   * Normalized server name: {@code serverName}, or {@value FhirClientProperties#DEFAULT_SERVER} when
+   * null or blank.
+   */
+  public static String name(String serverName) {
+    return (serverName == null || serverName.isBlank()) ? FhirClientProperties.DEFAULT_SERVER : serverName;
+  }
+}
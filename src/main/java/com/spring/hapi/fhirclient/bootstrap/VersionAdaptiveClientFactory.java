@@ -1,89 +1,283 @@
 package com.spring.hapi.fhirclient.bootstrap;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.LenientErrorHandler;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.spring.hapi.fhirclient.client.FhirContextRegistry;
 import com.spring.hapi.fhirclient.client.FhirRelease;
 import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.client.WireFormat;
 import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.HttpTransportConfig;
 import com.spring.hapi.fhirclient.interceptors.InterceptorRegistryFactory;
+import com.spring.hapi.fhirclient.interceptors.ResponseValidatorsIntc.Validators;
+import com.spring.hapi.fhirclient.metadata.CapabilityStore;
 import com.spring.hapi.fhirclient.security.OAuth2AccessTokenProvider;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
 import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.hl7.fhir.r4.model.CapabilityStatement;
-import org.springframework.http.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Builds a HAPI FHIR client configured for the server's FHIR release (R4/R4B/R5).
- * <p>Detects release via GET {baseUrl}/metadata, then creates a matching FhirContext/client,
- * installs OAuth/interceptors, and fetches the CapabilityStatement.</p>
+ * <p>Fetches GET {baseUrl}/metadata once, reads the release from its {@code fhirVersion}, then creates
+ * a client on the release's shared context from {@link FhirContextRegistry}, installs
+ * OAuth/interceptors and parses the same response into the client's CapabilityStatement. The
+ * statement is always held in the R4 model: for R4B/R5 servers, elements R4 lacks are dropped.</p>
+ *
+ * <p>Every statement fetched is saved to {@link CapabilityStore} together with its {@code ETag} and
+ * {@code Last-Modified}. {@link #createFromSnapshot(String)} builds a client from the stored statement
+ * without any network call, and {@link #refreshCapability(VersionedClient)} re-fetches conditionally
+ * ({@code If-None-Match} / {@code If-Modified-Since}), so an unchanged statement costs a 304. The full
+ * statement is always requested: {@code _summary=true} would drop {@code rest.resource.searchParam},
+ * which capability checks need.</p>
+ *
+ * <p>All HTTP goes through the shared pooled transport ({@code fhirHttpClient} / {@code fhirRestTemplate},
+ * see {@link com.spring.hapi.fhirclient.config.HttpTransportConfig}), so connections opened for the
+ * /metadata fetch are reused by the HAPI client. Clients of the same release share one context and
+ * its restful client factory; a server with a dedicated pool gets its own factory on that context.</p>
+ *
+ * <p>Settings come from the {@code fhir-server.servers} entry that lists the base URL (else the
+ * top-level server): its OAuth registration ({@code auth}, or none) is used for /metadata and
+ * installed on the client, its {@code wire} format is installed on the client (see
+ * {@link WireFormat}), and a server with its own timeouts or {@code http} block gets a dedicated
+ * connection pool, shared by its replicas and closed on shutdown.</p>
+ *
+ * <p>{@link #create(String)} is timed in {@code fhir.client.create}; every CapabilityStatement fetch
+ * in {@code fhir.capability.fetch}.</p>
  */
 @Component
 public class VersionAdaptiveClientFactory {
-  private final RestTemplate restTemplate = new RestTemplate();
+  private static final Logger LOG = LoggerFactory.getLogger(VersionAdaptiveClientFactory.class);
+  private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private final RestTemplate restTemplate;
+  private final FhirContextRegistry contexts;
   private final FhirClientProperties props;
   private final OAuth2AccessTokenProvider tokenProvider;
   private final InterceptorRegistryFactory interceptors;
   private final ResilientExecutor resilient;
+  private final CapabilityStore store;
+  private final FhirMetrics metrics;
+  private final ConcurrentMap<String, CloseableHttpClient> dedicated = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, IRestfulClientFactory> dedicatedFactories = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Validators> validators = new ConcurrentHashMap<>();
 
   public VersionAdaptiveClientFactory(FhirClientProperties props,
                                       OAuth2AccessTokenProvider tokenProvider,
                                       InterceptorRegistryFactory interceptors,
-                                      ResilientExecutor resilient) {
+                                      ResilientExecutor resilient,
+                                      @Qualifier("fhirRestTemplate") RestTemplate restTemplate,
+                                      FhirContextRegistry contexts,
+                                      CapabilityStore store,
+                                      FhirMetrics metrics) {
     this.props = props;
+    this.metrics = metrics;
+    this.restTemplate = restTemplate;
+    this.contexts = contexts;
     this.tokenProvider = tokenProvider;
     this.interceptors = interceptors;
     this.resilient = resilient;
+    this.store = store;
   }
+
+  /** One /metadata response; {@code json} is null for a 304. */
+  private record Metadata(String json, String fhirVersion, Validators validators) {}
+
   /**
    * Create a client adapted to the server's FHIR version.
    *
    * <p>Steps:</p>
    * <ol>
-   *   <li>GET {baseUrl}/metadata (JSON)</li>
-   *   <li>Map fhirVersion → {@link FhirRelease}</li>
-   *   <li>Build {@link FhirContext} and {@link IGenericClient}</li>
+   *   <li>GET {baseUrl}/metadata (JSON), saved to {@link CapabilityStore}</li>
+   *   <li>Map its fhirVersion → {@link FhirRelease}</li>
+   *   <li>Take the shared {@link FhirContext} and build the {@link IGenericClient}</li>
    *   <li>Install OAuth and custom interceptors</li>
-   *   <li>Fetch {@link CapabilityStatement}</li>
+   *   <li>Parse the same response into the {@link CapabilityStatement}</li>
    * </ol>
    *
    * @return versioned client (context, generic client, capability statement, release)
    * @throws org.springframework.web.client.RestClientException on /metadata failure
    */
   public VersionedClient create() {
-    String base = props.baseUrl().replaceAll("/+$","");
-    String metaUrl = base + "/metadata";
-
-    HttpHeaders headers = new HttpHeaders();
-    tokenProvider.getAccessToken().ifPresent(tok -> headers.setBearerAuth(tok));
-    headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-    ResponseEntity<Map> resp = restTemplate.exchange(metaUrl, HttpMethod.GET, new HttpEntity<>(headers), Map.class);
-
-    String fhirVersion = null;
-    if (resp.getBody()!=null) {
-      Object fv = resp.getBody().get("fhirVersion");
-      if (fv instanceof String s) fhirVersion = s;
+    return create(props.server(FhirClientProperties.DEFAULT_SERVER).urls().get(0));
+  }
+
+  /**
+   * Same as {@link #create()} but against an explicit base URL.
+   *
+   * <p>This is the expensive path (one /metadata call, plus FhirContext construction for a release not
+   * used before). Callers on the request path should go through {@link VersionedClientManager} which
+   * caches the result.</p>
+   *
+   * @param baseUrl FHIR server base URL (trailing slashes are ignored)
+   * @return versioned client (context, generic client, capability statement, release)
+   */
+  public VersionedClient create(String baseUrl) {
+    return metrics.timed(() -> {
+      String base = normalizeUrl(baseUrl);
+      Metadata m = fetchMetadata(base, null);
+      return build(base, m.fhirVersion(), parseCapability(m.json(), normalize(m.fhirVersion())));
+    }, metrics::recordClientCreate);
+  }
+
+  /**
+   * Client built from the CapabilityStatement last stored for {@code baseUrl}, without contacting the
+   * server; empty if none is stored. The statement may be stale until {@link #refreshCapability} runs.
+   */
+  public Optional<VersionedClient> createFromSnapshot(String baseUrl) {
+    String base = normalizeUrl(baseUrl);
+    Optional<CapabilityStore.Snapshot> stored = store.load(base);
+    if (stored.isEmpty()) return Optional.empty();
+    CapabilityStore.Snapshot snap = stored.get();
+    try {
+      VersionedClient vc = metrics.timed(() -> build(base, snap.fhirVersion(), parseCapability(snap.json(), normalize(snap.fhirVersion()))),
+        metrics::recordClientCreate);
+      validators.put(base, new Validators(snap.etag(), snap.lastModified()));
+      return Optional.of(vc);
+    } catch (RuntimeException e) {
+      LOG.warn("Stored CapabilityStatement for {} is unusable, fetching it: {}", base, e.toString());
+      return Optional.empty();
     }
+  }
+
+  private VersionedClient build(String base, String fhirVersion, CapabilityStatement capability) {
+    String serverName = props.serverNameFor(base);
+    FhirClientProperties.Server server = props.server(serverName);
 
     FhirRelease release = normalize(fhirVersion);
-    FhirContext ctx = switch (release) {
-      case R4 -> FhirContext.forR4();
-      case R4B -> FhirContext.forR4B();
-      case R5 -> FhirContext.forR5();
-    };
-    ctx.getRestfulClientFactory().setConnectTimeout(props.connectTimeoutMs());
-    ctx.getRestfulClientFactory().setSocketTimeout(props.socketTimeoutMs());
-
-    IGenericClient client = ctx.newRestfulGenericClient(base);
-    tokenProvider.install(client);
+    FhirContext ctx = contexts.get(release);
+    IRestfulClientFactory clientFactory = !server.dedicatedTransport() ? ctx.getRestfulClientFactory()
+      : dedicatedFactories.computeIfAbsent(release + ":" + serverName, k -> contexts.clientFactory(release, transport(serverName, server)));
+
+    IGenericClient client = clientFactory.newGenericClient(base);
+    new WireFormat(server.wire() != null ? server.wire() : props.wire()).install(client);
+    if (server.authenticated()) tokenProvider.install(client, server.auth());
     interceptors.createAll().forEach(client::registerInterceptor);
 
-    CapabilityStatement capability = resilient.run("capabilities", () -> client.capabilities().ofType(CapabilityStatement.class).execute());
     return new VersionedClient(ctx, client, capability, release);
   }
+
+  /**
+   * Re-fetch the CapabilityStatement for an existing client, reusing its context and interceptors.
+   * The request is conditional on the validators of the last statement seen.
+   *
+   * @param current client previously returned by {@link #create(String)} or {@link #createFromSnapshot}
+   * @return {@code current} itself if the statement is unchanged (304), else a copy carrying the new one
+   */
+  public VersionedClient refreshCapability(VersionedClient current) {
+    String base = normalizeUrl(current.client().getServerBase());
+    Metadata m = fetchMetadata(base, validators.get(base));
+    if (m.json() == null) return current;
+    FhirRelease release = normalize(m.fhirVersion());
+    if (release != current.release()) {
+      LOG.warn("{} now reports FHIR {} but its client was built for {}; restart to switch", base, release, current.release());
+    }
+    return current.withCapability(parseCapability(m.json(), release));
+  }
+
+  /**
+   * GET {base}/metadata, conditionally when {@code known} validators are given; a 200 is saved to the
+   * store and its validators remembered for the next refresh.
+   */
+  private Metadata fetchMetadata(String base, Validators known) {
+    FhirClientProperties.Server server = props.server(props.serverNameFor(base));
+    Metadata m = metrics.timed(() -> resilient.run("capabilities", base, () -> restTemplate.execute(URI.create(base + "/metadata"), HttpMethod.GET,
+      req -> {
+        token(server).ifPresent(tok -> req.getHeaders().setBearerAuth(tok));
+        req.getHeaders().setAccept(List.of(FHIR_JSON, MediaType.APPLICATION_JSON));
+        if (known != null && known.etag() != null) req.getHeaders().set("If-None-Match", known.etag());
+        if (known != null && known.lastModified() != null) req.getHeaders().set("If-Modified-Since", known.lastModified());
+      },
+      resp -> {
+        if (resp.getStatusCode().value() == 304) return new Metadata(null, null, known);
+        String json = StreamUtils.copyToString(resp.getBody(), StandardCharsets.UTF_8);
+        return new Metadata(json, fhirVersionOf(json),
+          new Validators(resp.getHeaders().getFirst("ETag"), resp.getHeaders().getFirst("Last-Modified")));
+      })), metrics::recordCapabilityFetch);
+    if (m.json() != null) {
+      validators.put(base, m.validators());
+      store.save(base, new CapabilityStore.Snapshot(m.fhirVersion(), m.validators().etag(), m.validators().lastModified(), m.json()));
+    }
+    return m;
+  }
+
+  /**
+   * Parse a statement into the R4 model whatever the server's release; there is no R4B/R5 to R4
+   * conversion. Capability checks only read {@code rest.resource} types, search parameters and
+   * includes, which are the same in all three releases. Elements and codes R4 does not know (e.g.
+   * R5's {@code versionAlgorithm[x]} or {@code fhirVersion: 5.0.0}) are dropped, without the
+   * per-element warning the default handler would log.
+   */
+  private CapabilityStatement parseCapability(String json, FhirRelease release) {
+    IParser parser = contexts.get(FhirRelease.R4).newJsonParser();
+    if (release != FhirRelease.R4) parser.setParserErrorHandler(new LenientErrorHandler(false));
+    return parser.parseResource(CapabilityStatement.class, json);
+  }
+
+  /**
+   * Top-level {@code fhirVersion} of a CapabilityStatement, read with a streaming parser that skips
+   * every other member without building it.
+   */
+  static String fhirVersionOf(String json) {
+    try (JsonParser p = JSON.createParser(json)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) return null;
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        JsonToken value = p.nextToken();
+        if ("fhirVersion".equals(field) && value == JsonToken.VALUE_STRING) return p.getText();
+        p.skipChildren();
+      }
+      return null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private CloseableHttpClient transport(String serverName, FhirClientProperties.Server server) {
+    return dedicated.computeIfAbsent(serverName, n -> HttpTransportConfig.pooledHttpClient(
+      server.http() != null ? server.http() : props.http(),
+      server.connectTimeoutMs() > 0 ? server.connectTimeoutMs() : props.connectTimeoutMs(),
+      server.socketTimeoutMs() > 0 ? server.socketTimeoutMs() : props.socketTimeoutMs()));
+  }
+
+  private Optional<String> token(FhirClientProperties.Server server) {
+    return server.authenticated() ? tokenProvider.getAccessToken(server.auth()) : Optional.empty();
+  }
+
+  private static String normalizeUrl(String baseUrl) {
+    return baseUrl.replaceAll("/+$", "");
+  }
+
+  @PreDestroy
+  void closeDedicatedTransports() throws IOException {
+    for (CloseableHttpClient c : dedicated.values()) c.close();
+  }
+
   /**
    * Map raw version (e.g. "4.0.1", "4.3.x", "5.0.x") to {@link FhirRelease}.
    * Defaults to R4 for unknown/blank.
@@ -0,0 +1,163 @@
+package com.spring.hapi.fhirclient.bootstrap;
+
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Owns the lifecycle of {@link VersionedClient}s: one per base URL (each replica of a named server
+ * has its own), created on first use and kept for the life of the application. Which replica a
+ * search uses is decided by {@link ServerRouter}.
+ *
+ * <p>Creating a client is expensive ({@code FhirContext} model scanning, interceptor registration,
+ * CapabilityStatement fetch), so it runs at most once per base URL. Afterwards {@link #get()} is a
+ * single map lookup. When a statement for the URL was stored by an earlier run (see
+ * {@link com.spring.hapi.fhirclient.metadata.CapabilityStore}) the client is built from it without
+ * waiting for the server, and the live statement is fetched straight away in the background.</p>
+ *
+ * <p>Each cached client's CapabilityStatement is refreshed in the background every
+ * {@code fhir-server.capability-refresh-ms}; the fetch is conditional, so an unchanged statement
+ * neither replaces the client nor notifies listeners. A failed refresh is logged and the previous
+ * statement stays in use.</p>
+ *
+ * <p>Listeners registered with {@link #addListener(Consumer)} are notified whenever a client is
+ * created or its CapabilityStatement is replaced, e.g. to re-validate search definitions.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class VersionedClientManager {
+  private static final Logger LOG = LoggerFactory.getLogger(VersionedClientManager.class);
+
+  private final VersionAdaptiveClientFactory factory;
+  private final FhirClientProperties props;
+  private final ConcurrentMap<String, VersionedClient> clients = new ConcurrentHashMap<>();
+  private final List<Consumer<VersionedClient>> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "fhir-capability-refresh");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public VersionedClientManager(VersionAdaptiveClientFactory factory, FhirClientProperties props) {
+    this.factory = factory;
+    this.props = props;
+  }
+
+  /**
+   * Cached client for the first URL of the default server ({@code fhir-server.base-url}).
+   */
+  public VersionedClient get() {
+    return get(defaultServerKey());
+  }
+
+  /**
+   * Cached client for {@code baseUrl}, created on first call.
+   *
+   * @param baseUrl FHIR server base URL (trailing slashes are ignored)
+   * @return shared versioned client
+   */
+  public VersionedClient get(String baseUrl) {
+    String key = normalize(baseUrl);
+    VersionedClient vc = clients.get(key);
+    if (vc != null) return vc;
+    boolean[] created = {false};
+    boolean[] stored = {false};
+    vc = clients.computeIfAbsent(key, k -> {
+      Optional<VersionedClient> snapshot = factory.createFromSnapshot(k);
+      VersionedClient fresh = snapshot.orElseGet(() -> factory.create(k));
+      long period = props.capabilityRefreshMs();
+      refresher.scheduleWithFixedDelay(() -> refresh(k), period, period, TimeUnit.MILLISECONDS);
+      LOG.info("Created FHIR client for {} ({}{})", k, fresh.release(), snapshot.isPresent() ? ", stored CapabilityStatement" : "");
+      created[0] = true;
+      stored[0] = snapshot.isPresent();
+      return fresh;
+    });
+    if (created[0]) notifyListeners(vc);
+    if (stored[0]) refresher.execute(() -> refresh(key));
+    return vc;
+  }
+
+  /**
+   * Register a callback invoked with each newly created or capability-refreshed client.
+   */
+  public void addListener(Consumer<VersionedClient> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Normalized configured base URL, i.e. the cache key of {@link #get()}.
+   */
+  public String defaultServerKey() {
+    return props.server(FhirClientProperties.DEFAULT_SERVER).urls().get(0);
+  }
+
+  /**
+   * Cached client for the configured base URL if one was already created; never triggers creation.
+   */
+  public Optional<VersionedClient> peek() {
+    return peek(defaultServerKey());
+  }
+
+  /**
+   * Cached client for {@code baseUrl} if one was already created; never triggers creation.
+   */
+  public Optional<VersionedClient> peek(String baseUrl) {
+    return Optional.ofNullable(clients.get(normalize(baseUrl)));
+  }
+
+  /**
+   * Every client created so far; never triggers creation.
+   */
+  public Collection<VersionedClient> cached() {
+    return List.copyOf(clients.values());
+  }
+
+  /**
+   * Re-fetch the CapabilityStatement for {@code baseUrl} now. No-op if no client exists yet.
+   */
+  public void refresh(String baseUrl) {
+    String key = normalize(baseUrl);
+    VersionedClient current = clients.get(key);
+    if (current == null) return;
+    try {
+      VersionedClient fresh = factory.refreshCapability(current);
+      if (fresh != current && clients.replace(key, current, fresh)) notifyListeners(fresh);
+    } catch (RuntimeException e) {
+      LOG.warn("Capability refresh failed for {}; keeping previous statement: {}", key, e.getMessage());
+    }
+  }
+
+  private void notifyListeners(VersionedClient vc) {
+    for (Consumer<VersionedClient> l : listeners) {
+      try {
+        l.accept(vc);
+      } catch (RuntimeException e) {
+        LOG.warn("Client listener failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    refresher.shutdownNow();
+  }
+
+  private static String normalize(String baseUrl) {
+    return baseUrl.replaceAll("/+$", "");
+  }
+}
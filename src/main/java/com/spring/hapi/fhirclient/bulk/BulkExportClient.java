@@ -0,0 +1,300 @@
+package com.spring.hapi.fhirclient.bulk;
+
+import ca.uhn.fhir.parser.IParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring.hapi.fhirclient.bootstrap.ServerRouter;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.client.WireFormat;
+import com.spring.hapi.fhirclient.config.BulkExportProperties;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.security.OAuth2AccessTokenProvider;
+import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * FHIR Bulk Data client: kicks off {@code $export}, waits for it and streams the NDJSON output.
+ *
+ * <p>The flow follows the Bulk Data Access IG:</p>
+ * <ol>
+ *   <li><b>Kick-off</b>: {@code GET [base]/...$export} with {@code Prefer: respond-async}; the server
+ *   answers 202 with the status URL in {@code Content-Location}. Not retried, since a failed kick-off
+ *   may still have started a job.</li>
+ *   <li><b>Status</b>: the status URL is polled while it answers 202, honouring {@code Retry-After} and
+ *   otherwise backing off per {@link BulkExportProperties}; 200 carries the {@link BulkExportManifest}.</li>
+ *   <li><b>Download</b>: output files are fetched on {@code fhirBlockingExecutor} with at most
+ *   {@code downloadConcurrency} in flight, each streamed to disk through NIO channels, then read line by
+ *   line by {@link NdjsonReader}. A file is only parsed once it is completely on disk, so a retried
+ *   download never delivers a resource twice.</li>
+ * </ol>
+ *
+ * <p>Every HTTP call goes through {@link ResilientExecutor} for the server's rate limits, limiter and
+ * circuit breaker; status polls and downloads are retried on server distress. Requests carry the
+ * server's bearer token from {@link OAuth2AccessTokenProvider}; output files only when the manifest
+ * sets {@code requiresAccessToken}, since they are often served from storage outside the FHIR
+ * server.</p>
+ *
+ * <p>URLs are sent exactly as built or as the server returned them, without template expansion.</p>
+ *
+ * Thread-safety: safe for concurrent use. The sink is called concurrently from download threads and
+ * must be thread-safe.
+ */
+@Component
+public class BulkExportClient {
+  private static final Logger LOG = LoggerFactory.getLogger(BulkExportClient.class);
+  private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+  private static final MediaType FHIR_NDJSON = MediaType.parseMediaType("application/fhir+ndjson");
+  private static final long CHUNK = 1 << 20;
+
+  private final BulkExportProperties props;
+  private final FhirClientProperties servers;
+  private final ServerRouter router;
+  private final OAuth2AccessTokenProvider tokenProvider;
+  private final RestTemplate restTemplate;
+  private final ResilientExecutor resilient;
+  private final ExecutorService executor;
+  private final NdjsonReader reader = new NdjsonReader();
+  private final ObjectMapper json = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  public BulkExportClient(BulkExportProperties props,
+                          FhirClientProperties servers,
+                          ServerRouter router,
+                          OAuth2AccessTokenProvider tokenProvider,
+                          @Qualifier("fhirRestTemplate") RestTemplate restTemplate,
+                          ResilientExecutor resilient,
+                          @Qualifier("fhirBlockingExecutor") ExecutorService executor) {
+    this.props = props;
+    this.servers = servers;
+    this.router = router;
+    this.tokenProvider = tokenProvider;
+    this.restTemplate = restTemplate;
+    this.resilient = resilient;
+    this.executor = executor;
+  }
+
+  /** Thrown when the server does not follow the async pattern or the export does not finish in time. */
+  public static final class BulkExportException extends RuntimeException {
+    public BulkExportException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Run an export against a replica of server {@code serverName} (null for the default server).
+   *
+   * @see #export(VersionedClient, BulkExportRequest, Consumer)
+   */
+  public long export(String serverName, BulkExportRequest request, Consumer<IBaseResource> sink) {
+    return export(router.select(serverName), request, sink);
+  }
+
+  /**
+   * Kick off, wait for and download one export.
+   *
+   * @param vc client whose base URL and FHIR context are used
+   * @param request export level and parameters
+   * @param sink receives every exported resource; called concurrently
+   * @return number of resources delivered
+   */
+  public long export(VersionedClient vc, BulkExportRequest request, Consumer<IBaseResource> sink) {
+    String statusUrl = kickOff(vc, request);
+    BulkExportManifest manifest = await(vc, statusUrl);
+    if (!manifest.error().isEmpty()) {
+      LOG.warn("Bulk export {} reported {} error file(s)", statusUrl, manifest.error().size());
+    }
+    return download(vc, manifest, sink);
+  }
+
+  /**
+   * Start an export.
+   *
+   * @return the status URL to poll
+   * @throws BulkExportException if the server does not answer 202 with a {@code Content-Location}
+   */
+  public String kickOff(VersionedClient vc, BulkExportRequest request) {
+    String base = vc.client().getServerBase();
+    String url = base.replaceAll("/+$", "") + "/" + request.toRelativeUrl();
+    return resilient.runOnce(base, () -> restTemplate.execute(URI.create(url), HttpMethod.GET,
+      req -> {
+        authorize(req, vc, true);
+        req.getHeaders().setAccept(List.of(FHIR_JSON));
+        req.getHeaders().set("Prefer", "respond-async");
+      },
+      resp -> {
+        String location = resp.getHeaders().getFirst("Content-Location");
+        if (resp.getStatusCode().value() != 202 || location == null) {
+          throw new BulkExportException("Expected 202 with Content-Location from " + url + ", got " + resp.getStatusCode().value());
+        }
+        return location;
+      }));
+  }
+
+  /**
+   * Poll {@code statusUrl} until the export completes.
+   *
+   * @throws BulkExportException if it is still running after {@code timeoutMs}
+   */
+  public BulkExportManifest await(VersionedClient vc, String statusUrl) {
+    String base = vc.client().getServerBase();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(props.timeoutMs());
+    long delay = props.pollInitialMs();
+    while (true) {
+      Status status = resilient.run("bulk-status", base, () -> restTemplate.execute(URI.create(statusUrl), HttpMethod.GET,
+        req -> {
+          authorize(req, vc, true);
+          req.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON, FHIR_JSON));
+        },
+        resp -> {
+          if (resp.getStatusCode().value() == 200) {
+            return new Status(json.readValue(resp.getBody(), BulkExportManifest.class), 0, null);
+          }
+          long retryAfter = ResilientExecutor.parseRetryAfter(resp.getHeaders().getFirst("Retry-After"), System.currentTimeMillis());
+          return new Status(null, retryAfter, resp.getHeaders().getFirst("X-Progress"));
+        }));
+      if (status.manifest() != null) return status.manifest();
+
+      long wait = Math.min(status.retryAfterMs() >= 0 ? status.retryAfterMs() : delay, props.pollMaxMs());
+      delay = Math.min(props.pollMaxMs(), (long) (delay * props.pollMultiplier()));
+      if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) - deadline > 0) {
+        throw new BulkExportException("Bulk export " + statusUrl + " did not complete within " + props.timeoutMs() + " ms");
+      }
+      LOG.debug("Bulk export {} in progress ({}); next poll in {} ms", statusUrl, status.progress(), wait);
+      try {
+        Thread.sleep(Duration.ofMillis(wait));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BulkExportException("Interrupted waiting for bulk export " + statusUrl);
+      }
+    }
+  }
+
+  /**
+   * Download and parse every output file of a completed export.
+   *
+   * @return number of resources delivered
+   */
+  public long download(VersionedClient vc, BulkExportManifest manifest, Consumer<IBaseResource> sink) {
+    Path dir;
+    try {
+      dir = Files.createDirectories(Path.of(props.downloadDir()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Semaphore permits = new Semaphore(props.downloadConcurrency());
+    List<CompletableFuture<Long>> files = new ArrayList<>(manifest.output().size());
+    for (BulkExportManifest.File file : manifest.output()) {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BulkExportException("Interrupted scheduling bulk downloads");
+      }
+      try {
+        files.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return downloadAndRead(vc, manifest.requiresAccessToken(), file, dir, sink);
+          } finally {
+            permits.release();
+          }
+        }, executor));
+      } catch (RuntimeException e) {
+        permits.release();
+        throw e;
+      }
+    }
+    long total = 0;
+    for (CompletableFuture<Long> f : files) {
+      try {
+        total += f.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException re) throw re;
+        throw e;
+      }
+    }
+    return total;
+  }
+
+  private long downloadAndRead(VersionedClient vc, boolean withToken, BulkExportManifest.File file, Path dir,
+                               Consumer<IBaseResource> sink) {
+    Path path = null;
+    try {
+      path = Files.createTempFile(dir, file.type() + "-", ".ndjson");
+      Path target = path;
+      long bytes = resilient.run("bulk-download", vc.client().getServerBase(), () -> restTemplate.execute(URI.create(file.url()), HttpMethod.GET,
+        req -> {
+          authorize(req, vc, withToken);
+          req.getHeaders().setAccept(List.of(FHIR_NDJSON, MediaType.ALL));
+        },
+        resp -> {
+          try (ReadableByteChannel in = Channels.newChannel(resp.getBody());
+               FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long n;
+            while ((n = out.transferFrom(in, position, CHUNK)) > 0) position += n;
+            return position;
+          }
+        }));
+      IParser parser = new WireFormat(servers.wireFor(vc.client().getServerBase())).newJsonParser(vc.context());
+      long resources = reader.read(path, parser, sink);
+      LOG.debug("Bulk file {} ({}): {} bytes, {} resources", file.url(), file.type(), bytes, resources);
+      return resources;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (path != null && !props.keepFiles()) {
+        try {
+          Files.deleteIfExists(path);
+        } catch (IOException e) {
+          LOG.warn("Could not delete bulk file {}: {}", path, e.toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Cancel a running export (or release a completed one's files) by deleting its status URL.
+   */
+  public void cancel(VersionedClient vc, String statusUrl) {
+    resilient.runOnce(vc.client().getServerBase(), () -> restTemplate.execute(URI.create(statusUrl), HttpMethod.DELETE,
+      req -> authorize(req, vc, true), resp -> null));
+  }
+
+  private void authorize(ClientHttpRequest req, VersionedClient vc, boolean withToken) {
+    if (withToken) token(vc).ifPresent(tok -> req.getHeaders().setBearerAuth(tok));
+  }
+
+  private Optional<String> token(VersionedClient vc) {
+    FhirClientProperties.Server server = servers.server(servers.serverNameFor(vc.client().getServerBase()));
+    return server.authenticated() ? tokenProvider.getAccessToken(server.auth()) : Optional.empty();
+  }
+
+  private record Status(BulkExportManifest manifest, long retryAfterMs, String progress) {}
+}
@@ -0,0 +1,36 @@
+package com.spring.hapi.fhirclient.bulk;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * Completion manifest returned by the status URL once an export has finished.
+ *
+ * @param transactionTime server time the export reflects; use it as {@code _since} for the next delta
+ * @param request the kick-off URL the server processed
+ * @param requiresAccessToken true if the output files must be fetched with the bearer token
+ * @param output one NDJSON file per entry (a resource type may span several files)
+ * @param error NDJSON files of OperationOutcomes for resources the server could not export
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record BulkExportManifest(String transactionTime,
+                                 String request,
+                                 boolean requiresAccessToken,
+                                 List<File> output,
+                                 List<File> error) {
+  public BulkExportManifest {
+    output = output == null ? List.of() : List.copyOf(output);
+    error = error == null ? List.of() : List.copyOf(error);
+  }
+
+  /**
+   * One output file.
+   *
+   * @param type resource type of every line in the file
+   * @param url absolute download URL
+   * @param count number of resources, if the server reports it
+   */
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public record File(String type, String url, Long count) {}
+}
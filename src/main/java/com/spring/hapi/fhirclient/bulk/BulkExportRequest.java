@@ -0,0 +1,68 @@
+package com.spring.hapi.fhirclient.bulk;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One Bulk Data kick-off: the export level and its {@code _type}, {@code _since} and
+ * {@code _typeFilter} parameters.
+ *
+ * <p>Start from {@link #system()}, {@link #patients()} or {@link #group(String)} and narrow with the
+ * {@code with*} methods, e.g. {@code BulkExportRequest.group("g1").withTypes("Patient", "Observation")}.</p>
+ *
+ * @param operation path of the operation relative to the server base (e.g. {@code Group/g1/$export})
+ * @param types resource types to export; empty for all the server allows
+ * @param since FHIR instant; only resources changed after it are exported (null for all)
+ * @param typeFilters {@code _typeFilter} queries such as {@code Observation?category=vital-signs}
+ */
+public record BulkExportRequest(String operation, List<String> types, String since, List<String> typeFilters) {
+  public BulkExportRequest {
+    if (operation == null || operation.isBlank()) operation = "$export";
+    types = types == null ? List.of() : List.copyOf(types);
+    typeFilters = typeFilters == null ? List.of() : List.copyOf(typeFilters);
+  }
+
+  /** System-level export: every resource on the server. */
+  public static BulkExportRequest system() {
+    return new BulkExportRequest("$export", null, null, null);
+  }
+
+  /** Patient-level export: every patient's compartment. */
+  public static BulkExportRequest patients() {
+    return new BulkExportRequest("Patient/$export", null, null, null);
+  }
+
+  /** Group-level export: the compartments of the group's members. */
+  public static BulkExportRequest group(String groupId) {
+    return new BulkExportRequest("Group/" + groupId + "/$export", null, null, null);
+  }
+
+  public BulkExportRequest withTypes(String... resourceTypes) {
+    return new BulkExportRequest(operation, List.of(resourceTypes), since, typeFilters);
+  }
+
+  public BulkExportRequest withSince(String instant) {
+    return new BulkExportRequest(operation, types, instant, typeFilters);
+  }
+
+  public BulkExportRequest withTypeFilter(String query) {
+    List<String> filters = new ArrayList<>(typeFilters);
+    filters.add(query);
+    return new BulkExportRequest(operation, types, since, filters);
+  }
+
+  /** Kick-off URL relative to the server base, always asking for NDJSON output. */
+  public String toRelativeUrl() {
+    StringBuilder url = new StringBuilder(operation).append("?_outputFormat=").append(encode("application/fhir+ndjson"));
+    if (!types.isEmpty()) url.append("&_type=").append(encode(String.join(",", types)));
+    if (since != null) url.append("&_since=").append(encode(since));
+    for (String f : typeFilters) url.append("&_typeFilter=").append(encode(f));
+    return url.toString();
+  }
+
+  private static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+}
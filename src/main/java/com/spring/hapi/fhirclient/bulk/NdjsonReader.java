@@ -0,0 +1,40 @@
+package com.spring.hapi.fhirclient.bulk;
+
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Reads an NDJSON file (one FHIR resource per line) and hands each resource to a sink as soon as its
+ * line is parsed, so memory is bounded by the largest single resource rather than the file.
+ *
+ * Thread-safety: stateless; the {@link IParser} passed in must not be shared across threads.
+ */
+public final class NdjsonReader {
+
+  /**
+   * @param file NDJSON file; blank lines are skipped
+   * @param parser HAPI JSON parser for the server's release
+   * @param sink receives each resource, in file order
+   * @return number of resources read
+   * @throws IOException on I/O failure
+   */
+  public long read(Path file, IParser parser, Consumer<IBaseResource> sink) throws IOException {
+    long n = 0;
+    try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.isBlank()) continue;
+        sink.accept(parser.parseResource(line));
+        n++;
+      }
+    }
+    return n;
+  }
+}
@@ -0,0 +1,153 @@
+package com.spring.hapi.fhirclient.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import com.spring.hapi.fhirclient.config.FhirContextProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One shared {@link FhirContext} per {@link FhirRelease} for the whole application.
+ *
+ * <p>A context is expensive to build and scans the model of each resource type on first use, but is
+ * thread-safe once built, so every client, parser and CapabilityStatement of a release shares it.
+ * Each context's restful client factory is configured once: it runs on the shared
+ * {@code fhirHttpClient} and never validates the server on first request (the client factory has
+ * already read {@code /metadata}). Parsers are not thread-safe and stay per call via
+ * {@link FhirContext#newJsonParser()}, but share the context's parser options and definitions.</p>
+ *
+ * <p>The releases in {@code fhir-context.prewarm} are built on the daemon thread
+ * {@code fhir-context-warmup} at startup; each new context is then scanned there for the known
+ * resource types and runs one parse. {@link #prewarm(Collection)} scans resource type definitions
+ * on the same thread for every context built so far; types are remembered, so a context built later
+ * is scanned for them too.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class FhirContextRegistry {
+  private static final Logger LOG = LoggerFactory.getLogger(FhirContextRegistry.class);
+  /** Types every search touches regardless of the packs. */
+  private static final List<String> BASE_TYPES = List.of("Bundle", "OperationOutcome", "CapabilityStatement");
+
+  private final FhirContextProperties props;
+  private final CloseableHttpClient httpClient;
+  private final ConcurrentMap<FhirRelease, FhirContext> contexts = new ConcurrentHashMap<>();
+  private final Set<String> types = ConcurrentHashMap.newKeySet();
+  private final ExecutorService warmer = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "fhir-context-warmup");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public FhirContextRegistry(FhirContextProperties props, @Qualifier("fhirHttpClient") CloseableHttpClient httpClient) {
+    this.props = props;
+    this.httpClient = httpClient;
+    types.addAll(BASE_TYPES);
+  }
+
+  @PostConstruct
+  void init() {
+    for (FhirRelease release : props.prewarm()) {
+      warmer.execute(() -> {
+        long start = System.nanoTime();
+        try {
+          get(release);
+          LOG.info("Built FhirContext {} in {} ms", release, (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+          LOG.warn("Could not warm FhirContext {}: {}", release, e.getMessage());
+        }
+      });
+    }
+  }
+
+  /**
+   * Shared context of {@code release}, built on first call.
+   *
+   * @throws IllegalStateException if the release's structures jar is not on the classpath
+   */
+  public FhirContext get(FhirRelease release) {
+    FhirContext ctx = contexts.get(release);
+    if (ctx != null) return ctx;
+    boolean[] created = {false};
+    ctx = contexts.computeIfAbsent(release, r -> {
+      created[0] = true;
+      return configure(switch (r) {
+        case R4 -> FhirContext.forR4();
+        case R4B -> FhirContext.forR4B();
+        case R5 -> FhirContext.forR5();
+      });
+    });
+    if (created[0]) {
+      FhirContext built = ctx;
+      warmer.execute(() -> {
+        scan(built, types);
+        // loads and links the JSON parser's own classes
+        built.newJsonParser().parseResource("{\"resourceType\":\"Bundle\",\"type\":\"searchset\"}");
+      });
+    }
+    return ctx;
+  }
+
+  /**
+   * Restful client factory for {@code release} on a transport other than the shared pool, configured
+   * like the shared one. The caller keeps it and owns {@code transport}.
+   */
+  public IRestfulClientFactory clientFactory(FhirRelease release, CloseableHttpClient transport) {
+    ApacheRestfulClientFactory f = new ApacheRestfulClientFactory(get(release));
+    f.setServerValidationMode(ServerValidationModeEnum.NEVER);
+    f.setHttpClient(transport);
+    return f;
+  }
+
+  /**
+   * Scan the definitions of {@code resourceTypes} in the background, in every context built so far
+   * and in any built later. Names a release does not know are skipped.
+   *
+   * @return completes when the scan is done
+   */
+  public CompletableFuture<Void> prewarm(Collection<String> resourceTypes) {
+    List<String> added = resourceTypes.stream().filter(types::add).toList();
+    if (added.isEmpty()) return CompletableFuture.completedFuture(null);
+    return CompletableFuture.runAsync(() -> contexts.values().forEach(ctx -> scan(ctx, added)), warmer);
+  }
+
+  private FhirContext configure(FhirContext ctx) {
+    IRestfulClientFactory f = ctx.getRestfulClientFactory();
+    f.setServerValidationMode(ServerValidationModeEnum.NEVER);
+    f.setHttpClient(httpClient);
+    return ctx;
+  }
+
+  private static void scan(FhirContext ctx, Collection<String> resourceTypes) {
+    for (String type : resourceTypes) {
+      try {
+        ctx.getResourceDefinition(type);
+      } catch (DataFormatException e) {
+        LOG.debug("{} has no resource type {}", ctx.getVersion().getVersion(), type);
+      }
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    warmer.shutdownNow();
+  }
+}
@@ -0,0 +1,116 @@
+package com.spring.hapi.fhirclient.client;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ClientHttpRequestFactory} over the Apache HttpClient 4 instance HAPI uses, so
+ * {@code RestTemplate} calls share its connection pool, keep-alive and content decoding.
+ *
+ * <p>Spring 6 only ships an adapter for HttpClient 5; HAPI's Apache transport is HttpClient 4, and one
+ * pool for both is the point. Request bodies are buffered (they are small form posts here); response
+ * bodies are streamed. Closing the response drains the entity so the connection returns to the pool.</p>
+ *
+ * Thread-safety: safe for concurrent use; each request object is single-use.
+ */
+public final class PooledClientHttpRequestFactory implements ClientHttpRequestFactory {
+  private final CloseableHttpClient httpClient;
+
+  public PooledClientHttpRequestFactory(CloseableHttpClient httpClient) {
+    this.httpClient = httpClient;
+  }
+
+  @Override
+  public ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+    return new Request(uri, method);
+  }
+
+  private final class Request implements ClientHttpRequest {
+    private final URI uri;
+    private final HttpMethod method;
+    private final HttpHeaders headers = new HttpHeaders();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+    Request(URI uri, HttpMethod method) {
+      this.uri = uri;
+      this.method = method;
+    }
+
+    @Override public HttpMethod getMethod() { return method; }
+    @Override public URI getURI() { return uri; }
+    @Override public HttpHeaders getHeaders() { return headers; }
+    @Override public OutputStream getBody() { return body; }
+
+    @Override
+    public ClientHttpResponse execute() throws IOException {
+      RequestBuilder rb = RequestBuilder.create(method.name()).setUri(uri);
+      for (Map.Entry<String, List<String>> h : headers.entrySet()) {
+        // HttpClient computes framing headers from the entity.
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(h.getKey())
+            || HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(h.getKey())) continue;
+        for (String v : h.getValue()) rb.addHeader(h.getKey(), v);
+      }
+      if (body.size() > 0) rb.setEntity(new ByteArrayEntity(body.toByteArray()));
+      HttpUriRequest req = rb.build();
+      return new Response(httpClient.execute(req));
+    }
+  }
+
+  private static final class Response implements ClientHttpResponse {
+    private final CloseableHttpResponse response;
+    private HttpHeaders headers;
+
+    Response(CloseableHttpResponse response) {
+      this.response = response;
+    }
+
+    @Override public HttpStatusCode getStatusCode() { return HttpStatusCode.valueOf(response.getStatusLine().getStatusCode()); }
+    @Override public String getStatusText() { return response.getStatusLine().getReasonPhrase(); }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      if (headers == null) {
+        HttpHeaders h = new HttpHeaders();
+        for (Header header : response.getAllHeaders()) h.add(header.getName(), header.getValue());
+        headers = h;
+      }
+      return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      HttpEntity entity = response.getEntity();
+      return entity != null ? entity.getContent() : InputStream.nullInputStream();
+    }
+
+    @Override
+    public void close() {
+      try {
+        EntityUtils.consumeQuietly(response.getEntity());
+        response.close();
+      } catch (IOException ignored) {
+        // connection is discarded by the pool
+      }
+    }
+  }
+}
@@ -2,17 +2,34 @@ package com.spring.hapi.fhirclient.client;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import com.spring.hapi.fhirclient.metadata.CapabilityIndex;
 import org.hl7.fhir.r4.model.CapabilityStatement;
 /**
  * Holder Class for a fully-initialized, version-aware HAPI FHIR client.
  *
  * Produced by the factory after probing {@code /metadata} to determine the
  * server's FHIR release (R4/R4B/R5). Use {@link #client()} to execute requests,
- * {@link #context()} for configuration, and {@link #capability()} for capability checks.
+ * {@link #context()} for configuration, and {@link #capability()} / {@link #capabilityIndex()}
+ * for capability checks.
  */
 public record VersionedClient(
   FhirContext context,
   IGenericClient client,
   CapabilityStatement capability,
+  CapabilityIndex capabilityIndex,
   FhirRelease release
-) {}
+) {
+  /**
+   * Builds the {@link CapabilityIndex} from {@code capability}.
+   */
+  public VersionedClient(FhirContext context, IGenericClient client, CapabilityStatement capability, FhirRelease release) {
+    this(context, client, capability, CapabilityIndex.of(capability), release);
+  }
+
+  /**
+   * Copy of this client with a refreshed CapabilityStatement; context and HAPI client are reused.
+   */
+  public VersionedClient withCapability(CapabilityStatement refreshed) {
+    return new VersionedClient(context, client, refreshed, release);
+  }
+}
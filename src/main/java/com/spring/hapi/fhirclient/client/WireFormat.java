@@ -0,0 +1,90 @@
+package com.spring.hapi.fhirclient.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.LenientErrorHandler;
+import ca.uhn.fhir.parser.StrictErrorHandler;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestFormatParamStyleEnum;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+
+/**
+ * Response format of one FHIR server, from its {@link FhirClientProperties.Wire} settings.
+ *
+ * <p>{@link #install(IGenericClient)} makes the HAPI client ask for the configured encoding
+ * ({@code Accept}, plus {@code _format} with {@code formatParam}) and, when {@code pretty} is set,
+ * {@code _pretty}; every search and page load through that client follows, so
+ * {@code FhirSearchService} and {@code SearchPager} need no changes of their own.
+ * {@link #newParser} and {@link #newJsonParser} hand out parsers for bodies read outside the HAPI
+ * client, configured for compact output and the server's error handling: lenient without
+ * per-element logging, or strict.</p>
+ *
+ * <p>Parsers are not thread-safe; take a new one per body.</p>
+ */
+public final class WireFormat {
+  private final FhirClientProperties.Wire wire;
+  private final EncodingEnum encoding;
+
+  public WireFormat(FhirClientProperties.Wire wire) {
+    this.wire = wire;
+    this.encoding = "xml".equals(wire.encoding()) ? EncodingEnum.XML : EncodingEnum.JSON;
+  }
+
+  /** Encoding asked of the server. */
+  public EncodingEnum encoding() {
+    return encoding;
+  }
+
+  /** Apply encoding, {@code _format} style and {@code _pretty} to {@code client}. */
+  public void install(IGenericClient client) {
+    client.setEncoding(encoding);
+    client.setFormatParamStyle(wire.formatParam() ? RequestFormatParamStyleEnum.SHORT : RequestFormatParamStyleEnum.NONE);
+    if (Boolean.TRUE.equals(wire.pretty())) {
+      client.setPrettyPrint(true);
+    } else if (Boolean.FALSE.equals(wire.pretty())) {
+      // HAPI only ever sends _pretty=true, so the explicit false is added to each request here
+      client.registerInterceptor(new IClientInterceptor() {
+        @Override public void interceptRequest(IHttpRequest request) {
+          request.setUri(appendIfAbsent(request.getUri(), "_pretty", "false"));
+        }
+        @Override public void interceptResponse(IHttpResponse response) { }
+      });
+    }
+  }
+
+  /** Parser for bodies in the server's encoding. */
+  public IParser newParser(FhirContext ctx) {
+    return configure(encoding.newParser(ctx));
+  }
+
+  /** JSON parser with the server's error handling, for JSON-only paths such as streaming searches. */
+  public IParser newJsonParser(FhirContext ctx) {
+    return configure(ctx.newJsonParser());
+  }
+
+  /**
+   * {@code url} with the query parameters {@link #install} would add, for a JSON request sent over
+   * plain HTTP.
+   */
+  public String decorate(String url) {
+    String out = wire.formatParam() ? appendIfAbsent(url, "_format", "json") : url;
+    return wire.pretty() != null ? appendIfAbsent(out, "_pretty", wire.pretty().toString()) : out;
+  }
+
+  /** {@code url} with {@code name=value} added, unless the query already has {@code name}. */
+  private static String appendIfAbsent(String url, String name, String value) {
+    int q = url.indexOf('?');
+    if (q >= 0 && ("&" + url.substring(q + 1)).contains("&" + name + "=")) return url;
+    return url + (q < 0 ? '?' : '&') + name + '=' + value;
+  }
+
+  private IParser configure(IParser parser) {
+    parser.setPrettyPrint(false);
+    parser.setParserErrorHandler(wire.lenient() ? new LenientErrorHandler(false) : new StrictErrorHandler());
+    return parser;
+  }
+}
@@ -0,0 +1,59 @@
+package com.spring.hapi.fhirclient.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executors for asynchronous FHIR work (see {@link AsyncProperties}).
+ *
+ * <ul>
+ *   <li>{@code fhirExecutor} runs blocking HTTP calls: virtual-thread-per-task by default.</li>
+ *   <li>{@code fhirBlockingExecutor} runs tasks that park for long stretches while holding their
+ *       thread: prefetch producers waiting for buffer room, batch searches waiting for a concurrency
+ *       permit, bulk file downloads. With virtual threads it is just another virtual-thread-per-task
+ *       executor; in platform mode it is a cached pool, so those waits never occupy the fixed
+ *       {@code fhirExecutor} threads the work they wait for needs (which could starve or deadlock a
+ *       small {@code platform-pool-size}). Its thread count is bounded by the callers: one per open
+ *       prefetching iterator, per pending batch search and per concurrent bulk download.</li>
+ *   <li>{@code fhirRetryScheduler} schedules async retry back-off; it never runs HTTP calls itself.</li>
+ * </ul>
+ */
+@Configuration
+public class AsyncConfig {
+
+  @Bean(name = "fhirExecutor", destroyMethod = "shutdownNow")
+  ExecutorService fhirExecutor(AsyncProperties props) {
+    if (props.virtualThreads()) {
+      return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("fhir-vt-", 0).factory());
+    }
+    return Executors.newFixedThreadPool(props.platformPoolSize(), daemon("fhir-exec-"));
+  }
+
+  @Bean(name = "fhirBlockingExecutor", destroyMethod = "shutdownNow")
+  ExecutorService fhirBlockingExecutor(AsyncProperties props) {
+    if (props.virtualThreads()) {
+      return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("fhir-vt-wait-", 0).factory());
+    }
+    return Executors.newCachedThreadPool(daemon("fhir-wait-"));
+  }
+
+  @Bean(name = "fhirRetryScheduler", destroyMethod = "shutdownNow")
+  ScheduledExecutorService fhirRetryScheduler(AsyncProperties props) {
+    return Executors.newScheduledThreadPool(props.schedulerThreads(), daemon("fhir-retry-"));
+  }
+
+  private static ThreadFactory daemon(String prefix) {
+    AtomicInteger n = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, prefix + n.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+}
@@ -0,0 +1,31 @@
+package com.spring.hapi.fhirclient.config;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Executor settings for asynchronous FHIR calls, bound from prefix {@code fhir-async}.
+ *
+ * <p>With {@code virtualThreads: true} (the default) every async search, page fetch or batch entry runs
+ * on its own virtual thread, so in-flight requests are not bounded by a platform thread pool.
+ * With {@code false}, a fixed pool of {@code platformPoolSize} platform threads is used instead, and
+ * work that parks while waiting (prefetch producers, batch permits, bulk downloads) moves to a separate
+ * cached pool so it cannot starve that fixed pool; see {@link AsyncConfig}.
+ * {@code schedulerThreads} serve the async retry back-off delays.</p>
+ *
+ * Example (application.yml):
+ * fhir-async:
+ *   virtual-threads: true
+ *   platform-pool-size: 32
+ *   scheduler-threads: 1
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-async")
+public record AsyncProperties(Boolean virtualThreads, @PositiveOrZero int platformPoolSize, @PositiveOrZero int schedulerThreads) {
+  public AsyncProperties {
+    if (virtualThreads == null) virtualThreads = Boolean.TRUE;
+    if (platformPoolSize <= 0) platformPoolSize = Runtime.getRuntime().availableProcessors() * 4;
+    if (schedulerThreads <= 0) schedulerThreads = 1;
+  }
+}
@@ -0,0 +1,25 @@
+package com.spring.hapi.fhirclient.config;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Fan-out settings for running many searches at once, bound from prefix {@code fhir-search-batch}.
+ *
+ * <p>{@code maxConcurrency} caps searches in flight across all servers; {@code perServerMaxConcurrency}
+ * caps them per FHIR server so one slow endpoint cannot take every slot.</p>
+ *
+ * Example (application.yml):
+ * fhir-search-batch:
+ *   max-concurrency: 64
+ *   per-server-max-concurrency: 16
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-search-batch")
+public record BatchProperties(@PositiveOrZero int maxConcurrency, @PositiveOrZero int perServerMaxConcurrency) {
+  public BatchProperties {
+    if (maxConcurrency <= 0) maxConcurrency = 64;
+    if (perServerMaxConcurrency <= 0) perServerMaxConcurrency = 16;
+  }
+}
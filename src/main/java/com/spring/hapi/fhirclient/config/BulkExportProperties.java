@@ -0,0 +1,47 @@
+package com.spring.hapi.fhirclient.config;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.nio.file.Path;
+
+/**
+ * FHIR Bulk Data ({@code $export}) client settings bound from prefix {@code fhir-bulk}.
+ *
+ * <p>The status URL is polled starting at {@code pollInitialMs}, growing by {@code pollMultiplier} up to
+ * {@code pollMaxMs}; a {@code Retry-After} from the server takes precedence (still capped at
+ * {@code pollMaxMs}). An export still running after {@code timeoutMs} fails. Output files are
+ * downloaded {@code downloadConcurrency} at a time into {@code downloadDir} and removed once parsed
+ * unless {@code keepFiles} is set.</p>
+ *
+ * Example (application.yml):
+ * fhir-bulk:
+ *   poll-initial-ms: 1000
+ *   poll-max-ms: 60000
+ *   poll-multiplier: 1.5
+ *   timeout-ms: 3600000
+ *   download-concurrency: 4
+ *   download-dir: /var/tmp/fhir-bulk
+ *   keep-files: false
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-bulk")
+public record BulkExportProperties(@PositiveOrZero long pollInitialMs,
+                                   @PositiveOrZero long pollMaxMs,
+                                   Double pollMultiplier,
+                                   @PositiveOrZero long timeoutMs,
+                                   @PositiveOrZero int downloadConcurrency,
+                                   String downloadDir,
+                                   boolean keepFiles) {
+  public BulkExportProperties {
+    if (pollInitialMs <= 0) pollInitialMs = 1000;
+    if (pollMaxMs <= 0) pollMaxMs = 60_000;
+    if (pollMultiplier == null || pollMultiplier < 1) pollMultiplier = 1.5;
+    if (timeoutMs <= 0) timeoutMs = 3_600_000;
+    if (downloadConcurrency <= 0) downloadConcurrency = 4;
+    if (downloadDir == null || downloadDir.isBlank()) {
+      downloadDir = Path.of(System.getProperty("java.io.tmpdir"), "fhir-bulk").toString();
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package com.spring.hapi.fhirclient.config;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Search result cache settings bound from properties with prefix {@code fhir-search-cache}.
+ *
+ * <p>Only searches that declare {@code cacheTtlSeconds} in their YAML definition are cached.
+ * {@code maxEntries} bounds the cache size. Entries whose response carried an {@code ETag} or
+ * {@code Last-Modified} header are kept {@code staleRetentionSeconds} past their TTL so they can be
+ * revalidated with a conditional request instead of re-downloaded.</p>
+ *
+ * Example (application.yml):
+ * fhir-search-cache:
+ *   enabled: true
+ *   max-entries: 10000
+ *   stale-retention-seconds: 3600
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-search-cache")
+public record CacheProperties(boolean enabled, @PositiveOrZero long maxEntries, @PositiveOrZero long staleRetentionSeconds) {
+  public CacheProperties {
+    if (maxEntries <= 0) maxEntries = 10_000;
+    if (staleRetentionSeconds <= 0) staleRetentionSeconds = 3_600;
+  }
+}
@@ -0,0 +1,27 @@
+package com.spring.hapi.fhirclient.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.nio.file.Path;
+
+/**
+ * On-disk CapabilityStatement snapshots bound from prefix {@code fhir-capability-store}.
+ *
+ * <p>When enabled (the default) the last CapabilityStatement fetched from each base URL is kept under
+ * {@code dir}, and a client for that URL is built from it at startup without waiting for
+ * {@code /metadata}; the live statement is then fetched in the background.</p>
+ *
+ * Example (application.yml):
+ * fhir-capability-store:
+ *   enabled: true
+ *   dir: /var/cache/fhir-client/capabilities
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-capability-store")
+public record CapabilityStoreProperties(Boolean enabled, String dir) {
+  public CapabilityStoreProperties {
+    if (enabled == null) enabled = Boolean.TRUE;
+    if (dir == null || dir.isBlank()) dir = Path.of(System.getProperty("java.io.tmpdir"), "fhir-capabilities").toString();
+  }
+}
@@ -0,0 +1,33 @@
+package com.spring.hapi.fhirclient.config;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Batch coalescing settings bound from properties with prefix {@code fhir-search-coalescing}.
+ *
+ * <p>Searches submitted through {@code FhirSearchService.runCoalesced} are buffered per server for up
+ * to {@code windowMs}, or until {@code flushSize} are waiting, and then sent together as one FHIR
+ * {@code batch} Bundle. A single Bundle never carries more than {@code maxEntries} entries; larger
+ * flushes are split.</p>
+ *
+ * Example (application.yml):
+ * fhir-search-coalescing:
+ *   enabled: true
+ *   window-ms: 10
+ *   flush-size: 20
+ *   max-entries: 100
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-search-coalescing")
+public record CoalescingProperties(boolean enabled,
+                                   @PositiveOrZero long windowMs,
+                                   @PositiveOrZero int flushSize,
+                                   @PositiveOrZero int maxEntries) {
+  public CoalescingProperties {
+    if (windowMs <= 0) windowMs = 10;
+    if (flushSize <= 0) flushSize = 20;
+    if (maxEntries <= 0) maxEntries = 100;
+  }
+}
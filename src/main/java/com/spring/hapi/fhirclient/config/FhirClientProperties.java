@@ -6,19 +6,216 @@ import jakarta.validation.constraints.Positive;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * FHIR client settings (bound from prefix {@code fhir-server}).
+ *
+ * <p>{@code capabilityRefreshMs} controls how often the cached client re-fetches the server's
+ * CapabilityStatement in the background (default 15 minutes).</p>
+ *
+ * <p>{@code http} sizes the shared connection pool used by the HAPI client, the {@code /metadata}
+ * probe, OAuth token calls and streaming searches (see {@link HttpTransportConfig}), and picks the
+ * response compressions it accepts. {@code wire} picks the response format asked for and how it is
+ * parsed (see {@link com.spring.hapi.fhirclient.client.WireFormat}).</p>
+ *
+ * <p>{@code servers} names further FHIR endpoints, each with one or more replica URLs and its own
+ * auth and transport settings; a search picks one with {@code server:} in its YAML definition.
+ * {@code baseUrl} is the server named {@value #DEFAULT_SERVER} unless {@code servers} defines that
+ * name itself. A server's own {@code http} and {@code wire} blocks replace the top-level ones.
+ * {@code routing} controls how reads are spread across replicas.</p>
  */
 @Validated
 @ConfigurationProperties(prefix = "fhir-server")
 public record FhirClientProperties(
         @NotBlank String baseUrl,
         @Positive int connectTimeoutMs,
-        @Positive int socketTimeoutMs
+        @Positive int socketTimeoutMs,
+        long capabilityRefreshMs,
+        Http http,
+        Map<String, Server> servers,
+        Routing routing,
+        Wire wire
 ) {
+  /** Name of the server searches run against when they do not name one. */
+  public static final String DEFAULT_SERVER = "default";
+
   // Defaults & guardrails
   public FhirClientProperties {
     if (connectTimeoutMs <= 0) connectTimeoutMs = 5_000;
     if (socketTimeoutMs  <= 0) socketTimeoutMs  = 15_000;
+    if (capabilityRefreshMs <= 0) capabilityRefreshMs = 900_000;
+    if (http == null) http = new Http(0, 0, 0, 0, null, false, null);
+    servers = (servers == null) ? Map.of() : Map.copyOf(servers);
+    if (routing == null) routing = new Routing(null, 0, 0);
+    if (wire == null) wire = new Wire(null, null, null, null);
+  }
+
+  /**
+   * Settings of server {@code name} ({@value #DEFAULT_SERVER} when null).
+   *
+   * @throws IllegalArgumentException if no such server is configured
+   */
+  public Server server(String name) {
+    String n = (name == null || name.isBlank()) ? DEFAULT_SERVER : name;
+    Server s = servers.get(n);
+    if (s != null) return s;
+    if (DEFAULT_SERVER.equals(n)) return new Server(List.of(baseUrl), null, 0, 0, null, null);
+    throw new IllegalArgumentException("Unknown FHIR server: " + n);
+  }
+
+  /**
+   * Name of the configured server that has {@code baseUrl} as one of its replicas, else
+   * {@value #DEFAULT_SERVER}.
+   */
+  public String serverNameFor(String baseUrl) {
+    String url = normalize(baseUrl);
+    for (Map.Entry<String, Server> e : servers.entrySet()) {
+      if (e.getValue().urls().contains(url)) return e.getKey();
+    }
+    return DEFAULT_SERVER;
+  }
+
+  /** Wire settings of the server that has {@code baseUrl} as a replica, else the top-level ones. */
+  public Wire wireFor(String baseUrl) {
+    Wire own = server(serverNameFor(baseUrl)).wire();
+    return own != null ? own : wire;
+  }
+
+  /** {@code url} without trailing slashes: HAPI reports server bases with one, configuration without. */
+  public static String normalize(String url) {
+    return url.replaceAll("/+$", "");
+  }
+
+  /**
+   * One named FHIR server (prefix {@code fhir-server.servers.<name>}).
+   *
+   * @param urls base URLs of interchangeable replicas; reads are spread across them
+   * @param auth OAuth registration under {@code security.oauth2} ({@code default} when unset), or
+   *             {@code none} to send no token
+   * @param connectTimeoutMs overrides the top-level value when &gt; 0
+   * @param socketTimeoutMs overrides the top-level value when &gt; 0
+   * @param http dedicated connection pool for this server's HAPI client; the shared pool when unset
+   * @param wire response format for this server; the top-level {@code wire} when unset
+   */
+  public record Server(
+          List<String> urls,
+          String auth,
+          int connectTimeoutMs,
+          int socketTimeoutMs,
+          Http http,
+          Wire wire
+  ) {
+    public static final String NO_AUTH = "none";
+
+    public Server {
+      urls = (urls == null) ? List.of() : urls.stream().map(FhirClientProperties::normalize).toList();
+      if (urls.isEmpty()) throw new IllegalArgumentException("A FHIR server needs at least one url");
+      if (auth == null || auth.isBlank()) auth = "default"; // the top-level security.oauth2 client
+    }
+
+    /** True unless {@code auth} is {@value #NO_AUTH}. */
+    public boolean authenticated() {
+      return !NO_AUTH.equals(auth.toLowerCase(Locale.ROOT));
+    }
+
+    /** True if this server has its own transport rather than the shared pool. */
+    public boolean dedicatedTransport() {
+      return http != null || connectTimeoutMs > 0 || socketTimeoutMs > 0;
+    }
+  }
+
+  /** How a read picks one of a server's replicas. */
+  public enum Selection {
+    /** Fewest requests in flight; ties go to the lower smoothed latency. */
+    LEAST_OUTSTANDING,
+    /** Lowest (in flight + 1) x smoothed latency. */
+    LATENCY_WEIGHTED
+  }
+
+  /**
+   * Replica selection and health ejection (prefix {@code fhir-server.routing}).
+   *
+   * @param selection {@code least-outstanding} (default) or {@code latency-weighted}
+   * @param ejectAfterFailures consecutive failures (5xx/429, I/O errors) that take a replica out of
+   *                           rotation (default 5)
+   * @param ejectMs how long an ejected replica is skipped (default 30s); if every replica is ejected,
+   *                the selection runs over all of them
+   */
+  public record Routing(Selection selection, int ejectAfterFailures, long ejectMs) {
+    public Routing {
+      if (selection == null) selection = Selection.LEAST_OUTSTANDING;
+      if (ejectAfterFailures <= 0) ejectAfterFailures = 5;
+      if (ejectMs <= 0) ejectMs = 30_000;
+    }
+  }
+
+  /**
+   * Transport settings (prefix {@code fhir-server.http}).
+   *
+   * @param maxTotal pooled connections across all hosts (default 200)
+   * @param maxPerRoute pooled connections per host (default 50)
+   * @param keepAliveMs how long an idle connection may be reused when the server sends no
+   *                    {@code Keep-Alive} hint; a shorter server hint wins (default 30s)
+   * @param idleEvictMs idle connections older than this are closed by a background sweeper (default 30s)
+   * @param compression advertise {@code encodings} and decode compressed responses (default true)
+   * @param http2 use the JDK HttpClient with HTTP/2 for the plain-HTTP calls (metadata, OAuth,
+   *              streaming); the HAPI client always uses the pooled HTTP/1.1 client (default false)
+   * @param encodings {@code Accept-Encoding} values offered when {@code compression} is on, any of
+   *                  {@code gzip}, {@code deflate}, {@code br} (default gzip, deflate)
+   */
+  public record Http(
+          int maxTotal,
+          int maxPerRoute,
+          long keepAliveMs,
+          long idleEvictMs,
+          Boolean compression,
+          boolean http2,
+          List<String> encodings
+  ) {
+    /** Content codings that can be decoded. */
+    public static final List<String> SUPPORTED_ENCODINGS = List.of("gzip", "deflate", "br");
+
+    public Http {
+      if (maxTotal <= 0) maxTotal = 200;
+      if (maxPerRoute <= 0) maxPerRoute = 50;
+      if (maxPerRoute > maxTotal) maxPerRoute = maxTotal;
+      if (keepAliveMs <= 0) keepAliveMs = 30_000;
+      if (idleEvictMs <= 0) idleEvictMs = 30_000;
+      if (compression == null) compression = true;
+      encodings = (encodings == null || encodings.isEmpty()) ? List.of("gzip", "deflate")
+        : encodings.stream().map(e -> e.trim().toLowerCase(Locale.ROOT)).distinct().toList();
+      for (String e : encodings) {
+        if (!SUPPORTED_ENCODINGS.contains(e)) {
+          throw new IllegalArgumentException("Unsupported content encoding '" + e + "', expected one of " + SUPPORTED_ENCODINGS);
+        }
+      }
+    }
+  }
+
+  /**
+   * Response format asked of a server and how it is parsed (prefix {@code fhir-server.wire}, or
+   * {@code wire} under a server).
+   *
+   * @param encoding {@code json} (default) or {@code xml}; sets the HAPI client's {@code Accept}
+   * @param formatParam also send {@code _format} in the URL, for servers that ignore {@code Accept}
+   *                    (default false)
+   * @param pretty {@code false} sends {@code _pretty=false} so the server leaves out indentation,
+   *               {@code true} asks for it; unset leaves it to the server
+   * @param lenient parse leniently without logging every unknown element (default true); {@code false}
+   *                rejects them. Applies to bodies parsed outside the HAPI client (streaming searches,
+   *                bulk files); the HAPI client parses with its shared context's lenient handler
+   */
+  public record Wire(String encoding, Boolean formatParam, Boolean pretty, Boolean lenient) {
+    public Wire {
+      encoding = (encoding == null || encoding.isBlank()) ? "json" : encoding.trim().toLowerCase(Locale.ROOT);
+      if (!encoding.equals("json") && !encoding.equals("xml")) {
+        throw new IllegalArgumentException("Unsupported FHIR encoding '" + encoding + "', expected json or xml");
+      }
+      if (formatParam == null) formatParam = false;
+      if (lenient == null) lenient = true;
+    }
   }
 }
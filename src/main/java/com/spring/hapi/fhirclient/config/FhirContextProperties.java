@@ -0,0 +1,27 @@
+package com.spring.hapi.fhirclient.config;
+
+import com.spring.hapi.fhirclient.client.FhirRelease;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.List;
+
+/**
+ * Shared {@code FhirContext} settings bound from prefix {@code fhir-context}.
+ *
+ * <p>The contexts of the releases listed in {@code prewarm} (default R4) are built on a background
+ * thread at startup, together with the definitions of every resource type named in the search packs,
+ * so the first client and the first search do not pay for model scanning. An empty list builds
+ * contexts on first use only.</p>
+ *
+ * Example (application.yml):
+ * fhir-context:
+ *   prewarm: [R4, R5]
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-context")
+public record FhirContextProperties(List<FhirRelease> prewarm) {
+  public FhirContextProperties {
+    prewarm = (prewarm == null) ? List.of(FhirRelease.R4) : List.copyOf(prewarm);
+  }
+}
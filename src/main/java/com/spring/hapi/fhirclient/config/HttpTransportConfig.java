@@ -0,0 +1,185 @@
+package com.spring.hapi.fhirclient.config;
+
+import com.spring.hapi.fhirclient.client.PooledClientHttpRequestFactory;
+import com.spring.hapi.fhirclient.interceptors.AsyncRequestLogIntc;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.client.entity.InputStreamFactory;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.brotli.dec.BrotliInputStream;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP transport for every outbound FHIR and OAuth call (see {@link FhirClientProperties.Http}).
+ *
+ * <ul>
+ *   <li>{@code fhirHttpClient}: pooled Apache HttpClient 4 handed to HAPI's restful client factory.
+ *       Connections are kept alive, validated after 2s of inactivity and evicted when idle.</li>
+ *   <li>{@code fhirRestTemplate}: used for {@code /metadata}, token requests, streaming searches and
+ *       bulk export. By default it runs on {@code fhirHttpClient} so all calls share one pool; with
+ *       {@code fhir-server.http.http2} it runs on a JDK {@link HttpClient} that negotiates HTTP/2.
+ *       When the request log is on, its exchanges are logged too ({@link AsyncRequestLogIntc}).</li>
+ * </ul>
+ *
+ * <p>With {@code compression} on, both offer the configured {@code encodings} in {@code Accept-Encoding}
+ * and decode the response through {@link #decode}; {@code br} uses the Brotli decoder.</p>
+ */
+@Configuration
+public class HttpTransportConfig {
+
+  @Bean(name = "fhirHttpClient", destroyMethod = "close")
+  CloseableHttpClient fhirHttpClient(FhirClientProperties props) {
+    return pooledHttpClient(props.http(), props.connectTimeoutMs(), props.socketTimeoutMs());
+  }
+
+  /**
+   * Pooled HttpClient 4 with the given pool and timeout settings; also used for servers that declare
+   * their own transport under {@code fhir-server.servers}. The caller owns (and closes) the client.
+   */
+  public static CloseableHttpClient pooledHttpClient(FhirClientProperties.Http http, int connectTimeoutMs, int socketTimeoutMs) {
+    PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+    pool.setMaxTotal(http.maxTotal());
+    pool.setDefaultMaxPerRoute(http.maxPerRoute());
+    pool.setValidateAfterInactivity(2_000);
+
+    // HAPI ignores its own timeout settings once a client is supplied, so they are applied here.
+    RequestConfig timeouts = RequestConfig.custom()
+      .setConnectTimeout(connectTimeoutMs)
+      .setConnectionRequestTimeout(connectTimeoutMs)
+      .setSocketTimeout(socketTimeoutMs)
+      .build();
+
+    long keepAlive = http.keepAliveMs();
+    ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+      long hinted = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      return hinted > 0 ? Math.min(hinted, keepAlive) : keepAlive;
+    };
+
+    HttpClientBuilder builder = HttpClientBuilder.create()
+      .setConnectionManager(pool)
+      .setDefaultRequestConfig(timeouts)
+      .setKeepAliveStrategy(keepAliveStrategy)
+      .evictExpiredConnections()
+      .evictIdleConnections(http.idleEvictMs(), TimeUnit.MILLISECONDS)
+      .useSystemProperties();
+    if (!http.compression()) {
+      builder.disableContentCompression();
+    } else {
+      // Accept-Encoding is built from these keys
+      Map<String, InputStreamFactory> decoders = new LinkedHashMap<>();
+      for (String encoding : http.encodings()) decoders.put(encoding, in -> decode(encoding, in));
+      builder.setContentDecoderRegistry(decoders);
+    }
+    return builder.build();
+  }
+
+  @Bean(name = "fhirRestTemplate")
+  RestTemplate fhirRestTemplate(FhirClientProperties props,
+                                @Qualifier("fhirHttpClient") CloseableHttpClient httpClient,
+                                ObjectProvider<AsyncRequestLogIntc> requestLog) {
+    RestTemplate rest = restTemplate(props, httpClient);
+    // innermost, so it sees the response as it came off the wire
+    requestLog.ifAvailable(rest.getInterceptors()::add);
+    return rest;
+  }
+
+  static RestTemplate restTemplate(FhirClientProperties props, CloseableHttpClient httpClient) {
+    FhirClientProperties.Http http = props.http();
+    if (!http.http2()) {
+      return new RestTemplate(new PooledClientHttpRequestFactory(httpClient));
+    }
+    HttpClient jdk = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .connectTimeout(Duration.ofMillis(props.connectTimeoutMs()))
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .build();
+    JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(jdk);
+    factory.setReadTimeout(Duration.ofMillis(props.socketTimeoutMs()));
+    RestTemplate rest = new RestTemplate(factory);
+    if (http.compression()) rest.getInterceptors().add(decompressing(http.encodings()));
+    return rest;
+  }
+
+  /**
+   * Decoding stream for content coding {@code encoding} ({@code gzip}/{@code x-gzip}, {@code deflate},
+   * {@code br}) over {@code in}.
+   *
+   * @throws IOException for any other coding, or a malformed gzip header
+   */
+  public static InputStream decode(String encoding, InputStream in) throws IOException {
+    return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+      case "gzip", "x-gzip" -> new GZIPInputStream(in);
+      case "deflate" -> new DeflateInputStream(in); // zlib-wrapped or raw, as servers differ
+      // the decoder drops buffered output when read() is mixed with read(byte[]); only ever bulk-read it
+      case "br" -> new BufferedInputStream(new BrotliInputStream(in));
+      default -> throw new IOException("Unsupported Content-Encoding: " + encoding);
+    };
+  }
+
+  /** The JDK client does not decode {@code Content-Encoding}; this adds the request header and the decoding. */
+  private static ClientHttpRequestInterceptor decompressing(List<String> encodings) {
+    String accept = String.join(", ", encodings);
+    return (request, body, execution) -> {
+      request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, accept);
+      ClientHttpResponse response = execution.execute(request, body);
+      String encoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+      if (encoding == null || encoding.isBlank() || encoding.trim().equalsIgnoreCase("identity")) return response;
+      return new DecodedResponse(response, encoding);
+    };
+  }
+
+  private static final class DecodedResponse implements ClientHttpResponse {
+    private final ClientHttpResponse delegate;
+    private final String encoding;
+    private final HttpHeaders headers;
+    private InputStream body;
+
+    DecodedResponse(ClientHttpResponse delegate, String encoding) {
+      this.delegate = delegate;
+      this.encoding = encoding;
+      HttpHeaders h = new HttpHeaders();
+      h.putAll(delegate.getHeaders());
+      h.remove(HttpHeaders.CONTENT_ENCODING);
+      h.remove(HttpHeaders.CONTENT_LENGTH);
+      this.headers = HttpHeaders.readOnlyHttpHeaders(h);
+    }
+
+    @Override public HttpStatusCode getStatusCode() throws IOException { return delegate.getStatusCode(); }
+    @Override public String getStatusText() throws IOException { return delegate.getStatusText(); }
+    @Override public HttpHeaders getHeaders() { return headers; }
+    @Override public void close() { delegate.close(); }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      if (body == null) {
+        body = decode(encoding, delegate.getBody());
+      }
+      return body;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.spring.hapi.fhirclient.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides a Prometheus {@link MeterRegistry} when none is configured (e.g. no actuator on the classpath),
+ * so client metrics are always recorded and can be scraped via {@link PrometheusMeterRegistry#scrape()}.
+ */
+@Configuration
+public class MetricsConfig {
+
+  @Bean
+  @ConditionalOnMissingBean(MeterRegistry.class)
+  PrometheusMeterRegistry prometheusMeterRegistry() {
+    return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+  }
+}
@@ -0,0 +1,31 @@
+package com.spring.hapi.fhirclient.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.List;
+
+/**
+ * Client metrics settings bound from properties with prefix {@code fhir-metrics}.
+ *
+ * <p>Every timer publishes histogram buckets at {@code sloMs}; payload summaries publish buckets at
+ * {@code payloadSloBytes}. {@code percentileHistogram} additionally publishes Micrometer's default
+ * bucket set (more series, needed for server-side percentile queries over arbitrary ranges).
+ * With {@code enabled: false} all meters are no-ops.</p>
+ *
+ * Example (application.yml):
+ * fhir-metrics:
+ *   enabled: true
+ *   slo-ms: [50, 100, 250, 500, 1000, 2500, 5000, 10000]
+ *   payload-slo-bytes: [1024, 16384, 131072, 1048576, 8388608]
+ *   percentile-histogram: false
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-metrics")
+public record MetricsProperties(Boolean enabled, List<Long> sloMs, List<Long> payloadSloBytes, boolean percentileHistogram) {
+  public MetricsProperties {
+    if (enabled == null) enabled = true;
+    if (sloMs == null || sloMs.isEmpty()) sloMs = List.of(50L, 100L, 250L, 500L, 1_000L, 2_500L, 5_000L, 10_000L);
+    if (payloadSloBytes == null || payloadSloBytes.isEmpty()) payloadSloBytes = List.of(1_024L, 16_384L, 131_072L, 1_048_576L, 8_388_608L);
+  }
+}
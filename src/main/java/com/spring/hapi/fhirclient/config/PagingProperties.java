@@ -0,0 +1,23 @@
+package com.spring.hapi.fhirclient.config;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Paging settings bound from properties with prefix {@code fhir-search-paging}.
+ *
+ * <p>{@code prefetchPages} is the number of pages the prefetching pager may fetch ahead of the
+ * consumer. When that many pages are buffered, fetching pauses until the consumer catches up.</p>
+ *
+ * Example (application.yml):
+ * fhir-search-paging:
+ *   prefetch-pages: 2
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-search-paging")
+public record PagingProperties(@PositiveOrZero int prefetchPages) {
+  public PagingProperties {
+    if (prefetchPages <= 0) prefetchPages = 2;
+  }
+}
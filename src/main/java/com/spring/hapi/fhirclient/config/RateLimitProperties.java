@@ -0,0 +1,77 @@
+package com.spring.hapi.fhirclient.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.Map;
+
+/**
+ * Client-side request rate limits bound from prefix {@code fhir-rate-limit}.
+ *
+ * <p>Buckets exist per server base URL ({@code servers}, or {@code defaultServer} for servers not
+ * listed), per named search ({@code searches}) and per caller tag ({@code tags}); a request takes a
+ * token from every bucket that applies to it. Map keys containing {@code :} or {@code /} must be
+ * bracketed in YAML, e.g. {@code "[https://fhir.example.org/r4]"}.</p>
+ *
+ * Example (application.yml):
+ * fhir-rate-limit:
+ *   enabled: true
+ *   default-server:
+ *     permits-per-second: 50
+ *     burst: 10
+ *   servers:
+ *     "[https://fhir.example.org/r4]":
+ *       permits-per-second: 10
+ *       burst: 5
+ *       mode: block
+ *       max-wait-ms: 30000
+ *   searches:
+ *     observations-by-patient:
+ *       permits-per-second: 5
+ *   tags:
+ *     bulk-extract:
+ *       permits-per-second: 20
+ *       mode: fail-fast
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-rate-limit")
+public record RateLimitProperties(boolean enabled,
+                                  Limit defaultServer,
+                                  Map<String, Limit> servers,
+                                  Map<String, Limit> searches,
+                                  Map<String, Limit> tags) {
+  public RateLimitProperties {
+    servers = servers == null ? Map.of() : Map.copyOf(servers);
+    searches = searches == null ? Map.of() : Map.copyOf(searches);
+    tags = tags == null ? Map.of() : Map.copyOf(tags);
+  }
+
+  /** What a caller does when its bucket is empty. */
+  public enum Mode {
+    /** Wait for the next token, up to {@code maxWaitMs}, then fail. */
+    BLOCK,
+    /** Fail immediately. */
+    FAIL_FAST
+  }
+
+  /**
+   * One token bucket.
+   *
+   * @param permitsPerSecond sustained rate; 0 or less disables the bucket
+   * @param burst requests allowed back to back after an idle period (default 1)
+   * @param mode {@code block} (default) or {@code fail-fast}
+   * @param maxWaitMs longest wait in block mode (default 30s)
+   */
+  public record Limit(double permitsPerSecond, int burst, Mode mode, long maxWaitMs) {
+    public Limit {
+      if (permitsPerSecond < 0) permitsPerSecond = 0;
+      if (burst <= 0) burst = 1;
+      if (mode == null) mode = Mode.BLOCK;
+      if (maxWaitMs <= 0) maxWaitMs = 30_000;
+    }
+
+    public boolean limited() {
+      return permitsPerSecond > 0;
+    }
+  }
+}
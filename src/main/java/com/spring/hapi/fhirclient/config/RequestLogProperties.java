@@ -0,0 +1,34 @@
+package com.spring.hapi.fhirclient.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Asynchronous request log settings bound from properties with prefix {@code interceptors.request-log}.
+ *
+ * <p>{@code sampleRate} is the fraction of successful exchanges logged (0..1); with
+ * {@code alwaysLogErrors} every non-2xx/3xx exchange is logged regardless. {@code bufferSize} bounds
+ * the hand-off queue to the writer thread; events arriving while it is full are dropped and counted
+ * in {@code fhir.request.log.dropped}. {@code maxBodyChars} &gt; 0 also captures up to that many
+ * characters of the request and response bodies of logged HAPI client exchanges (this buffers the
+ * response); exchanges through {@code fhirRestTemplate} are logged without bodies.</p>
+ *
+ * Example (application.yml):
+ * interceptors:
+ *   request-log:
+ *     enabled: true
+ *     sample-rate: 1.0
+ *     always-log-errors: true
+ *     buffer-size: 8192
+ *     max-body-chars: 0
+ */
+@Validated
+@ConfigurationProperties(prefix = "interceptors.request-log")
+public record RequestLogProperties(boolean enabled, Double sampleRate, Boolean alwaysLogErrors, int bufferSize, int maxBodyChars) {
+  public RequestLogProperties {
+    if (sampleRate == null || sampleRate < 0 || sampleRate > 1) sampleRate = 1.0;
+    if (alwaysLogErrors == null) alwaysLogErrors = true;
+    if (bufferSize <= 0) bufferSize = 8_192;
+    if (maxBodyChars < 0) maxBodyChars = 0;
+  }
+}
@@ -0,0 +1,92 @@
+package com.spring.hapi.fhirclient.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Per-server circuit breaker and adaptive concurrency limit, bound from prefix {@code fhir-resilience}.
+ *
+ * <p>Both sit inside the retry loop of {@code ResilientExecutor}, so every attempt is counted by the
+ * breaker and holds a limiter permit only while it is on the wire.</p>
+ *
+ * Example (application.yml):
+ * fhir-resilience:
+ *   circuit-breaker:
+ *     enabled: true
+ *     failure-rate-threshold: 50
+ *     slow-call-ms: 10000
+ *     window-size: 50
+ *     minimum-calls: 20
+ *     open-ms: 30000
+ *     half-open-calls: 5
+ *   limiter:
+ *     enabled: true
+ *     initial-limit: 20
+ *     min-limit: 2
+ *     max-limit: 200
+ *     backoff-ratio: 0.9
+ *     latency-tolerance: 2.0
+ *     max-wait-ms: 10000
+ */
+@Validated
+@ConfigurationProperties(prefix = "fhir-resilience")
+public record ResilienceProperties(CircuitBreaker circuitBreaker, Limiter limiter) {
+  public ResilienceProperties {
+    if (circuitBreaker == null) circuitBreaker = new CircuitBreaker(null, 0, 0, 0, 0, 0, 0);
+    if (limiter == null) limiter = new Limiter(null, 0, 0, 0, null, null, 0);
+  }
+
+  /**
+   * Breaker per FHIR server base URL. Only server distress (retryable statuses, connection failures)
+   * and calls slower than {@code slowCallMs} count against it; 4xx answers do not.
+   *
+   * @param enabled default true
+   * @param failureRateThreshold percentage of failed calls in the window that opens the breaker (default 50)
+   * @param slowCallMs calls slower than this count as slow; 100% slow calls also open it (default 10s)
+   * @param windowSize count-based sliding window (default 50)
+   * @param minimumCalls calls needed before the rate is evaluated (default 20)
+   * @param openMs how long the breaker rejects calls before probing (default 30s)
+   * @param halfOpenCalls probe calls allowed while half-open (default 5)
+   */
+  public record CircuitBreaker(Boolean enabled, float failureRateThreshold, long slowCallMs, int windowSize,
+                               int minimumCalls, long openMs, int halfOpenCalls) {
+    public CircuitBreaker {
+      if (enabled == null) enabled = true;
+      if (failureRateThreshold <= 0 || failureRateThreshold > 100) failureRateThreshold = 50;
+      if (slowCallMs <= 0) slowCallMs = 10_000;
+      if (windowSize <= 0) windowSize = 50;
+      if (minimumCalls <= 0) minimumCalls = 20;
+      if (openMs <= 0) openMs = 30_000;
+      if (halfOpenCalls <= 0) halfOpenCalls = 5;
+    }
+  }
+
+  /**
+   * AIMD concurrency limit per FHIR server: the limit grows by about one per round trip while calls
+   * are fast, and is multiplied by {@code backoffRatio} (at most once per round trip) when a call
+   * signals distress or takes longer than {@code latencyTolerance} times the smoothed latency.
+   * Callers over the limit wait up to {@code maxWaitMs} for a permit.
+   *
+   * @param enabled default true
+   * @param initialLimit starting limit (default 20)
+   * @param minLimit floor (default 2)
+   * @param maxLimit ceiling (default 200)
+   * @param backoffRatio multiplicative decrease, 0..1 (default 0.9)
+   * @param latencyTolerance latency over baseline that counts as congestion (default 2.0)
+   * @param maxWaitMs longest wait for a permit before failing (default 10s)
+   */
+  public record Limiter(Boolean enabled, int initialLimit, int minLimit, int maxLimit, Double backoffRatio,
+                        Double latencyTolerance, long maxWaitMs) {
+    public Limiter {
+      if (enabled == null) enabled = true;
+      if (minLimit <= 0) minLimit = 2;
+      if (maxLimit <= 0) maxLimit = 200;
+      if (maxLimit < minLimit) maxLimit = minLimit;
+      if (initialLimit <= 0) initialLimit = 20;
+      initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+      if (backoffRatio == null || backoffRatio <= 0 || backoffRatio >= 1) backoffRatio = 0.9;
+      if (latencyTolerance == null || latencyTolerance < 1) latencyTolerance = 2.0;
+      if (maxWaitMs <= 0) maxWaitMs = 10_000;
+    }
+  }
+}
@@ -2,18 +2,41 @@ package com.spring.hapi.fhirclient.config;
 
 import jakarta.validation.constraints.Positive;
 import org.springframework.boot.context.properties.ConfigurationProperties;
-import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.List;
+
 /**
  * Retry settings bound from application properties with prefix {@code FHIR-request-retry}.
  *
+ * <p>Only idempotent reads are retried, and only when the failure signals server distress: a
+ * status in {@code retryStatuses} or a connection failure. The n-th wait is
+ * {@code min(maxBackoffMs, backoffMs * multiplier^(n-1))}, reduced by a random share of up to
+ * {@code jitter} (0..1) so that clients that failed together do not retry together. A
+ * {@code Retry-After} header on a 429/503 replaces the computed wait, capped at {@code maxRetryAfterMs}.</p>
+ *
  * Example (application.yml):
  * FHIR-request-retry:
  *   enabled: true
  *   max-attempts: 3
  *   backoff-ms: 200
+ *   max-backoff-ms: 5000
+ *   multiplier: 2.0
+ *   jitter: 0.5
+ *   max-retry-after-ms: 30000
+ *   retry-statuses: [429, 500, 502, 503, 504]
  */
 @Validated
 @ConfigurationProperties(prefix = "fhir-request-retry")
-public record RetryProperties (boolean enabled, @Positive int maxAttempts, @Positive long backoffMs ){}
+public record RetryProperties (boolean enabled, @Positive int maxAttempts, @Positive long backoffMs,
+                               long maxBackoffMs, Double multiplier, Double jitter, long maxRetryAfterMs,
+                               List<Integer> retryStatuses) {
+  public RetryProperties {
+    if (maxBackoffMs <= 0) maxBackoffMs = 5_000;
+    if (maxBackoffMs < backoffMs) maxBackoffMs = backoffMs;
+    if (multiplier == null || multiplier < 1) multiplier = 2.0;
+    if (jitter == null || jitter < 0 || jitter > 1) jitter = 0.5;
+    if (maxRetryAfterMs <= 0) maxRetryAfterMs = 30_000;
+    retryStatuses = (retryStatuses == null || retryStatuses.isEmpty()) ? List.of(429, 500, 502, 503, 504) : List.copyOf(retryStatuses);
+  }
+}
@@ -13,10 +13,24 @@ import java.util.List;
  * <p>Each entry is a Spring resource location (e.g., {@code classpath:searches/core.searches.yml}
  * or a filesystem path). The application loads all packs at startup.</p>
  *
+ * <p>With {@code hotReload} (default off) the packs are watched while the application runs and
+ * re-loaded when they change: filesystem locations (including an exploded classpath) through a
+ * {@code WatchService}, anything else by checking every {@code reloadPollMs} (default 2s).</p>
+ *
+ * <p>{@code startupCache} names a file where the parsed packs are kept between runs; packs whose file
+ * has not changed are then read from it instead of being parsed again. Unset disables it.</p>
+ *
  * Example (application.yml):
  * fhir-search-ymls:
  *   packs: classpath:searches/core.searches.yml, classpath:searches/custom.searches.yml #if multiple, use comma delimited list
+ *   hot-reload: true
+ *   reload-poll-ms: 2000
+ *   startup-cache: /var/cache/fhir-client/search-packs.bin
  */
 @Validated
 @ConfigurationProperties(prefix = "fhir-search-ymls")
-public record SearchProperties(@NotNull List<String> packs) {}
+public record SearchProperties(@NotNull List<String> packs, boolean hotReload, long reloadPollMs, String startupCache) {
+  public SearchProperties {
+    if (reloadPollMs <= 0) reloadPollMs = 2000;
+  }
+}
@@ -2,6 +2,8 @@ package com.spring.hapi.fhirclient.config;
 
 import jakarta.validation.constraints.NotBlank;
 
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
@@ -17,6 +19,13 @@ import org.springframework.validation.annotation.Validated;
  *     client-id: my-client
  *     client-secret: ${OAUTH_CLIENT_SECRET}
  *     scope: "system/*.read"
+ *     refresh-fraction: 0.8          # renew in the background after 80% of expires_in
+ *     registrations:                 # optional extra client registrations / scopes
+ *       bulk:
+ *         scope: "system/*.read system/Group.read"
+ *
+ * The top-level client is registration {@code default}. Unset fields of an extra registration
+ * fall back to the top-level values.
  */
 @Validated
 @ConfigurationProperties(prefix = "security.oauth2")
@@ -26,6 +35,16 @@ public record SecurityProperties (
   @NotBlank String tokenUri,
   @NotBlank   String clientId,
   @NotBlank  String clientSecret,
-  String scope
-){}
+  String scope,
+  Double refreshFraction,
+  Map<String, Registration> registrations
+){
+  public SecurityProperties {
+    if (refreshFraction == null || refreshFraction <= 0 || refreshFraction >= 1) refreshFraction = 0.8;
+    registrations = (registrations == null) ? Map.of() : Map.copyOf(registrations);
+  }
+
+  /** One client-credentials registration (token endpoint, client and scope). */
+  public record Registration(String tokenUri, String clientId, String clientSecret, String scope) {}
+}
 
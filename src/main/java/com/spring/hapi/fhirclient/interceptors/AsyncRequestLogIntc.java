@@ -0,0 +1,208 @@
+package com.spring.hapi.fhirclient.interceptors;
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import com.spring.hapi.fhirclient.config.RequestLogProperties;
+import com.spring.hapi.fhirclient.util.MpscRingBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hapi FHIR Interceptor that writes one structured line per HTTP exchange without doing the log
+ * work on the request thread.
+ *
+ * <p>The request thread only captures a compact {@link Event} (method, URL, status, duration,
+ * content length, request id) and offers it to a lock-free {@link MpscRingBuffer}; formatting and the
+ * SLF4J call happen on the {@code fhir-request-log} daemon thread. If the buffer is full the event is
+ * dropped, never waited for. Lines go to logger {@code fhir.request-log}:</p>
+ * <pre>method=GET status=200 ms=12.41 contentLength=5120 id=3f2a... url=https://host/fhir/Patient?...</pre>
+ *
+ * <p>{@code ms} runs until the response headers arrive, and {@code contentLength} is the
+ * {@code Content-Length} header as received, or -1 without one. Chunked responses have none, and
+ * neither do responses the transport has already decompressed.</p>
+ *
+ * <p>The same instance is also a {@link ClientHttpRequestInterceptor} on {@code fhirRestTemplate}, so
+ * the plain-HTTP paths (streaming searches, bulk export, {@code /metadata}, token requests) are logged
+ * alongside the HAPI client's traffic. Bodies are only ever captured for HAPI client exchanges: the
+ * RestTemplate paths stream their responses and carry OAuth client credentials in request bodies.</p>
+ *
+ * <p>Sampling, error logging, buffer size and body capture are configured by
+ * {@link RequestLogProperties}. The sampling decision is made when the response arrives, so failed
+ * exchanges can always be logged.</p>
+ */
+@Component
+@ConditionalOnProperty(prefix="interceptors.request-log", name="enabled", havingValue="true")
+public class AsyncRequestLogIntc implements IClientInterceptor, ClientHttpRequestInterceptor {
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncRequestLogIntc.class);
+  private static final Logger OUT = LoggerFactory.getLogger("fhir.request-log");
+  private static final int DRAIN_BATCH = 256;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+  /** One logged exchange; bodies are null unless body capture is on. */
+  record Event(String method, String url, int status, long nanos, long contentLength, String requestId,
+               String requestBody, String responseBody) {}
+
+  private record Pending(IHttpRequest request, long startNanos) {}
+
+  private final RequestLogProperties props;
+  private final String requestIdHeader;
+  private final MpscRingBuffer<Event> buffer;
+  private final Counter dropped;
+  private final ThreadLocal<Pending> pending = new ThreadLocal<>();
+  private final Thread writer;
+  private volatile boolean running = true;
+
+  public AsyncRequestLogIntc(RequestLogProperties props,
+                             MeterRegistry registry,
+                             @Value("${interceptors.request-id.header-name:X-Request-Id}") String requestIdHeader) {
+    this.props = props;
+    this.requestIdHeader = requestIdHeader;
+    this.buffer = new MpscRingBuffer<>(props.bufferSize());
+    this.dropped = Counter.builder("fhir.request.log.dropped")
+      .description("Request log events dropped because the writer fell behind")
+      .register(registry);
+    this.writer = new Thread(this::writeLoop, "fhir-request-log");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  @Override public void interceptRequest(IHttpRequest request) {
+    pending.set(new Pending(request, System.nanoTime()));
+  }
+
+  @Override public void interceptResponse(IHttpResponse response) throws IOException {
+    Pending p = pending.get();
+    pending.remove();
+    if (p == null) return;
+    long nanos = System.nanoTime() - p.startNanos();
+    int status = response.getStatus();
+    if (!shouldLog(status)) return;
+
+    IHttpRequest req = p.request();
+    String requestBody = null;
+    String responseBody = null;
+    if (props.maxBodyChars() > 0) {
+      requestBody = truncate(req.getRequestBodyFromStream());
+      responseBody = responseBody(response);
+    }
+    offer(new Event(req.getHttpVerbName(), req.getUri(), status, nanos,
+      contentLength(first(response.getHeaders("Content-Length"))),
+      first(req.getAllHeaders().get(requestIdHeader)), requestBody, responseBody));
+  }
+
+  @Override
+  public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    long start = System.nanoTime();
+    ClientHttpResponse response = execution.execute(request, body);
+    long nanos = System.nanoTime() - start;
+    int status = response.getStatusCode().value();
+    if (shouldLog(status)) {
+      offer(new Event(request.getMethod().name(), request.getURI().toString(), status, nanos,
+        contentLength(response.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH)),
+        request.getHeaders().getFirst(requestIdHeader), null, null));
+    }
+    return response;
+  }
+
+  private boolean shouldLog(int status) {
+    boolean error = status >= 400 || status < 200;
+    return (error && props.alwaysLogErrors()) || sampled();
+  }
+
+  private void offer(Event e) {
+    if (!buffer.offer(e)) dropped.increment();
+  }
+
+  private boolean sampled() {
+    double rate = props.sampleRate();
+    return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  /** Buffers the entity so HAPI can still parse it, then reads at most {@code maxBodyChars}. */
+  private String responseBody(IHttpResponse response) throws IOException {
+    response.bufferEntity();
+    try (InputStream in = response.readEntity()) {
+      if (in == null) return null;
+      char[] buf = new char[props.maxBodyChars()];
+      Reader r = new InputStreamReader(in, StandardCharsets.UTF_8);
+      int n = 0;
+      int read;
+      while (n < buf.length && (read = r.read(buf, n, buf.length - n)) > 0) n += read;
+      return new String(buf, 0, n);
+    }
+  }
+
+  private String truncate(String body) {
+    if (body == null || body.length() <= props.maxBodyChars()) return body;
+    return body.substring(0, props.maxBodyChars());
+  }
+
+  private static long contentLength(String v) {
+    if (v == null) return -1;
+    try {
+      return Long.parseLong(v.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String first(List<String> values) {
+    return (values == null || values.isEmpty()) ? null : values.get(0);
+  }
+
+  private void writeLoop() {
+    StringBuilder sb = new StringBuilder(512);
+    while (running || buffer.size() > 0) {
+      int n = buffer.drain(e -> write(sb, e), DRAIN_BATCH);
+      if (n == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+  }
+
+  private void write(StringBuilder sb, Event e) {
+    try {
+      sb.setLength(0);
+      sb.append("method=").append(e.method())
+        .append(" status=").append(e.status())
+        .append(" ms=").append(e.nanos() / 10_000 / 100.0)
+        .append(" contentLength=").append(e.contentLength())
+        .append(" id=").append(e.requestId())
+        .append(" url=").append(e.url());
+      if (e.requestBody() != null) sb.append(" requestBody=").append(e.requestBody());
+      if (e.responseBody() != null) sb.append(" responseBody=").append(e.responseBody());
+      OUT.info(sb.toString());
+    } catch (RuntimeException ex) {
+      LOG.warn("Request log write failed: {}", ex.toString());
+    }
+  }
+
+  /** Stop the writer after it has flushed what is already queued. */
+  @PreDestroy
+  void shutdown() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(writer);
+    writer.join(TimeUnit.SECONDS.toMillis(5));
+  }
+}
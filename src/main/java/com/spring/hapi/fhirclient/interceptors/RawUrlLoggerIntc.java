@@ -25,6 +25,7 @@ public class RawUrlLoggerIntc implements IClientInterceptor {
 
     @Override
     public void interceptRequest(IHttpRequest request) {
+        if (!LOG.isInfoEnabled()) return;
         String raw = request.getUri(); // what HAPI will call
         String ascii = raw;
         try { ascii = URI.create(raw).toASCIIString(); } catch (Exception ignored) {}
@@ -0,0 +1,58 @@
+package com.spring.hapi.fhirclient.interceptors;
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hapi FHIR Interceptor that remembers the {@code ETag} / {@code Last-Modified} headers of the last
+ * response on the calling thread, so the search cache can revalidate with {@code If-None-Match} /
+ * {@code If-Modified-Since}. HAPI executes a request and its interceptors on the caller's thread.
+ */
+@Component
+@ConditionalOnProperty(prefix="fhir-search-cache", name="enabled", havingValue="true")
+public class ResponseValidatorsIntc implements IClientInterceptor {
+
+  /** Validators from one response; either may be null. */
+  public record Validators(String etag, String lastModified) {
+    public boolean isEmpty() {
+      return etag == null && lastModified == null;
+    }
+  }
+
+  private static final ThreadLocal<Validators> LAST = new ThreadLocal<>();
+
+  /**
+   * Validators of the last response seen on this thread, clearing them.
+   */
+  public static Validators take() {
+    Validators v = LAST.get();
+    LAST.remove();
+    return v;
+  }
+
+  @Override public void interceptRequest(IHttpRequest request) {
+    LAST.remove();
+  }
+
+  @Override public void interceptResponse(IHttpResponse response) throws IOException {
+    Map<String, List<String>> headers = response.getAllHeaders();
+    String etag = first(headers, "ETag");
+    String lastModified = first(headers, "Last-Modified");
+    if (etag != null || lastModified != null) LAST.set(new Validators(etag, lastModified));
+  }
+
+  private static String first(Map<String, List<String>> headers, String name) {
+    if (headers == null) return null;
+    for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+      if (e.getKey() != null && e.getKey().equalsIgnoreCase(name) && !e.getValue().isEmpty()) return e.getValue().get(0);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,41 @@
+package com.spring.hapi.fhirclient.interceptors;
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Hapi FHIR Interceptor that remembers the {@code Retry-After} header of a 429 or 503 response on the
+ * calling thread. HAPI does not copy response headers onto the exception it throws for the status, so
+ * {@link com.spring.hapi.fhirclient.util.ResilientExecutor} picks the value up here to pace its retry.
+ */
+@Component
+@ConditionalOnProperty(prefix="fhir-request-retry", name="enabled", havingValue="true")
+public class RetryAfterIntc implements IClientInterceptor {
+  private static final ThreadLocal<String> LAST = new ThreadLocal<>();
+
+  /**
+   * {@code Retry-After} of the last 429/503 response seen on this thread, clearing it.
+   */
+  public static String take() {
+    String v = LAST.get();
+    LAST.remove();
+    return v;
+  }
+
+  @Override public void interceptRequest(IHttpRequest request) {
+    LAST.remove();
+  }
+
+  @Override public void interceptResponse(IHttpResponse response) throws IOException {
+    int status = response.getStatus();
+    if (status != 429 && status != 503) return;
+    List<String> v = response.getHeaders("Retry-After");
+    if (v != null && !v.isEmpty()) LAST.set(v.get(0));
+  }
+}
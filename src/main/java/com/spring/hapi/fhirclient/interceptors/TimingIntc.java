@@ -3,44 +3,61 @@ package com.spring.hapi.fhirclient.interceptors;
 import ca.uhn.fhir.rest.client.api.IClientInterceptor;
 import ca.uhn.fhir.rest.client.api.IHttpRequest;
 import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Hapi FHIR Interceptor that captures the start and stop time of a url call.
+ * Hapi FHIR Interceptor that times each HTTP exchange.
+ *
+ * <p>Records {@code fhir.client.requests} (tags {@code method}, {@code status}) and, when the server
+ * sends {@code Content-Length}, {@code fhir.client.response.size}. The per-request log line is written
+ * at DEBUG.</p>
  */
 @Component
 @ConditionalOnProperty(prefix="interceptors.timing", name="enabled", havingValue="true")
 public class TimingIntc implements IClientInterceptor {
   private static final Logger LOG = LoggerFactory.getLogger(TimingIntc.class);
 
-  private static class ReqInfo {
-    final String method;
-    final String uri;
-    final long startMs;
-    ReqInfo(String method, String uri, long startMs) { this.method = method; this.uri = uri; this.startMs = startMs; }
-  }
+  private record ReqInfo(String method, String uri, long startNanos) {}
 
   private final ThreadLocal<ReqInfo> ctx = new ThreadLocal<>();
+  private final FhirMetrics metrics;
+
+  public TimingIntc(FhirMetrics metrics) {
+    this.metrics = metrics;
+  }
 
   @Override public void interceptRequest(IHttpRequest request) {
     String method = request != null && request.getHttpVerbName()!=null ? request.getHttpVerbName() : "HTTP";
     String uri = request != null ? request.getUri() : "<unknown>";
-    ctx.set(new ReqInfo(method, uri, System.currentTimeMillis()));
+    ctx.set(new ReqInfo(method, uri, System.nanoTime()));
   }
 
   @Override public void interceptResponse(IHttpResponse response) throws IOException {
     ReqInfo info = ctx.get();
-    long dur = System.currentTimeMillis() - (info != null ? info.startMs : System.currentTimeMillis());
-    if (info != null) {
-      LOG.info("[TIMING] {} {} -> {} ms", info.method, info.uri, dur);
-    } else {
-      LOG.info("[TIMING] request completed in {} ms", dur);
-    }
     ctx.remove();
+    if (info == null) return;
+    long nanos = System.nanoTime() - info.startNanos();
+    metrics.recordHttp(info.method(), response.getStatus(), contentLength(response), nanos);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("[TIMING] {} {} -> {} ms", info.method(), info.uri(), TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+  }
+
+  private static long contentLength(IHttpResponse response) {
+    List<String> values = response.getHeaders("Content-Length");
+    if (values == null || values.isEmpty()) return -1;
+    try {
+      return Long.parseLong(values.get(0).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
   }
 }
@@ -0,0 +1,163 @@
+package com.spring.hapi.fhirclient.metadata;
+
+import com.spring.hapi.fhirclient.search.SearchDef;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+/**
+ * Pre-computed lookup tables over a {@link CapabilityStatement}.
+ *
+ * <p>Built once per statement (see {@link com.spring.hapi.fhirclient.client.VersionedClient}) so that
+ * capability checks are hash lookups instead of walks over {@code rest.resource[x].searchParam}.
+ * Per resource type it records search params, includes, revIncludes and interactions; system-level
+ * interactions (e.g. {@code batch}, {@code transaction}) are kept separately.</p>
+ *
+ * <p>{@link #validate(SearchDef)} memoizes its verdict per {@link SearchDef} instance. Because a new
+ * index is built whenever the CapabilityStatement is refreshed, the memo never outlives the
+ * statement it was computed against; a search-pack reload, which replaces definitions under the same
+ * statement, drops the verdicts of the replaced ones with {@link #retainVerdicts}.</p>
+ *
+ * Thread-safety: immutable apart from the verdict memo, which is a concurrent map.
+ */
+public final class CapabilityIndex {
+  /** Capabilities advertised for a single resource type. */
+  public record ResourceCapabilities(Set<String> searchParams,
+                                     Set<String> includes,
+                                     Set<String> revIncludes,
+                                     Set<String> interactions) {
+    static final ResourceCapabilities EMPTY = new ResourceCapabilities(Set.of(), Set.of(), Set.of(), Set.of());
+  }
+
+  public static final CapabilityIndex EMPTY = new CapabilityIndex(Map.of(), Set.of());
+
+  private static final String SUPPORTED = "";
+
+  private final Map<String, ResourceCapabilities> resources;
+  private final Set<String> systemInteractions;
+  private final Map<SearchDef, String> verdicts = new ConcurrentHashMap<>();
+
+  private CapabilityIndex(Map<String, ResourceCapabilities> resources, Set<String> systemInteractions) {
+    this.resources = resources;
+    this.systemInteractions = systemInteractions;
+  }
+
+  /**
+   * Index every {@code rest} entry of the statement. Null-safe.
+   */
+  public static CapabilityIndex of(CapabilityStatement cs) {
+    if (cs == null || cs.getRest() == null) return EMPTY;
+    Map<String, Builder> byType = new HashMap<>();
+    Set<String> system = new LinkedHashSet<>();
+    for (var rest : cs.getRest()) {
+      for (var si : rest.getInteraction()) {
+        if (si.getCode() != null) system.add(si.getCode().toCode());
+      }
+      for (var rr : rest.getResource()) {
+        if (rr.getType() == null) continue;
+        Builder b = byType.computeIfAbsent(rr.getType(), t -> new Builder());
+        rr.getSearchParam().forEach(sp -> { if (sp.getName() != null) b.params.add(sp.getName()); });
+        rr.getSearchInclude().forEach(st -> { if (st.getValue() != null) b.includes.add(st.getValue()); });
+        rr.getSearchRevInclude().forEach(st -> { if (st.getValue() != null) b.revIncludes.add(st.getValue()); });
+        rr.getInteraction().forEach(i -> { if (i.getCode() != null) b.interactions.add(i.getCode().toCode()); });
+      }
+    }
+    Map<String, ResourceCapabilities> out = new HashMap<>();
+    byType.forEach((type, b) -> out.put(type, b.build()));
+    return new CapabilityIndex(Collections.unmodifiableMap(out), Collections.unmodifiableSet(system));
+  }
+
+  public ResourceCapabilities resource(String resourceType) {
+    return resources.getOrDefault(resourceType, ResourceCapabilities.EMPTY);
+  }
+
+  public Set<String> searchParams(String resourceType) {
+    return resource(resourceType).searchParams();
+  }
+
+  public boolean supportsSearchParam(String resourceType, String param) {
+    return resource(resourceType).searchParams().contains(param);
+  }
+
+  public boolean supportsInclude(String resourceType, String include) {
+    return resource(resourceType).includes().contains(include);
+  }
+
+  public boolean supportsRevInclude(String resourceType, String revInclude) {
+    return resource(resourceType).revIncludes().contains(revInclude);
+  }
+
+  /** Type-level interaction, e.g. {@code read}, {@code search-type}. */
+  public boolean supportsInteraction(String resourceType, String interaction) {
+    return resource(resourceType).interactions().contains(interaction);
+  }
+
+  /** System-level interaction, e.g. {@code batch}, {@code transaction}, {@code search-system}. */
+  public boolean supportsSystemInteraction(String interaction) {
+    return systemInteractions.contains(interaction);
+  }
+
+  /**
+   * Check that every non-system param (not starting with {@code _}) of {@code def} is advertised
+   * for its resource. The verdict is computed once per definition and then served from the memo.
+   *
+   * @return {@code null} when supported, otherwise a description of the first unsupported param
+   */
+  public String validate(SearchDef def) {
+    String verdict = verdicts.get(def);
+    if (verdict == null) verdict = verdicts.computeIfAbsent(def, this::computeVerdict);
+    return verdict == SUPPORTED ? null : verdict;
+  }
+
+  /** Forget the verdicts of every definition not in {@code live} (compared by identity, like the memo). */
+  public void retainVerdicts(Collection<SearchDef> live) {
+    Set<SearchDef> keep = Collections.newSetFromMap(new IdentityHashMap<>());
+    keep.addAll(live);
+    verdicts.keySet().removeIf(def -> !keep.contains(def));
+  }
+
+  /** Number of memoized verdicts. */
+  int verdictCount() {
+    return verdicts.size();
+  }
+
+  /**
+   * @throws IllegalArgumentException if {@link #validate(SearchDef)} reports a problem
+   */
+  public void assertSupported(SearchDef def) {
+    String problem = validate(def);
+    if (problem != null) throw new IllegalArgumentException(problem);
+  }
+
+  private String computeVerdict(SearchDef def) {
+    if (def.getParams() == null || def.getParams().isEmpty()) return SUPPORTED;
+    Set<String> supported = searchParams(def.getResource());
+    for (String p : def.getParams().keySet()) {
+      if (!supported.contains(p) && !p.startsWith("_")) {
+        return "Search param not supported by server for " + def.getResource() + ": " + p;
+      }
+    }
+    return SUPPORTED;
+  }
+
+  private static final class Builder {
+    final Set<String> params = new LinkedHashSet<>();
+    final Set<String> includes = new LinkedHashSet<>();
+    final Set<String> revIncludes = new LinkedHashSet<>();
+    final Set<String> interactions = new LinkedHashSet<>();
+
+    ResourceCapabilities build() {
+      return new ResourceCapabilities(
+        Collections.unmodifiableSet(params),
+        Collections.unmodifiableSet(includes),
+        Collections.unmodifiableSet(revIncludes),
+        Collections.unmodifiableSet(interactions));
+    }
+  }
+}
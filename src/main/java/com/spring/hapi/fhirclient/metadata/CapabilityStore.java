@@ -0,0 +1,119 @@
+package com.spring.hapi.fhirclient.metadata;
+
+import com.spring.hapi.fhirclient.config.CapabilityStoreProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Last-known CapabilityStatement per FHIR base URL, persisted under
+ * {@code fhir-capability-store.dir} (see {@link CapabilityStoreProperties}).
+ *
+ * <p>Each base URL has one file named by a hash of the URL, {@code <hash>.properties}, holding the URL,
+ * {@code fhirVersion}, the response's {@code ETag} / {@code Last-Modified} for conditional refreshes
+ * and the raw statement as the server sent it. The file is written to a temporary file and moved
+ * into place atomically, so a reader sees either the old snapshot or the new one, never a validator
+ * paired with the wrong body. Failures to read or write are logged and treated as "no snapshot".</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class CapabilityStore {
+  private static final Logger LOG = LoggerFactory.getLogger(CapabilityStore.class);
+
+  private final CapabilityStoreProperties props;
+
+  public CapabilityStore(CapabilityStoreProperties props) {
+    this.props = props;
+  }
+
+  /**
+   * One stored statement.
+   *
+   * @param fhirVersion the statement's {@code fhirVersion} (may be null)
+   * @param etag {@code ETag} of the response it came from (may be null)
+   * @param lastModified {@code Last-Modified} of that response (may be null)
+   * @param json raw CapabilityStatement JSON
+   */
+  public record Snapshot(String fhirVersion, String etag, String lastModified, String json) {}
+
+  public boolean enabled() {
+    return props.enabled();
+  }
+
+  /** Stored statement for {@code baseUrl}, if any. */
+  public Optional<Snapshot> load(String baseUrl) {
+    if (!props.enabled()) return Optional.empty();
+    try {
+      Properties p = new Properties();
+      try (Reader in = Files.newBufferedReader(file(baseUrl), StandardCharsets.UTF_8)) {
+        p.load(in);
+      }
+      String json = p.getProperty("json");
+      if (json == null || !baseUrl.equals(p.getProperty("baseUrl"))) return Optional.empty();
+      return Optional.of(new Snapshot(p.getProperty("fhirVersion"), p.getProperty("etag"), p.getProperty("lastModified"), json));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Ignoring unreadable capability snapshot for {}: {}", baseUrl, e.toString());
+      return Optional.empty();
+    }
+  }
+
+  /** Persist {@code snapshot} as the last-known statement of {@code baseUrl}. */
+  public void save(String baseUrl, Snapshot snapshot) {
+    if (!props.enabled()) return;
+    Path tmp = null;
+    try {
+      Files.createDirectories(Path.of(props.dir()));
+      Properties p = new Properties();
+      p.setProperty("baseUrl", baseUrl);
+      if (snapshot.fhirVersion() != null) p.setProperty("fhirVersion", snapshot.fhirVersion());
+      if (snapshot.etag() != null) p.setProperty("etag", snapshot.etag());
+      if (snapshot.lastModified() != null) p.setProperty("lastModified", snapshot.lastModified());
+      p.setProperty("json", snapshot.json());
+
+      tmp = Files.createTempFile(Path.of(props.dir()), "capability", ".tmp");
+      try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        p.store(out, null);
+      }
+      Files.move(tmp, file(baseUrl), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Could not store capability snapshot for {}: {}", baseUrl, e.toString());
+    } finally {
+      deleteQuietly(tmp);
+    }
+  }
+
+  private static void deleteQuietly(Path tmp) {
+    if (tmp == null) return;
+    try {
+      Files.deleteIfExists(tmp);
+    } catch (IOException e) {
+      LOG.debug("Could not delete {}: {}", tmp, e.toString());
+    }
+  }
+
+  private Path file(String baseUrl) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(baseUrl.getBytes(StandardCharsets.UTF_8));
+      return Path.of(props.dir(), HexFormat.of().formatHex(hash, 0, 16) + ".properties");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
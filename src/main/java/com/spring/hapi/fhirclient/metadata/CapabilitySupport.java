@@ -13,9 +13,16 @@ import java.util.Set;
  * the {@link SearchDef} appears in the server's {@code CapabilityStatement.rest.resource[x].searchParam} for
  * the target resource. Intended to fail fast during startup or before execution.</p>
  *
+ * <p>Prefer {@link #assertSupported(CapabilityIndex, SearchDef)} on hot paths: it reuses the
+ * pre-built index and the memoized per-definition verdict.</p>
+ *
  * Thread-safety: stateless.
  */
 public class CapabilitySupport {
+  public static void assertSupported(CapabilityIndex index, SearchDef def) {
+    index.assertSupported(def);
+  }
+
   public static void assertSupported(CapabilityStatement cs, SearchDef def) {
     if (def.getParams()==null || def.getParams().isEmpty()) return;
     List<CapabilityStatement.CapabilityStatementRestComponent> rests = cs.getRest();
@@ -4,7 +4,6 @@ import org.hl7.fhir.r4.model.CapabilityStatement;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
-import java.util.stream.Collectors;
 /**
  * Read-only helpers for extracting commonly used details from a FHIR {@link CapabilityStatement}.
  *
@@ -21,12 +20,10 @@ public class MetadataService {
   }
 
   public List<String> supportedSearchParams(CapabilityStatement cs, String resourceType) {
-    return cs.getRest().stream()
-      .flatMap(r -> r.getResource().stream())
-      .filter(rr -> resourceType.equals(rr.getType()))
-      .flatMap(rr -> rr.getSearchParam().stream())
-      .map(sp -> sp.getName())
-      .distinct()
-      .collect(Collectors.toList());
+    return supportedSearchParams(CapabilityIndex.of(cs), resourceType);
+  }
+
+  public List<String> supportedSearchParams(CapabilityIndex index, String resourceType) {
+    return List.copyOf(index.searchParams(resourceType));
   }
 }
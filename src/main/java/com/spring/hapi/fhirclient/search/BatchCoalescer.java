@@ -0,0 +1,172 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.CoalescingProperties;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces concurrent searches against the same server into FHIR {@code batch} Bundles.
+ *
+ * <p>Each submitted search becomes a {@code GET} entry. A server's buffer is flushed when the first
+ * waiting entry is {@code window-ms} old or when {@code flush-size} entries are waiting, whichever
+ * comes first. The flush is sent through {@link IGenericClient#transaction()} (retried as
+ * {@code search-batch}), and every {@code entry.response} is routed back to the future of the search
+ * it answers. A non-2xx entry fails only its own future; a failed batch request fails all of them.</p>
+ *
+ * <p>Callers must check {@link #supports(VersionedClient)} first: servers whose CapabilityStatement
+ * does not advertise the {@code batch} interaction are not coalesced.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class BatchCoalescer {
+  private final CoalescingProperties props;
+  private final ResilientExecutor resilient;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService scheduler;
+  private final ConcurrentMap<String, Buffer> buffers = new ConcurrentHashMap<>();
+
+  public BatchCoalescer(CoalescingProperties props,
+                        ResilientExecutor resilient,
+                        @Qualifier("fhirExecutor") ExecutorService executor,
+                        @Qualifier("fhirRetryScheduler") ScheduledExecutorService scheduler) {
+    this.props = props;
+    this.resilient = resilient;
+    this.executor = executor;
+    this.scheduler = scheduler;
+  }
+
+  /** True if coalescing is enabled and the server advertises the system-level {@code batch} interaction. */
+  public boolean supports(VersionedClient vc) {
+    return props.enabled() && vc.capabilityIndex().supportsSystemInteraction("batch");
+  }
+
+  /**
+   * Queue a search for the next batch to {@code vc}'s server.
+   *
+   * @param vc target client
+   * @param relativeUrl search URL relative to the server base (e.g. {@code Patient?identifier=a|b})
+   * @return future completing with the search-set Bundle returned for this entry
+   */
+  public CompletableFuture<Bundle> submit(VersionedClient vc, String relativeUrl) {
+    IGenericClient client = vc.client();
+    Buffer buffer = buffers.computeIfAbsent(FhirClientProperties.normalize(client.getServerBase()), k -> new Buffer());
+    Pending p = new Pending(relativeUrl, new CompletableFuture<>());
+    buffer.add(client, p);
+    return p.future();
+  }
+
+  private record Pending(String url, CompletableFuture<Bundle> future) {}
+
+  /** Entries waiting for one server. */
+  private final class Buffer {
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<Pending> waiting = new ArrayList<>();
+    /** Window timer of the current batch; cancelled whenever the batch is drained. */
+    private ScheduledFuture<?> timer;
+    /** Bumped on every drain, so a timer that already fired cannot flush the next batch early. */
+    private long generation;
+
+    void add(IGenericClient client, Pending p) {
+      List<Pending> ready = null;
+      lock.lock();
+      try {
+        waiting.add(p);
+        if (waiting.size() >= props.flushSize()) {
+          ready = drain();
+        } else if (timer == null) {
+          long gen = generation;
+          timer = scheduler.schedule(() -> executor.execute(() -> flush(client, gen)), props.windowMs(), TimeUnit.MILLISECONDS);
+        }
+      } finally {
+        lock.unlock();
+      }
+      if (ready != null) {
+        List<Pending> batch = ready;
+        executor.execute(() -> send(client, batch));
+      }
+    }
+
+    void flush(IGenericClient client, long gen) {
+      List<Pending> ready;
+      lock.lock();
+      try {
+        if (gen != generation) return;
+        ready = drain();
+      } finally {
+        lock.unlock();
+      }
+      if (!ready.isEmpty()) send(client, ready);
+    }
+
+    private List<Pending> drain() {
+      if (timer != null) {
+        timer.cancel(false);
+        timer = null;
+      }
+      generation++;
+      List<Pending> out = waiting;
+      waiting = new ArrayList<>();
+      return out;
+    }
+  }
+
+  private void send(IGenericClient client, List<Pending> all) {
+    for (int from = 0; from < all.size(); from += props.maxEntries()) {
+      List<Pending> chunk = all.subList(from, Math.min(all.size(), from + props.maxEntries()));
+      try {
+        sendChunk(client, chunk);
+      } catch (RuntimeException e) {
+        chunk.forEach(p -> p.future().completeExceptionally(e));
+      }
+    }
+  }
+
+  private void sendChunk(IGenericClient client, List<Pending> chunk) {
+    Bundle batch = new Bundle().setType(Bundle.BundleType.BATCH);
+    for (Pending p : chunk) {
+      batch.addEntry().getRequest().setMethod(Bundle.HTTPVerb.GET).setUrl(p.url());
+    }
+    Bundle response = resilient.run("search-batch", client.getServerBase(), () -> client.transaction().withBundle(batch).execute());
+    List<Bundle.BundleEntryComponent> entries = response.getEntry();
+    for (int i = 0; i < chunk.size(); i++) {
+      Pending p = chunk.get(i);
+      if (i >= entries.size()) {
+        p.future().completeExceptionally(new IllegalStateException("Batch response has no entry for " + p.url()));
+        continue;
+      }
+      Bundle.BundleEntryComponent e = entries.get(i);
+      String status = e.getResponse().getStatus();
+      if (status != null && status.startsWith("2") && e.getResource() instanceof Bundle b) {
+        p.future().complete(b);
+      } else {
+        p.future().completeExceptionally(new IllegalStateException(
+          "Batch entry failed for " + p.url() + ": " + status + describe(e.getResponse().getOutcome())));
+      }
+    }
+  }
+
+  private static String describe(Object outcome) {
+    if (outcome instanceof OperationOutcome oo && oo.hasIssue()) {
+      return " (" + oo.getIssueFirstRep().getDiagnostics() + ")";
+    }
+    return "";
+  }
+}
@@ -0,0 +1,93 @@
+package com.spring.hapi.fhirclient.search;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sequential {@link Spliterator} over the entry resources of a paged search.
+ *
+ * <p>Nothing is fetched until the first {@link #tryAdvance}. The next page is requested only when
+ * the current one is exhausted, so short-circuiting operations such as {@code limit()} or
+ * {@code findFirst()} never trigger requests for later pages. Only the current page is referenced;
+ * each entry slot is cleared once yielded and the page is dropped when the iterator moves on.</p>
+ *
+ * <p>Entries without a resource are skipped. Included resources ({@code search.mode = include})
+ * are yielded like matches.</p>
+ *
+ * Thread-safety: not thread-safe (like any Spliterator); does not split.
+ */
+public final class BundleEntrySpliterator implements Spliterator<IBaseResource> {
+  private final Supplier<Bundle> firstPage;
+  private final Function<String, Bundle> pageLoader;
+  private boolean started;
+  private List<Bundle.BundleEntryComponent> entries = List.of();
+  private int index;
+  private String nextUrl;
+
+  /**
+   * @param firstPage executes the search; invoked at most once, lazily
+   * @param pageLoader loads the page behind a {@code next} link URL
+   */
+  public BundleEntrySpliterator(Supplier<Bundle> firstPage, Function<String, Bundle> pageLoader) {
+    this.firstPage = firstPage;
+    this.pageLoader = pageLoader;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super IBaseResource> action) {
+    if (!started) {
+      started = true;
+      advanceTo(firstPage.get());
+    }
+    while (true) {
+      while (index < entries.size()) {
+        Bundle.BundleEntryComponent e = entries.set(index++, null);
+        if (e != null && e.getResource() != null) {
+          action.accept(e.getResource());
+          return true;
+        }
+      }
+      if (nextUrl == null) {
+        entries = List.of();
+        return false;
+      }
+      String url = nextUrl;
+      entries = List.of();
+      nextUrl = null;
+      advanceTo(pageLoader.apply(url));
+    }
+  }
+
+  private void advanceTo(Bundle page) {
+    index = 0;
+    if (page == null) {
+      entries = List.of();
+      nextUrl = null;
+      return;
+    }
+    entries = page.getEntry();
+    Bundle.BundleLinkComponent next = page.getLink("next");
+    nextUrl = (next == null) ? null : next.getUrl();
+  }
+
+  @Override
+  public Spliterator<IBaseResource> trySplit() {
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+}
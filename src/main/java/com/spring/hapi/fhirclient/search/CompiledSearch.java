@@ -0,0 +1,264 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.ICriterion;
+import ca.uhn.fhir.rest.gclient.ICriterionInternal;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.StringClientParam;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.util.UrlUtil;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+/**
+ * Immutable query plan compiled once from a {@link SearchDef}.
+ *
+ * <p>{@link QueryBuilder#build} re-interprets the definition on every call. A compiled search does that
+ * work up front:</p>
+ * <ul>
+ *   <li>param values are split into literal segments and {@code ${var}} slots</li>
+ *   <li>params without variables are fully resolved (de-escaped, token vs. string decided) and their
+ *       criteria pre-built; params with variables keep the token heuristic for bind time</li>
+ *   <li>includes/revIncludes, elements, sort order and summary mode are pre-built</li>
+ * </ul>
+ *
+ * <p>{@link #bind(IGenericClient, Map)} then renders each slot in a single pass and produces the same
+ * {@link IQuery} as {@link QueryBuilder#build}. Unlike {@code applyTemplate}, substitution is single-pass:
+ * a variable value that itself contains {@code ${other}} is not expanded again.</p>
+ *
+ * Thread safe: immutable.
+ */
+public final class CompiledSearch {
+
+  private final SearchDef def;
+  private final String resource;
+  private final Param[] params;
+  private final Include[] includes;
+  private final Include[] revIncludes;
+  private final String[] elements;
+  private final SummaryEnum summary;
+  private final String[] sortFields;
+  private final boolean[] sortDescending;
+  private final Integer count;
+
+  private CompiledSearch(SearchDef def) {
+    this.def = def;
+    this.resource = def.getResource();
+    this.params = compileParams(def.getParams());
+    this.includes = toIncludes(def.getIncludes());
+    this.revIncludes = toIncludes(def.getRevIncludes());
+    this.elements = (def.getElements() == null || def.getElements().isEmpty())
+      ? null : def.getElements().toArray(new String[0]);
+    this.summary = toSummary(def.getSummary());
+    int n = def.getSort() == null ? 0 : def.getSort().size();
+    this.sortFields = new String[n];
+    this.sortDescending = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      String s = def.getSort().get(i);
+      sortDescending[i] = s.startsWith("-");
+      sortFields[i] = sortDescending[i] ? s.substring(1) : s;
+    }
+    this.count = def.getCount();
+  }
+
+  /**
+   * Compile {@code def}. The definition must not be mutated afterwards.
+   */
+  public static CompiledSearch compile(SearchDef def) {
+    return new CompiledSearch(def);
+  }
+
+  /** The definition this plan was compiled from. */
+  public SearchDef def() {
+    return def;
+  }
+
+  /**
+   * Bind {@code vars} into the plan and build the HAPI query.
+   *
+   * @param client HAPI client to build the query on
+   * @param vars template variables (may be null or empty)
+   * @return query ready to execute
+   */
+  public IQuery<Bundle> bind(IGenericClient client, Map<String, Object> vars) {
+    IQuery<IBaseBundle> q = client.search().forResource(resource);
+
+    for (Param p : params) {
+      q = q.where(p.criterion(vars));
+    }
+    for (Include inc : includes) {
+      q = q.include(inc);
+    }
+    for (Include inc : revIncludes) {
+      q = q.revInclude(inc);
+    }
+    if (elements != null) {
+      q = q.elementsSubset(elements);
+    }
+    if (summary != null) {
+      q = q.summaryMode(summary);
+    }
+    for (int i = 0; i < sortFields.length; i++) {
+      q = sortDescending[i] ? q.sort().descending(sortFields[i]) : q.sort().ascending(sortFields[i]);
+    }
+    if (count != null) {
+      q = q.count(count);
+    }
+    return q.returnBundle(Bundle.class);
+  }
+
+  /**
+   * Relative search URL ({@code Resource?name=value&...}) for {@code vars}, with param values rendered
+   * by the same criteria {@link #bind} uses. For requests sent outside {@link IQuery}, e.g. streamed
+   * reads or batch entries.
+   *
+   * @param ctx context used to render criterion values
+   * @param vars template variables (may be null or empty)
+   * @return URL relative to the server base, without a leading slash
+   */
+  public String toRelativeUrl(FhirContext ctx, Map<String, Object> vars) {
+    StringBuilder sb = new StringBuilder(128).append(resource);
+    char[] sep = {'?'};
+    for (Param p : params) {
+      ICriterionInternal c = (ICriterionInternal) p.criterion(vars);
+      appendParam(sb, sep, c.getParameterName(), c.getParameterValue(ctx));
+    }
+    for (Include inc : includes) appendParam(sb, sep, "_include", inc.getValue());
+    for (Include inc : revIncludes) appendParam(sb, sep, "_revinclude", inc.getValue());
+    if (sortFields.length > 0) {
+      StringBuilder sort = new StringBuilder();
+      for (int i = 0; i < sortFields.length; i++) {
+        if (i > 0) sort.append(',');
+        if (sortDescending[i]) sort.append('-');
+        sort.append(sortFields[i]);
+      }
+      appendParam(sb, sep, "_sort", sort.toString());
+    }
+    if (count != null) appendParam(sb, sep, "_count", count.toString());
+    if (summary != null) appendParam(sb, sep, "_summary", summary.getCode());
+    if (elements != null) appendParam(sb, sep, "_elements", String.join(",", elements));
+    return sb.toString();
+  }
+
+  private static void appendParam(StringBuilder sb, char[] sep, String name, String value) {
+    sb.append(sep[0]).append(UrlUtil.escapeUrlParam(name)).append('=').append(UrlUtil.escapeUrlParam(value));
+    sep[0] = '&';
+  }
+
+  // --- compile helpers ---
+
+  private static Param[] compileParams(Map<String, String> raw) {
+    if (raw == null || raw.isEmpty()) return new Param[0];
+    Param[] out = new Param[raw.size()];
+    int i = 0;
+    for (Map.Entry<String, String> e : raw.entrySet()) {
+      out[i++] = Param.compile(e.getKey(), e.getValue());
+    }
+    return out;
+  }
+
+  private static Include[] toIncludes(List<String> raw) {
+    if (raw == null) return new Include[0];
+    Include[] out = new Include[raw.size()];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = new Include(raw.get(i)).toLocked();
+    }
+    return out;
+  }
+
+  private static SummaryEnum toSummary(Object s) {
+    if (s instanceof Boolean b && b) return SummaryEnum.TRUE;
+    if ("count".equals(s)) return SummaryEnum.COUNT;
+    if ("text".equals(s)) return SummaryEnum.TEXT;
+    if ("data".equals(s)) return SummaryEnum.DATA;
+    return null;
+  }
+
+  /** Undo property-style escapes ({@code \|} and {@code \,}); returns the input when there is nothing to do. */
+  static String unescape(String value) {
+    if (value == null || value.indexOf('\\') < 0) return value;
+    return value.replace("\\|", "|").replace("\\,", ",");
+  }
+
+  /** Token heuristic shared with {@link QueryBuilder}: a single {@code system|code}, no commas. */
+  static ICriterion<?> criterionFor(String name, String value) {
+    if (value != null && value.indexOf(',') < 0) {
+      int bar = value.indexOf('|');
+      if (bar > 0) {
+        return new TokenClientParam(name).exactly()
+          .systemAndCode(value.substring(0, bar).trim(), value.substring(bar + 1).trim());
+      }
+    }
+    return new StringClientParam(name).matches().value(value);
+  }
+
+  /**
+   * A param value split into literal segments around {@code ${var}} slots:
+   * {@code literals[0] vars[0] literals[1] ... vars[n-1] literals[n]}.
+   */
+  record Template(String[] literals, String[] vars) {
+
+    static Template parse(String raw) {
+      List<String> lits = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      int from = 0;
+      while (true) {
+        int open = raw.indexOf("${", from);
+        int close = open < 0 ? -1 : raw.indexOf('}', open + 2);
+        if (close < 0) break;
+        lits.add(raw.substring(from, open));
+        names.add(raw.substring(open + 2, close));
+        from = close + 1;
+      }
+      lits.add(raw.substring(from));
+      return new Template(lits.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    boolean isConstant() {
+      return vars.length == 0;
+    }
+
+    String render(Map<String, Object> values) {
+      if (vars.length == 0) return literals[0];
+      StringBuilder sb = new StringBuilder(64);
+      sb.append(literals[0]);
+      for (int i = 0; i < vars.length; i++) {
+        String name = vars[i];
+        Object v = values == null ? null : values.get(name);
+        if (v != null || (values != null && values.containsKey(name))) {
+          sb.append(v);
+        } else {
+          sb.append("${").append(name).append('}');
+        }
+        sb.append(literals[i + 1]);
+      }
+      return sb.toString();
+    }
+  }
+
+  /** One compiled search parameter; {@code fixed} is the pre-built criterion of a constant value, else null. */
+  record Param(String name, Template template, ICriterion<?> fixed) {
+
+    static Param compile(String name, String raw) {
+      if (raw == null) {
+        return new Param(name, null, criterionFor(name, null));
+      }
+      Template t = Template.parse(raw);
+      if (!t.isConstant()) {
+        return new Param(name, t, null);
+      }
+      return new Param(name, t, criterionFor(name, unescape(raw)));
+    }
+
+    ICriterion<?> criterion(Map<String, Object> vars) {
+      if (fixed != null) return fixed;
+      return criterionFor(name, unescape(template.render(vars)));
+    }
+  }
+}
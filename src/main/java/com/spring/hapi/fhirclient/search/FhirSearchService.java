@@ -1,83 +1,301 @@
 package com.spring.hapi.fhirclient.search;
 
 import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+import com.spring.hapi.fhirclient.bootstrap.ServerRouter;
 import com.spring.hapi.fhirclient.bootstrap.VersionAdaptiveClientFactory;
+import com.spring.hapi.fhirclient.bootstrap.VersionedClientManager;
 import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
 import com.spring.hapi.fhirclient.metadata.CapabilitySupport;
-import com.spring.hapi.fhirclient.config.SearchProperties;
+import com.spring.hapi.fhirclient.interceptors.ResponseValidatorsIntc;
+import com.spring.hapi.fhirclient.interceptors.ResponseValidatorsIntc.Validators;
+import com.spring.hapi.fhirclient.util.CallTarget;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
 import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import com.spring.hapi.fhirclient.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 
-import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 /**
  * Executes named FHIR searches defined in YAML packs.
  *
- * <p>On startup this service loads all configured YAML "search packs" into an in-memory cache
- * (name → {@link SearchDef}). At runtime it:
+ * <p>Definitions and their pre-compiled {@link CompiledSearch} plans come from {@link SearchCatalog},
+ * which loads the configured YAML "search packs" and, with hot reload on, swaps in new versions while
+ * searches run. At runtime this service:
  * <ol>
- *   <li>Creates a version-adaptive HAPI client via {@link VersionAdaptiveClientFactory}.</li>
- *   <li>Builds a search query from the cached {@link SearchDef} using {@link QueryBuilder}
+ *   <li>Obtains the shared version-adaptive HAPI client from {@link VersionedClientManager}
+ *       (built once per base URL by {@link VersionAdaptiveClientFactory}).</li>
+ *   <li>Binds the variables into the pre-compiled plan via {@link QueryBuilder}
  *       (templating variables, params, elements, includes, sorting, etc.).</li>
  *   <li>Executes the query with {@link ResilientExecutor} and returns a {@link org.hl7.fhir.r4.model.Bundle}.</li>
  * </ol>
  *
- * <p>Thread-safety: the cache is populated once at init and then treated as read-only.</p>
+ * <p>Identical {@link #run} calls that are in flight at the same time (same server base and same final
+ * request URL) share one HTTP request via {@link SingleFlight}; every waiter receives its own
+ * {@link Bundle#copy()}. Requests saved this way are counted in {@code fhir.search.singleflight.saved}.</p>
+ *
+ * <p>{@link #run} and {@link #runAsync} are timed in {@code fhir.search} (tags {@code search},
+ * {@code resource}, {@code outcome}); see {@link FhirMetrics}.</p>
+ *
+ * <p>Each {@link SearchDef} is checked against the server's {@link com.spring.hapi.fhirclient.metadata.CapabilityIndex}
+ * when the packs load and again whenever the CapabilityStatement is refreshed; the verdict is memoized
+ * so the per-request check is a map lookup. When a reload changes searches, their
+ * {@link SearchResultCache} entries are dropped.</p>
+ *
+ * <p>Thread-safety: safe for concurrent use; each call resolves its plan from one catalog snapshot.</p>
  */
 @Service
 public class FhirSearchService {
-  private final VersionAdaptiveClientFactory factory;
-  private final YamlSearchRepository repo;
+
+  private final VersionedClientManager clients;
+  private final ServerRouter router;
+  private final SearchCatalog catalog;
   private final QueryBuilder builder;
   private final ResilientExecutor resilient;
+  private final StreamingSearchExecutor streaming;
+  private final ExecutorService executor;
+  private final BatchCoalescer coalescer;
+  private final SearchResultCache resultCache;
+  private final SingleFlight<String, SearchResultCache.Fetched> inFlight;
+  private final FhirMetrics metrics;
 
-  @Value("#{'${fhir-search-ymls.packs}'.split(',')}")
-  private java.util.List<String> locations;
-
-  private volatile Map<String,SearchDef> cache;
-
-  private final SearchProperties searchProps;
-
-  public FhirSearchService(VersionAdaptiveClientFactory factory,
-                           YamlSearchRepository repo,
+  public FhirSearchService(VersionedClientManager clients,
+                           ServerRouter router,
+                           SearchCatalog catalog,
                            QueryBuilder builder,
                            ResilientExecutor resilient,
-                           SearchProperties searchProps) {
-    this.factory = factory;
-    this.repo = repo;
+                           StreamingSearchExecutor streaming,
+                           @Qualifier("fhirExecutor") ExecutorService executor,
+                           BatchCoalescer coalescer,
+                           SearchResultCache resultCache,
+                           MeterRegistry registry,
+                           FhirMetrics metrics) {
+    this.clients = clients;
+    this.router = router;
+    this.catalog = catalog;
     this.builder = builder;
     this.resilient = resilient;
-    this.searchProps = searchProps;
+    this.streaming = streaming;
+    this.executor = executor;
+    this.coalescer = coalescer;
+    this.resultCache = resultCache;
+    Counter saved = Counter.builder("fhir.search.singleflight.saved")
+      .description("Search requests answered by an identical request already in flight")
+      .register(registry);
+    this.inFlight = new SingleFlight<>(saved::increment);
+    this.metrics = metrics;
   }
 
   @PostConstruct
   void init() {
-    java.util.List<String> locs = searchProps.packs();
-    if (locs == null || locs.isEmpty()) {
-      locs = java.util.List.of("classpath:searches/core.searches.yml");
-    }
-    cache = repo.loadAll(locs);
+    catalog.addListener(resultCache::invalidate);
   }
+
+  /**
+   * Run a named search and return its first page.
+   *
+   * <p>If the definition declares {@code cacheTtlSeconds} and {@code fhir-search-cache.enabled} is on,
+   * the result is served from / stored in {@link SearchResultCache}; stale entries are revalidated with
+   * {@code If-None-Match} / {@code If-Modified-Since} when the server supplied validators.</p>
+   *
+   * <p>Unconditional requests are deduplicated: a call whose URL is already in flight waits for that
+   * response instead of sending its own.</p>
+   */
   public Bundle run(String searchName, Map<String,Object> variables) {
-    SearchDef def = cache.get(searchName);
-    if (def == null) throw new IllegalArgumentException("Unknown search: " + searchName);
+    return run(searchName, variables, null);
+  }
+
+  /**
+   * {@link #run(String, Map)} on behalf of a caller {@code tag}, which selects an additional
+   * {@code fhir-rate-limit.tags} bucket (e.g. {@code bulk-extract}).
+   *
+   * @param tag caller tag, or null
+   */
+  public Bundle run(String searchName, Map<String,Object> variables, String tag) {
+    Prepared p = prepare(searchName, variables, tag);
+    SearchDef def = p.plan().def();
+    return metrics.timed(() -> {
+      if (resultCache.isCacheable(def)) {
+        return resultCache.get(searchName, p.vars(), def.getCacheTtlSeconds(),
+          validators -> validators == null ? fetchShared(p) : fetch(p, validators));
+      }
+      return fetchShared(p).bundle();
+    }, (outcome, nanos) -> metrics.recordSearch(searchName, def.getResource(), outcome, nanos));
+  }
+
+  /**
+   * Unconditional {@link #fetch}, joined with any identical request already in flight. Keyed on the
+   * server base plus the exact relative URL HAPI will send, i.e. the request URL itself.
+   */
+  private SearchResultCache.Fetched fetchShared(Prepared p) {
+    VersionedClient vc = p.client();
+    String key = searchKey(vc.client().getServerBase(), p.plan().toRelativeUrl(vc.context(), p.vars()));
+    return inFlight.run(key, () -> fetch(p, null), SearchResultCache.Fetched::copy);
+  }
+
+  /** Absolute search URL for single-flight keys; the base may be configured with or without a trailing slash. */
+  static String searchKey(String serverBase, String relativeUrl) {
+    return FhirClientProperties.normalize(serverBase) + '/' + relativeUrl;
+  }
+
+  /**
+   * Execute {@code p}, conditionally when {@code validators} are given; a 304 is reported as
+   * {@link SearchResultCache.Fetched#NOT_MODIFIED} rather than retried as a failure.
+   */
+  private SearchResultCache.Fetched fetch(Prepared p, Validators validators) {
+    return resilient.run("search-exec", p.target(), () -> {
+      IQuery<Bundle> q = p.query(builder);
+      if (validators != null && validators.etag() != null) q = q.withAdditionalHeader("If-None-Match", validators.etag());
+      if (validators != null && validators.lastModified() != null) q = q.withAdditionalHeader("If-Modified-Since", validators.lastModified());
+      try {
+        Bundle b = q.execute();
+        return SearchResultCache.Fetched.of(b, ResponseValidatorsIntc.take());
+      } catch (NotModifiedException e) {
+        return SearchResultCache.Fetched.NOT_MODIFIED;
+      }
+    });
+  }
+
+  /**
+   * Non-blocking {@link #run}: client lookup, capability check and execution all happen on the
+   * {@code fhirExecutor} (virtual threads by default), and retries use resilience4j's async retry with
+   * the same {@code search-exec} settings, so the calling thread is never blocked.
+   *
+   * @param searchName name from the loaded YAML packs
+   * @param variables template variables (may be null)
+   * @return future completing with the first page, or exceptionally (e.g. unknown search)
+   */
+  public CompletableFuture<Bundle> runAsync(String searchName, Map<String,Object> variables) {
+    return runAsync(searchName, variables, null);
+  }
+
+  /**
+   * {@link #runAsync(String, Map)} on behalf of a caller {@code tag} (see {@link #run(String, Map, String)}).
+   */
+  public CompletableFuture<Bundle> runAsync(String searchName, Map<String,Object> variables, String tag) {
+    long start = System.nanoTime();
+    return CompletableFuture.supplyAsync(() -> prepare(searchName, variables, tag), executor)
+      .thenCompose(p -> resilient.runAsync("search-exec", p.target(), () -> (Bundle) p.query(builder).execute(), executor)
+        .whenComplete((b, e) -> metrics.recordSearch(searchName, p.plan().def().getResource(),
+          FhirMetrics.outcome(e), System.nanoTime() - start)));
+  }
 
-    VersionedClient vc = factory.create();
-    CapabilitySupport.assertSupported(vc.capability(), def);
+  /**
+   * Like {@link #runAsync} but lets concurrent calls share HTTP round trips: the search is queued by
+   * {@link BatchCoalescer} and sent with others as one FHIR {@code batch} Bundle. Falls back to
+   * {@link #runAsync} when {@code fhir-search-coalescing.enabled} is off or the server's
+   * CapabilityStatement does not advertise {@code batch}.
+   *
+   * <p>Like {@link #runAsync}, and unlike {@link #run}, this bypasses the result cache and single-flight
+   * dedup: an identical search queued twice is sent as two batch entries. Search metrics are recorded
+   * either way.</p>
+   *
+   * @param searchName name from the loaded YAML packs
+   * @param variables template variables (may be null)
+   * @return future completing with this search's result Bundle
+   */
+  public CompletableFuture<Bundle> runCoalesced(String searchName, Map<String,Object> variables) {
+    long start = System.nanoTime();
+    return CompletableFuture.supplyAsync(() -> prepare(searchName, variables, null), executor)
+      .thenCompose(p -> (coalescer.supports(p.client())
+          ? coalescer.submit(p.client(), p.plan().toRelativeUrl(p.client().context(), p.vars()))
+          : resilient.runAsync("search-exec", p.target(), () -> p.query(builder).execute(), executor))
+        .whenComplete((b, e) -> metrics.recordSearch(searchName, p.plan().def().getResource(),
+          FhirMetrics.outcome(e), System.nanoTime() - start)));
+  }
+
+  /**
+   * Stream the entry resources of a named search across all of its pages.
+   *
+   * <p>Pages are fetched lazily as the stream is consumed and released once consumed, so memory
+   * stays flat for large result sets; {@code limit()} and other short-circuiting operations stop
+   * further page requests. The search definition and capabilities are checked eagerly, but no
+   * request is sent until the first element is pulled.</p>
+   *
+   * @param searchName name from the loaded YAML packs
+   * @param variables template variables (may be null)
+   * @return sequential, ordered stream of entry resources
+   */
+  public Stream<IBaseResource> stream(String searchName, Map<String,Object> variables) {
+    Prepared p = prepare(searchName, variables, null);
+    IQuery<Bundle> q = p.query(builder);
+    VersionedClient vc = p.client();
+    BundleEntrySpliterator entries = new BundleEntrySpliterator(
+      () -> (Bundle) resilient.run("search-exec", p.target(), () -> (Bundle) q.execute()),
+      url -> resilient.run("search-page", p.target(), () -> vc.client().loadPage().byUrl(url).andReturnBundle(Bundle.class).execute()));
+    return StreamSupport.stream(entries, false);
+  }
+
+  /**
+   * Opt-in streaming response mode: runs the named search across all pages, parsing each response
+   * body incrementally and passing entry resources to {@code sink} one at a time. No page is ever
+   * materialised as a {@link Bundle}, so peak heap per page is bounded by the largest resource.
+   *
+   * <p>JSON only. Pages are not retried (see {@link StreamingSearchExecutor}).</p>
+   *
+   * @param searchName name from the loaded YAML packs
+   * @param variables template variables (may be null)
+   * @param sink receives each entry resource in order, on the calling thread
+   * @return number of resources delivered
+   */
+  public long runStreaming(String searchName, Map<String,Object> variables, Consumer<IBaseResource> sink) {
+    Prepared p = prepare(searchName, variables, null);
+    return streaming.execute(p.client(), p.target(), p.plan().toRelativeUrl(p.client().context(), p.vars()), sink);
+  }
+
+  /** A validated plan, its variables, the client it will run on and the caller's rate-limit tag. */
+  private record Prepared(String searchName, VersionedClient client, CompiledSearch plan, Map<String,Object> vars, String tag) {
+    IQuery<Bundle> query(QueryBuilder builder) {
+      return builder.build(client.client(), vars, plan);
+    }
+
+    CallTarget target() {
+      return new CallTarget(client.client().getServerBase(), searchName, tag);
+    }
+  }
+
+  /**
+   * Resolve the compiled plan, pick a replica of its server, check the plan against that replica's
+   * capabilities and bind the variables.
+   */
+  private Prepared prepare(String searchName, Map<String,Object> variables, String tag) {
+    CompiledSearch plan = catalog.plan(searchName);
+    if (plan == null) throw new IllegalArgumentException("Unknown search: " + searchName);
+
+    VersionedClient vc = router.select(plan.def().getServer());
+    CapabilitySupport.assertSupported(vc.capabilityIndex(), plan.def());
 
     Map<String,Object> vars = (variables == null) ? java.util.Collections.emptyMap() : variables;
-    IQuery<Bundle> q = builder.build(vc.client(), vars, def);
-    return (Bundle) resilient.run("search-exec", () -> (Bundle) q.execute());
+    return new Prepared(searchName, vc, plan, vars, tag);
+  }
+
+  /**
+   * Key of the FHIR server a named search runs against (its {@code fhir-server.servers} name, shared
+   * by all of its replicas); used to apply per-server limits.
+   */
+  public String serverKey(String searchName) {
+    CompiledSearch plan = catalog.plan(searchName);
+    if (plan == null) throw new IllegalArgumentException("Unknown search: " + searchName);
+    return ServerRouter.name(plan.def().getServer());
   }
 
   /**
    * Expose the cached list of search names obtained from the yml file.
    */
   public Set<String> listSearchNames(){
-    return Collections.unmodifiableSet(cache.keySet());
+    return catalog.names();
   }
 }
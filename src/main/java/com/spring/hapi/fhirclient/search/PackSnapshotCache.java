@@ -0,0 +1,192 @@
+package com.spring.hapi.fhirclient.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of parsed search packs, used by {@link SearchCatalog} to skip re-parsing packs that
+ * have not changed since the previous start ({@code fhir-search-ymls.startup-cache}).
+ *
+ * <p>Each pack is stored with the last-modified time and length it was parsed from; a pack is only
+ * taken from the snapshot when both still match. The format is a versioned {@link DataOutputStream}
+ * dump of the {@link SearchDef} fields. A missing, unreadable or older-format file is ignored and
+ * rewritten. Writes go to a temporary file that is then moved into place.</p>
+ */
+final class PackSnapshotCache {
+  private static final Logger LOG = LoggerFactory.getLogger(PackSnapshotCache.class);
+  private static final int MAGIC = 0x46534e50; // "FSNP"
+  private static final int VERSION = 1;
+
+  private static final byte SUMMARY_NONE = 0;
+  private static final byte SUMMARY_BOOLEAN = 1;
+  private static final byte SUMMARY_STRING = 2;
+
+  private PackSnapshotCache() {}
+
+  /** Packs stored in {@code file}, keyed by resource description; empty if there is no usable snapshot. */
+  static Map<String, SearchCatalog.Pack> read(Path file) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOG.info("Ignoring search pack snapshot {} written by another version", file);
+        return Map.of();
+      }
+      int packCount = in.readInt();
+      Map<String, SearchCatalog.Pack> packs = new HashMap<>(packCount * 2);
+      for (int p = 0; p < packCount; p++) {
+        String key = in.readUTF();
+        SearchCatalog.Stamp stamp = new SearchCatalog.Stamp(in.readLong(), in.readLong());
+        int n = in.readInt();
+        Map<String, SearchDef> searches = new LinkedHashMap<>(n * 2);
+        for (int i = 0; i < n; i++) searches.put(in.readUTF(), readDef(in));
+        packs.put(key, new SearchCatalog.Pack(stamp, searches));
+      }
+      return packs;
+    } catch (NoSuchFileException e) {
+      return Map.of();
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Ignoring unreadable search pack snapshot {}: {}", file, e.toString());
+      return Map.of();
+    }
+  }
+
+  /** Replace {@code file} with a snapshot of {@code packs}; failures are logged, not thrown. */
+  static void write(Path file, Map<String, SearchCatalog.Pack> packs) {
+    Path tmp = null;
+    try {
+      Path dir = file.toAbsolutePath().getParent();
+      Files.createDirectories(dir);
+      tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(packs.size());
+        for (Map.Entry<String, SearchCatalog.Pack> p : packs.entrySet()) {
+          out.writeUTF(p.getKey());
+          out.writeLong(p.getValue().stamp().lastModified());
+          out.writeLong(p.getValue().stamp().length());
+          out.writeInt(p.getValue().searches().size());
+          for (Map.Entry<String, SearchDef> s : p.getValue().searches().entrySet()) {
+            out.writeUTF(s.getKey());
+            writeDef(out, s.getValue());
+          }
+        }
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Could not write search pack snapshot {}: {}", file, e.toString());
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException ignored) {
+          // best effort
+        }
+      }
+    }
+  }
+
+  private static void writeDef(DataOutputStream out, SearchDef d) throws IOException {
+    writeString(out, d.getServer());
+    writeString(out, d.getResource());
+    writeString(out, d.getPath());
+    if (d.getParams() == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(d.getParams().size());
+      for (Map.Entry<String, String> e : d.getParams().entrySet()) {
+        out.writeUTF(e.getKey());
+        writeString(out, e.getValue());
+      }
+    }
+    writeInteger(out, d.getCount());
+    writeList(out, d.getSort());
+    Object summary = d.getSummary();
+    if (summary instanceof Boolean b) {
+      out.writeByte(SUMMARY_BOOLEAN);
+      out.writeBoolean(b);
+    } else if (summary != null) {
+      out.writeByte(SUMMARY_STRING);
+      out.writeUTF(summary.toString());
+    } else {
+      out.writeByte(SUMMARY_NONE);
+    }
+    writeList(out, d.getElements());
+    writeList(out, d.getIncludes());
+    writeList(out, d.getRevIncludes());
+    writeInteger(out, d.getCacheTtlSeconds());
+  }
+
+  private static SearchDef readDef(DataInputStream in) throws IOException {
+    SearchDef d = new SearchDef();
+    d.setServer(readString(in));
+    d.setResource(readString(in));
+    d.setPath(readString(in));
+    int params = in.readInt();
+    if (params >= 0) {
+      Map<String, String> map = new LinkedHashMap<>(params * 2);
+      for (int i = 0; i < params; i++) map.put(in.readUTF(), readString(in));
+      d.setParams(map);
+    }
+    d.setCount(readInteger(in));
+    d.setSort(readList(in));
+    switch (in.readByte()) {
+      case SUMMARY_BOOLEAN -> d.setSummary(in.readBoolean());
+      case SUMMARY_STRING -> d.setSummary(in.readUTF());
+      default -> { }
+    }
+    d.setElements(readList(in));
+    d.setIncludes(readList(in));
+    d.setRevIncludes(readList(in));
+    d.setCacheTtlSeconds(readInteger(in));
+    return d;
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) out.writeUTF(s);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeInteger(DataOutputStream out, Integer i) throws IOException {
+    out.writeBoolean(i != null);
+    if (i != null) out.writeInt(i);
+  }
+
+  private static Integer readInteger(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readInt() : null;
+  }
+
+  private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+    if (list == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(list.size());
+    for (String s : list) writeString(out, s);
+  }
+
+  private static List<String> readList(DataInputStream in) throws IOException {
+    int n = in.readInt();
+    if (n < 0) return null;
+    List<String> list = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) list.add(readString(in));
+    return list;
+  }
+}
@@ -0,0 +1,120 @@
+package com.spring.hapi.fhirclient.search;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Page iterator that fetches {@code next} links on a background task while the caller processes
+ * the current page.
+ *
+ * <p>As soon as page N arrives the producer requests page N+1. Up to {@code readAhead} fetched pages
+ * are buffered; when the buffer is full the producer waits (backpressure) until the consumer takes a
+ * page. A fetch failure, {@code Error}s included, is re-thrown to the consumer from {@link #next()}.</p>
+ *
+ * <p>Always {@link #close()} the iterator (try-with-resources) if you stop early: it stops the
+ * producer and drops buffered pages. An HTTP call already in flight runs to completion but its
+ * result is discarded.</p>
+ *
+ * Thread-safety: one consumer thread; the producer runs on the supplied executor
+ * ({@code fhirBlockingExecutor}, virtual threads by default).
+ */
+public final class PrefetchingPageIterator implements Iterator<Bundle>, AutoCloseable {
+  private static final Object END = new Object();
+
+  private record Failure(Throwable error) {}
+
+  private final BlockingQueue<Object> buffer;
+  private final Future<?> producer;
+  private volatile boolean closed;
+  private Bundle first;
+  private Object peeked;
+
+  PrefetchingPageIterator(Bundle firstPage, Function<String, Bundle> loader, int readAhead, ExecutorService executor) {
+    this.first = firstPage;
+    this.buffer = new ArrayBlockingQueue<>(Math.max(1, readAhead));
+    this.producer = executor.submit(() -> produce(firstPage, loader));
+  }
+
+  private void produce(Bundle firstPage, Function<String, Bundle> loader) {
+    Bundle page = firstPage;
+    try {
+      while (!closed) {
+        Bundle.BundleLinkComponent next = page.getLink("next");
+        if (next == null || next.getUrl() == null) break;
+        page = loader.apply(next.getUrl());
+        if (!put(page)) return;
+      }
+      put(END);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      // Errors too: a producer that died silently would leave the consumer blocked in take()
+      try {
+        put(new Failure(e));
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Blocks while the buffer is full; gives up once the iterator is closed. */
+  private boolean put(Object item) throws InterruptedException {
+    while (!closed) {
+      if (buffer.offer(item, 100, TimeUnit.MILLISECONDS)) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (first != null) return true;
+    if (closed) return false;
+    if (peeked == null) {
+      try {
+        peeked = buffer.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        throw new CancellationException("Interrupted while waiting for next page");
+      }
+    }
+    if (peeked instanceof Failure f) {
+      close();
+      if (f.error() instanceof RuntimeException re) throw re;
+      if (f.error() instanceof Error err) throw err;
+      throw new IllegalStateException("Page load failed", f.error());
+    }
+    return peeked != END;
+  }
+
+  @Override
+  public Bundle next() {
+    if (first != null) {
+      Bundle b = first;
+      first = null;
+      return b;
+    }
+    if (!hasNext()) throw new NoSuchElementException();
+    Bundle b = (Bundle) peeked;
+    peeked = null;
+    return b;
+  }
+
+  /** Stop the producer and release buffered pages. Idempotent. */
+  @Override
+  public void close() {
+    closed = true;
+    // no interrupt: the HTTP client re-sends a request whose socket read was interrupted
+    producer.cancel(false);
+    buffer.clear();
+  }
+}
@@ -106,6 +106,21 @@ public class QueryBuilder {
     return q.returnBundle(Bundle.class);
   }
 
+  /**
+   * Compile {@code def} into an immutable plan; do this once per definition (e.g. when packs load).
+   */
+  public CompiledSearch compile(SearchDef def) {
+    return CompiledSearch.compile(def);
+  }
+
+  /**
+   * Builds the same query as {@link #build(IGenericClient, Map, SearchDef)} from a pre-compiled plan,
+   * binding {@code vars} in a single pass.
+   */
+  public IQuery<Bundle> build(IGenericClient client, Map<String, Object> vars, CompiledSearch plan) {
+    return plan.bind(client, vars);
+  }
+
   // very simple ${var} replacement; null-safe
   private String applyTemplate(String template, Map<String, Object> vars) {
     if (template == null) return null;
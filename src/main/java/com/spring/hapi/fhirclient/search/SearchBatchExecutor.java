@@ -0,0 +1,115 @@
+package com.spring.hapi.fhirclient.search;
+
+import com.spring.hapi.fhirclient.config.BatchProperties;
+import org.hl7.fhir.r4.model.Bundle;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Runs many named searches concurrently through {@link FhirSearchService#run}.
+ *
+ * <p>Each search runs as its own task on {@code fhirBlockingExecutor} (a virtual thread per task
+ * unless {@code fhir-async.virtual-threads} is off), since it may wait a long time for its permits.</p>
+ *
+ * <p>Concurrency is bounded twice: a global limit ({@code fhir-search-batch.max-concurrency}) and a
+ * per-server limit ({@code fhir-search-batch.per-server-max-concurrency}); a search waits for its
+ * server slot before taking a global one. Retries happen per search inside {@code run} via the
+ * existing {@link com.spring.hapi.fhirclient.util.ResilientExecutor}; a search that still fails
+ * completes only its own future exceptionally.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class SearchBatchExecutor {
+  private final FhirSearchService searches;
+  private final BatchProperties props;
+  private final ExecutorService executor;
+  private final Semaphore global;
+  private final ConcurrentMap<String, Semaphore> perServer = new ConcurrentHashMap<>();
+
+  public SearchBatchExecutor(FhirSearchService searches,
+                             BatchProperties props,
+                             @Qualifier("fhirBlockingExecutor") ExecutorService executor) {
+    this.searches = searches;
+    this.props = props;
+    this.executor = executor;
+    this.global = new Semaphore(props.maxConcurrency());
+  }
+
+  /**
+   * Submit every request; futures are returned in request order and complete independently.
+   *
+   * @param requests searches to run
+   * @return one future per request (exceptional if that search failed)
+   */
+  public List<CompletableFuture<Bundle>> runAll(List<SearchRequest> requests) {
+    List<CompletableFuture<Bundle>> out = new ArrayList<>(requests.size());
+    for (SearchRequest r : requests) {
+      out.add(CompletableFuture.supplyAsync(() -> runLimited(r), executor));
+    }
+    return out;
+  }
+
+  /**
+   * Submit every request and return results in completion order.
+   *
+   * <p>The stream blocks while waiting for the next search to finish and ends after
+   * {@code requests.size()} results. Failures appear as results with {@link SearchResult#error()} set.</p>
+   *
+   * @param requests searches to run
+   * @return stream of results, fastest first
+   */
+  public Stream<SearchResult> runAllByCompletion(List<SearchRequest> requests) {
+    BlockingQueue<SearchResult> done = new LinkedBlockingQueue<>();
+    List<CompletableFuture<Bundle>> futures = runAll(requests);
+    for (int i = 0; i < futures.size(); i++) {
+      SearchRequest r = requests.get(i);
+      futures.get(i).whenComplete((b, e) -> done.add(new SearchResult(r, b, unwrap(e))));
+    }
+    return Stream.generate(() -> {
+      try {
+        return done.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(e);
+      }
+    }).limit(requests.size());
+  }
+
+  private Bundle runLimited(SearchRequest r) {
+    Semaphore server = perServer.computeIfAbsent(searches.serverKey(r.searchName()),
+      k -> new Semaphore(props.perServerMaxConcurrency()));
+    try {
+      server.acquire();
+      try {
+        global.acquire();
+        try {
+          return searches.run(r.searchName(), r.variables(), r.tag());
+        } finally {
+          global.release();
+        }
+      } finally {
+        server.release();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+  }
+}
@@ -0,0 +1,353 @@
+package com.spring.hapi.fhirclient.search;
+
+import com.spring.hapi.fhirclient.bootstrap.ServerRouter;
+import com.spring.hapi.fhirclient.bootstrap.VersionedClientManager;
+import com.spring.hapi.fhirclient.client.FhirContextRegistry;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.SearchProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * The loaded search definitions and their compiled plans, reloadable while the application runs.
+ *
+ * <p>Both maps live in one immutable {@link Snapshot} behind a volatile reference, so a search always
+ * sees a definition and plan from the same load and never waits for a reload. A reload builds the
+ * next snapshot entirely off to the side: packs whose file changed (by last-modified time and length)
+ * are re-parsed, unchanged ones are reused, every definition is checked for a known server and
+ * compiled (reusing the plan of an unchanged definition), and capabilities are checked against every
+ * client created so far. Only then is the snapshot swapped in. If any step fails the error is logged,
+ * the previous snapshot stays and the same files are not retried until they change again. A search
+ * the server supports in the current snapshot but would not support in the next one fails the reload
+ * too; searches that are new or were already unsupported are only logged, as at startup.</p>
+ *
+ * <p>With {@code fhir-search-ymls.hot-reload} a daemon thread {@code fhir-search-packs} watches the
+ * directories of filesystem packs with a {@link WatchService} and otherwise checks every
+ * {@code reload-poll-ms}, which also covers packs inside jars and newly matching wildcard locations.
+ * Listeners receive the names of added, changed or removed searches after each swap.
+ * With {@code fhir-search-ymls.startup-cache} the parsed packs are also kept in a binary
+ * {@link PackSnapshotCache} file, so a restart only parses the packs that changed meanwhile. Reloads are
+ * counted in {@code fhir.search.packs.reloads} (tag {@code outcome} = success, failure). The resource
+ * types named by each snapshot are handed to {@link FhirContextRegistry#prewarm} so their model is
+ * scanned before the first search needs it.</p>
+ *
+ * Thread-safety: reads are lock-free; reloads are serialized.
+ */
+@Component
+public class SearchCatalog {
+  private static final Logger LOG = LoggerFactory.getLogger(SearchCatalog.class);
+  private static final String DEFAULT_PACK = "classpath:searches/core.searches.yml";
+  private static final long SETTLE_MS = 100;
+
+  private final SearchProperties props;
+  private final YamlSearchRepository repo;
+  private final QueryBuilder builder;
+  private final ServerRouter router;
+  private final VersionedClientManager clients;
+  private final FhirContextRegistry contexts;
+  private final MeterRegistry registry;
+  private final List<Consumer<Set<String>>> listeners = new CopyOnWriteArrayList<>();
+
+  private volatile Snapshot current = new Snapshot(Map.of(), Map.of(), Map.of());
+  private Map<String, Stamp> seen = Map.of();
+  private WatchService watcher;
+  private Thread watchThread;
+
+  public SearchCatalog(SearchProperties props,
+                       YamlSearchRepository repo,
+                       QueryBuilder builder,
+                       ServerRouter router,
+                       VersionedClientManager clients,
+                       FhirContextRegistry contexts,
+                       MeterRegistry registry) {
+    this.props = props;
+    this.repo = repo;
+    this.builder = builder;
+    this.router = router;
+    this.clients = clients;
+    this.contexts = contexts;
+    this.registry = registry;
+  }
+
+  /** File version used to detect a changed pack. */
+  record Stamp(long lastModified, long length) {}
+
+  /** One parsed pack file. */
+  record Pack(Stamp stamp, Map<String, SearchDef> searches) {}
+
+  /** Everything one load produced; never mutated after publication. */
+  private record Snapshot(Map<String, SearchDef> defs, Map<String, CompiledSearch> plans, Map<String, Pack> packs) {}
+
+  @PostConstruct
+  void init() {
+    Map<String, Resource> resources = resolve();
+    Map<String, Stamp> stamps = stamps(resources);
+    Path cacheFile = startupCache();
+    if (cacheFile != null) {
+      current = new Snapshot(Map.of(), Map.of(), PackSnapshotCache.read(cacheFile));
+    }
+    current = build(resources, stamps);
+    seen = stamps;
+    if (cacheFile != null) PackSnapshotCache.write(cacheFile, current.packs());
+    contexts.prewarm(resourceTypes(current.defs()));
+    clients.addListener(vc -> validate(vc, current.defs()));
+    clients.cached().forEach(vc -> validate(vc, current.defs()));
+    if (props.hotReload()) startWatching(resources);
+  }
+
+  /** Compiled plan of a named search, or null if there is none. */
+  public CompiledSearch plan(String searchName) {
+    return current.plans().get(searchName);
+  }
+
+  /** Names of the loaded searches. */
+  public Set<String> names() {
+    return Collections.unmodifiableSet(current.defs().keySet());
+  }
+
+  /**
+   * Register a callback invoked on the reloading thread with the names of the searches that were
+   * added, changed or removed by a reload.
+   */
+  public void addListener(Consumer<Set<String>> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Re-load the packs if any of them changed since the last attempt.
+   *
+   * @return true if a new snapshot was swapped in
+   */
+  public synchronized boolean reload() {
+    Map<String, Resource> resources;
+    Map<String, Stamp> stamps;
+    try {
+      resources = resolve();
+      stamps = stamps(resources);
+    } catch (RuntimeException e) {
+      LOG.warn("Could not scan search packs: {}", e.getMessage());
+      return false;
+    }
+    if (stamps.equals(seen)) return false;
+    seen = stamps;
+
+    Snapshot previous = current;
+    Snapshot next;
+    try {
+      next = build(resources, stamps);
+      for (VersionedClient vc : clients.cached()) {
+        validate(vc, next.defs()).forEach((name, problem) -> {
+          SearchDef before = previous.defs().get(name);
+          if (before != null && vc.capabilityIndex().validate(before) == null) {
+            throw new IllegalArgumentException("Search '" + name + "' would no longer be supported by "
+              + vc.client().getServerBase() + ": " + problem);
+          }
+        });
+      }
+    } catch (RuntimeException e) {
+      LOG.error("Search packs not reloaded, keeping the previous definitions: {}", e.toString());
+      registry.counter("fhir.search.packs.reloads", "outcome", "failure").increment();
+      return false;
+    }
+    current = next;
+    clients.cached().forEach(vc -> vc.capabilityIndex().retainVerdicts(next.defs().values()));
+    registry.counter("fhir.search.packs.reloads", "outcome", "success").increment();
+    Path cacheFile = startupCache();
+    if (cacheFile != null) PackSnapshotCache.write(cacheFile, next.packs());
+    contexts.prewarm(resourceTypes(next.defs()));
+
+    Set<String> changed = new HashSet<>(previous.defs().keySet());
+    changed.addAll(next.defs().keySet());
+    changed.removeIf(name -> previous.defs().get(name) == next.defs().get(name));
+    LOG.info("Reloaded search packs: {} searches, {} changed", next.defs().size(), changed.size());
+    for (Consumer<Set<String>> l : listeners) {
+      try {
+        l.accept(changed);
+      } catch (RuntimeException e) {
+        LOG.warn("Search catalog listener failed: {}", e.getMessage());
+      }
+    }
+    return true;
+  }
+
+  private Map<String, Resource> resolve() {
+    List<String> locations = props.packs();
+    if (locations == null || locations.isEmpty()) locations = List.of(DEFAULT_PACK);
+    Map<String, Resource> resources = new LinkedHashMap<>();
+    for (Resource r : repo.resolve(locations)) resources.put(r.getDescription(), r);
+    return resources;
+  }
+
+  private static Map<String, Stamp> stamps(Map<String, Resource> resources) {
+    Map<String, Stamp> stamps = new HashMap<>();
+    resources.forEach((key, r) -> {
+      try {
+        stamps.put(key, new Stamp(r.lastModified(), r.contentLength()));
+      } catch (IOException e) {
+        // vanished between resolving and stamping; the next scan sees the final state
+        stamps.put(key, new Stamp(-1, -1));
+      }
+    });
+    return stamps;
+  }
+
+  private Path startupCache() {
+    String file = props.startupCache();
+    return (file == null || file.isBlank()) ? null : Path.of(file);
+  }
+
+  /**
+   * Parse changed packs in parallel, merge in location order (a later pack overrides a search of the
+   * same name; {@link YamlSearchRepository#merge} reports it), check servers and compile.
+   */
+  private Snapshot build(Map<String, Resource> resources, Map<String, Stamp> stamps) {
+    Snapshot previous = current;
+    List<Resource> changed = new ArrayList<>();
+    resources.forEach((key, r) -> {
+      Pack pack = previous.packs().get(key);
+      if (pack == null || !pack.stamp().equals(stamps.get(key))) changed.add(r);
+    });
+    Map<Resource, Map<String, SearchDef>> parsed = repo.parse(changed);
+
+    Map<String, Pack> packs = new HashMap<>();
+    Map<String, Map<String, SearchDef>> ordered = new LinkedHashMap<>();
+    resources.forEach((key, r) -> {
+      Map<String, SearchDef> searches = parsed.get(r);
+      Pack pack = searches != null ? new Pack(stamps.get(key), searches) : previous.packs().get(key);
+      packs.put(key, pack);
+      ordered.put(key, pack.searches());
+    });
+    Map<String, SearchDef> defs = repo.merge(ordered);
+
+    Map<String, CompiledSearch> plans = defs.entrySet().parallelStream().collect(Collectors.toMap(Map.Entry::getKey, e -> {
+      SearchDef def = e.getValue();
+      if (!router.exists(def.getServer())) {
+        throw new IllegalArgumentException("Search '" + e.getKey() + "' targets unknown FHIR server: " + def.getServer());
+      }
+      CompiledSearch plan = previous.plans().get(e.getKey());
+      return (plan != null && plan.def() == def) ? plan : builder.compile(def);
+    }));
+    return new Snapshot(Map.copyOf(defs), Map.copyOf(plans), Map.copyOf(packs));
+  }
+
+  /** Resource types a search can return: its own and those named by its includes. */
+  private static Set<String> resourceTypes(Map<String, SearchDef> defs) {
+    Set<String> types = new HashSet<>();
+    for (SearchDef def : defs.values()) {
+      if (def.getResource() != null) types.add(def.getResource());
+      for (List<String> includes : Arrays.asList(def.getIncludes(), def.getRevIncludes())) {
+        if (includes == null) continue;
+        for (String include : includes) {
+          String[] parts = include.split(":"); // Source:param[:Target]
+          if (parts.length > 1) types.add(parts[0]);
+          if (parts.length > 2) types.add(parts[2]);
+        }
+      }
+    }
+    return types;
+  }
+
+  /**
+   * Check every definition that targets {@code vc}'s server against its capability index, memoizing
+   * the verdicts, and log the unsupported ones.
+   *
+   * @return problem per unsupported search name
+   */
+  private Map<String, String> validate(VersionedClient vc, Map<String, SearchDef> defs) {
+    String server = router.serverNameFor(vc.client().getServerBase());
+    Map<String, String> unsupported = new HashMap<>();
+    defs.forEach((name, def) -> {
+      if (!ServerRouter.name(def.getServer()).equals(server)) return;
+      String problem = vc.capabilityIndex().validate(def);
+      if (problem == null) return;
+      LOG.warn("Search '{}' is not supported by the server: {}", name, problem);
+      unsupported.put(name, problem);
+    });
+    return unsupported;
+  }
+
+  private void startWatching(Map<String, Resource> resources) {
+    try {
+      watcher = FileSystems.getDefault().newWatchService();
+      Set<Path> dirs = new HashSet<>();
+      for (Resource r : resources.values()) {
+        if (r.isFile()) dirs.add(r.getFile().toPath().toAbsolutePath().getParent());
+      }
+      for (Path dir : dirs) {
+        if (dir != null) {
+          dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Cannot watch search pack directories, falling back to polling: {}", e.getMessage());
+    }
+    watchThread = new Thread(this::watch, "fhir-search-packs");
+    watchThread.setDaemon(true);
+    watchThread.start();
+  }
+
+  private void watch() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        if (watcher != null) {
+          WatchKey key = watcher.poll(props.reloadPollMs(), TimeUnit.MILLISECONDS);
+          if (key != null) {
+            // let the editor finish writing, then take every event that arrived meanwhile
+            Thread.sleep(SETTLE_MS);
+            for (WatchKey k = key; k != null; k = watcher.poll()) {
+              k.pollEvents();
+              k.reset();
+            }
+          }
+        } else {
+          Thread.sleep(props.reloadPollMs());
+        }
+        reload();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      } catch (RuntimeException e) {
+        LOG.warn("Search pack watcher error: {}", e.toString());
+      }
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    if (watchThread != null) watchThread.interrupt();
+    if (watcher != null) {
+      try {
+        watcher.close();
+      } catch (IOException ignored) {
+        // closing anyway
+      }
+    }
+  }
+
+}
@@ -12,6 +12,7 @@ import java.util.Map;
  * <pre>{@code
  * searches:
  *   patient-cohort-loinc-72166-2:
+ *     server: "registry"
  *     resource: "Patient"
  *     path: "/Patient"
  *     params:
@@ -22,12 +23,17 @@ import java.util.Map;
  *     sort: ["-id"]
  *     count: 200
  *     summary: count
+ *     cacheTtlSeconds: 300
  *     notes: "Example cohort"
  * }</pre>
  *
- * All fields are optional except {@link #resource & path}.
+ * All fields are optional except {@link #resource & path}. A positive {@code cacheTtlSeconds} makes the
+ * search cacheable by {@link SearchResultCache} (when {@code fhir-search-cache.enabled} is on).
+ * {@code server} names an entry under {@code fhir-server.servers}; without it the search runs against
+ * the default server ({@code fhir-server.base-url}).
  */
 public class SearchDef {
+  private String server;
   private String resource;
   private String path;
   private Map<String,String> params;
@@ -37,7 +43,10 @@ public class SearchDef {
   private List<String> elements;
   private List<String> includes;
   private List<String> revIncludes;
+  private Integer cacheTtlSeconds;
 
+  public String getServer() { return server; }
+  public void setServer(String server) { this.server = server; }
   public String getResource() { return resource; }
   public void setResource(String resource) { this.resource = resource; }
   public String getPath() { return path; }
@@ -56,4 +65,6 @@ public class SearchDef {
   public void setIncludes(List<String> includes) { this.includes = includes; }
   public List<String> getRevIncludes() { return revIncludes; }
   public void setRevIncludes(List<String> revIncludes) { this.revIncludes = revIncludes; }
+  public Integer getCacheTtlSeconds() { return cacheTtlSeconds; }
+  public void setCacheTtlSeconds(Integer cacheTtlSeconds) { this.cacheTtlSeconds = cacheTtlSeconds; }
 }
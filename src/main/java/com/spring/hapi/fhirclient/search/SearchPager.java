@@ -1,15 +1,48 @@
 package com.spring.hapi.fhirclient.search;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import com.spring.hapi.fhirclient.config.PagingProperties;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import com.spring.hapi.fhirclient.util.ResilientExecutor;
 import org.hl7.fhir.r4.model.Bundle;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
+/**
+ * Follows {@code next} links of a search-set Bundle, sequentially, pipelined or asynchronously.
+ *
+ * <p>Page loads are idempotent reads and go through {@link ResilientExecutor} as {@code search-page}:
+ * retried on 429/5xx, and subject to the server's rate limit, concurrency limit and circuit breaker.</p>
+ *
+ * <p>Every page load is timed in {@code fhir.search.page} (tag {@code mode} = sync, prefetch, async)
+ * and its entry count recorded in {@code fhir.search.page.entries}; see {@link FhirMetrics}.</p>
+ */
 @Component
 public class SearchPager {
+  private final PagingProperties props;
+  private final ExecutorService executor;
+  private final ExecutorService producers;
+  private final ResilientExecutor resilient;
+  private final FhirMetrics metrics;
+
+  public SearchPager(PagingProperties props,
+                     @Qualifier("fhirExecutor") ExecutorService executor,
+                     @Qualifier("fhirBlockingExecutor") ExecutorService producers,
+                     ResilientExecutor resilient,
+                     FhirMetrics metrics) {
+    this.props = props;
+    this.executor = executor;
+    this.producers = producers;
+    this.resilient = resilient;
+    this.metrics = metrics;
+  }
+
   /**
    * for each set of pages, go after the next ..
    * @param firstPage
@@ -22,7 +55,7 @@ public class SearchPager {
       pageConsumer.accept(page);
       Bundle.BundleLinkComponent next = page.getLink("next");
       if (next == null || next.getUrl() == null) break;
-      page = client.loadPage().byUrl(next.getUrl()).andReturnBundle(Bundle.class).execute();
+      page = resilient.run("search-page", client.getServerBase(), () -> load(client, next.getUrl(), "sync"));
     }
   }
 
@@ -49,9 +82,75 @@ public class SearchPager {
         }
         Bundle.BundleLinkComponent next = current.getLink("next");
         if (next == null || next.getUrl() == null) throw new NoSuchElementException();
-        current = client.loadPage().byUrl(next.getUrl()).andReturnBundle(Bundle.class).execute();
+        current = resilient.run("search-page", client.getServerBase(), () -> load(client, next.getUrl(), "sync"));
         return current;
       }
     };
   }
+
+  /**
+   * Like {@link #forEach} but pipelined: page N+1 is requested as soon as page N arrives, so the
+   * network round trip overlaps with {@code pageConsumer}. Read-ahead is bounded by
+   * {@code fhir-search-paging.prefetch-pages}.
+   *
+   * @param firstPage first page returned by the search
+   * @param client client used to follow {@code next} links
+   * @param pageConsumer called for each page, in order, on the calling thread
+   */
+  public void forEachPrefetched(Bundle firstPage, IGenericClient client, Consumer<Bundle> pageConsumer) {
+    try (PrefetchingPageIterator it = prefetching(firstPage, client)) {
+      while (it.hasNext()) {
+        pageConsumer.accept(it.next());
+      }
+    }
+  }
+
+  /**
+   * Pipelined page iterator (see {@link PrefetchingPageIterator}); close it when done.
+   *
+   * @param firstPage first page returned by the search
+   * @param client client used to follow {@code next} links
+   * @return iterator yielding {@code firstPage} then each following page
+   */
+  public PrefetchingPageIterator prefetching(Bundle firstPage, IGenericClient client) {
+    return new PrefetchingPageIterator(firstPage,
+      url -> resilient.run("search-page", client.getServerBase(), () -> load(client, url, "prefetch")),
+      props.prefetchPages(), producers);
+  }
+
+  /**
+   * Non-blocking {@link #forEach}: each {@code next} page is loaded on the {@code fhirExecutor} with
+   * async retry ({@code search-page}), and {@code pageConsumer} runs on the thread that completed the load.
+   *
+   * @param firstPage first page returned by the search
+   * @param client client used to follow {@code next} links
+   * @param pageConsumer called for each page, in order
+   * @return future completing after the last page was consumed, or with the first failure
+   */
+  public CompletableFuture<Void> forEachAsync(Bundle firstPage, IGenericClient client, Consumer<Bundle> pageConsumer) {
+    return CompletableFuture.completedFuture(firstPage)
+      .thenComposeAsync(page -> consumeAndFollow(page, client, pageConsumer), executor);
+  }
+
+  private CompletableFuture<Void> consumeAndFollow(Bundle page, IGenericClient client, Consumer<Bundle> pageConsumer) {
+    pageConsumer.accept(page);
+    Bundle.BundleLinkComponent next = page.getLink("next");
+    if (next == null || next.getUrl() == null) return CompletableFuture.completedFuture(null);
+    String url = next.getUrl();
+    return resilient.runAsync("search-page", client.getServerBase(), () -> load(client, url, "async"), executor)
+      .thenCompose(n -> consumeAndFollow(n, client, pageConsumer));
+  }
+
+  /** Load one page and record its latency and entry count. */
+  private Bundle load(IGenericClient client, String url, String mode) {
+    long start = System.nanoTime();
+    try {
+      Bundle page = client.loadPage().byUrl(url).andReturnBundle(Bundle.class).execute();
+      metrics.recordPage(mode, FhirMetrics.SUCCESS, page.getEntry().size(), System.nanoTime() - start);
+      return page;
+    } catch (RuntimeException e) {
+      metrics.recordPage(mode, FhirMetrics.outcome(e), -1, System.nanoTime() - start);
+      throw e;
+    }
+  }
 }
@@ -0,0 +1,16 @@
+package com.spring.hapi.fhirclient.search;
+
+import java.util.Map;
+/**
+ * One named search with its template variables, as submitted to {@link SearchBatchExecutor}.
+ *
+ * @param searchName name from the loaded YAML packs
+ * @param variables template variables (may be null)
+ * @param tag caller tag selecting a {@code fhir-rate-limit.tags} bucket (may be null)
+ */
+public record SearchRequest(String searchName, Map<String, Object> variables, String tag) {
+
+  public SearchRequest(String searchName, Map<String, Object> variables) {
+    this(searchName, variables, null);
+  }
+}
@@ -0,0 +1,11 @@
+package com.spring.hapi.fhirclient.search;
+
+import org.hl7.fhir.r4.model.Bundle;
+/**
+ * Outcome of one {@link SearchRequest} in a batch: either a {@link Bundle} or the error that ended it.
+ */
+public record SearchResult(SearchRequest request, Bundle bundle, Throwable error) {
+  public boolean isSuccess() {
+    return error == null;
+  }
+}
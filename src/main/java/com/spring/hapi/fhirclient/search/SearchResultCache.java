@@ -0,0 +1,169 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.util.UrlUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.spring.hapi.fhirclient.config.CacheProperties;
+import com.spring.hapi.fhirclient.interceptors.ResponseValidatorsIntc.Validators;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hl7.fhir.r4.model.Bundle;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Opt-in result cache in front of {@link FhirSearchService#run}.
+ *
+ * <p>Keyed by search name plus the bound variables in sorted order, so {@code {a=1,b=2}} and
+ * {@code {b=2,a=1}} share an entry. A search is cacheable only if its {@link SearchDef} declares
+ * {@code cacheTtlSeconds}. The cache is size-bounded ({@code fhir-search-cache.max-entries}).</p>
+ *
+ * <p>Within the TTL an entry is served without contacting the server. After the TTL, an entry that
+ * carried an {@code ETag} or {@code Last-Modified} header is revalidated: the loader is handed the
+ * validators so it can send a conditional request, and a {@code 304} simply renews the entry. Entries
+ * without validators expire at their TTL.</p>
+ *
+ * <p>Callers get a {@link Bundle#copy()} so cached state cannot be mutated. Outcomes are counted in
+ * {@code fhir.search.cache.requests} (tag {@code result} = hit, miss, revalidated, refreshed); Caffeine's
+ * size and eviction statistics are published under {@code fhirSearchCache}.</p>
+ *
+ * Thread-safety: safe for concurrent use. Concurrent misses on the same key may each load.
+ */
+@Component
+public class SearchResultCache {
+
+  /** Result of a (possibly conditional) load. */
+  public record Fetched(Bundle bundle, Validators validators, boolean notModified) {
+    public static final Fetched NOT_MODIFIED = new Fetched(null, null, true);
+
+    public static Fetched of(Bundle bundle, Validators validators) {
+      return new Fetched(bundle, validators, false);
+    }
+
+    /** Independent copy for sharing one load between callers. */
+    public Fetched copy() {
+      return bundle == null ? this : new Fetched(bundle.copy(), validators, notModified);
+    }
+  }
+
+  private record Entry(Bundle bundle, Validators validators, long freshUntilNanos, long ttlNanos) {
+    boolean revalidatable() {
+      return validators != null && !validators.isEmpty();
+    }
+  }
+
+  private final CacheProperties props;
+  private final Cache<String, Entry> cache;
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter revalidated;
+  private final Counter refreshed;
+
+  public SearchResultCache(CacheProperties props, MeterRegistry registry) {
+    this.props = props;
+    long retentionNanos = TimeUnit.SECONDS.toNanos(props.staleRetentionSeconds());
+    Cache<String, Entry> c = Caffeine.newBuilder()
+      .maximumSize(props.maxEntries())
+      .expireAfter(new Expiry<String, Entry>() {
+        @Override public long expireAfterCreate(String key, Entry e, long now) {
+          return e.revalidatable() ? e.ttlNanos() + retentionNanos : e.ttlNanos();
+        }
+        @Override public long expireAfterUpdate(String key, Entry e, long now, long current) {
+          return expireAfterCreate(key, e, now);
+        }
+        @Override public long expireAfterRead(String key, Entry e, long now, long current) {
+          return current;
+        }
+      })
+      .recordStats()
+      .build();
+    this.cache = CaffeineCacheMetrics.monitor(registry, c, "fhirSearchCache");
+    this.hits = counter(registry, "hit");
+    this.misses = counter(registry, "miss");
+    this.revalidated = counter(registry, "revalidated");
+    this.refreshed = counter(registry, "refreshed");
+  }
+
+  private static Counter counter(MeterRegistry registry, String result) {
+    return Counter.builder("fhir.search.cache.requests").tag("result", result).register(registry);
+  }
+
+  /** True if caching is enabled and {@code def} declares a positive TTL. */
+  public boolean isCacheable(SearchDef def) {
+    return props.enabled() && def.getCacheTtlSeconds() != null && def.getCacheTtlSeconds() > 0;
+  }
+
+  /**
+   * Serve from cache, revalidate, or load.
+   *
+   * @param searchName search name (part of the key)
+   * @param vars bound variables (part of the key)
+   * @param ttlSeconds freshness lifetime for a newly stored result
+   * @param loader performs the request; receives the stored validators when revalidating (else null)
+   *               and returns {@link Fetched#NOT_MODIFIED} on a 304
+   * @return a copy of the cached or freshly loaded Bundle
+   */
+  public Bundle get(String searchName, Map<String, Object> vars, int ttlSeconds, Function<Validators, Fetched> loader) {
+    String key = key(searchName, vars);
+    long now = System.nanoTime();
+    long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    Entry e = cache.getIfPresent(key);
+    if (e != null && now - e.freshUntilNanos() < 0) {
+      hits.increment();
+      return e.bundle().copy();
+    }
+    if (e != null && e.revalidatable()) {
+      Fetched f = loader.apply(e.validators());
+      if (f.notModified()) {
+        revalidated.increment();
+        cache.put(key, new Entry(e.bundle(), e.validators(), System.nanoTime() + ttlNanos, ttlNanos));
+        return e.bundle().copy();
+      }
+      refreshed.increment();
+      return store(key, f, ttlNanos);
+    }
+    misses.increment();
+    return store(key, loader.apply(null), ttlNanos);
+  }
+
+  private Bundle store(String key, Fetched f, long ttlNanos) {
+    cache.put(key, new Entry(f.bundle(), f.validators(), System.nanoTime() + ttlNanos, ttlNanos));
+    return f.bundle().copy();
+  }
+
+  /** Drop every entry (e.g. after search packs change). */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /** Drop the entries of the named searches, whatever their variables. */
+  public void invalidate(Set<String> searchNames) {
+    if (searchNames.isEmpty()) return;
+    Set<String> escaped = searchNames.stream().map(UrlUtil::escapeUrlParam).collect(Collectors.toSet());
+    cache.asMap().keySet().removeIf(key -> {
+      int q = key.indexOf('?');
+      return escaped.contains(q < 0 ? key : key.substring(0, q));
+    });
+  }
+
+  /**
+   * {@code name?k1=v1&k2=v2&} with variables sorted by name. Every part is URL-escaped, so a value
+   * containing {@code &} or {@code =} cannot collide with a different set of variables.
+   */
+  static String key(String searchName, Map<String, Object> vars) {
+    String name = UrlUtil.escapeUrlParam(searchName);
+    if (vars == null || vars.isEmpty()) return name;
+    StringBuilder sb = new StringBuilder(name).append('?');
+    new TreeMap<>(vars).forEach((k, v) -> sb.append(UrlUtil.escapeUrlParam(k)).append('=')
+      .append(UrlUtil.escapeUrlParam(String.valueOf(v))).append('&'));
+    return sb.toString();
+  }
+}
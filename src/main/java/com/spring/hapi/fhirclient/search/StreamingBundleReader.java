@@ -0,0 +1,92 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.parser.IParser;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.function.Consumer;
+
+/**
+ * Incremental reader for JSON search-set Bundles.
+ *
+ * <p>Walks the response body with a Jackson streaming parser instead of letting HAPI build the whole
+ * {@code Bundle} tree. Each {@code entry[].resource} is copied out on its own and parsed by HAPI,
+ * then handed to the sink before the next entry is read. Peak memory per page is therefore bounded by
+ * the largest single resource rather than the page. Only the {@code next} link is retained from the
+ * Bundle envelope; other top-level fields are skipped.</p>
+ *
+ * Thread-safety: stateless apart from the thread-safe {@link JsonFactory}; the {@link IParser}
+ * passed in must not be shared across threads.
+ */
+public final class StreamingBundleReader {
+  private final JsonFactory json = new JsonFactory();
+
+  /**
+   * Read one page.
+   *
+   * @param body response body positioned at the start of the Bundle JSON (not closed here)
+   * @param parser HAPI JSON parser for the server's release
+   * @param sink receives each entry resource, in document order
+   * @return the Bundle's {@code next} link URL, or {@code null} on the last page
+   * @throws IOException on malformed JSON or I/O failure
+   */
+  public String read(InputStream body, IParser parser, Consumer<IBaseResource> sink) throws IOException {
+    String next = null;
+    try (JsonParser p = json.createParser(body)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Expected a JSON Bundle object");
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        JsonToken value = p.nextToken();
+        if ("entry".equals(field) && value == JsonToken.START_ARRAY) {
+          readEntries(p, parser, sink);
+        } else if ("link".equals(field) && value == JsonToken.START_ARRAY) {
+          next = readNextLink(p);
+        } else {
+          p.skipChildren();
+        }
+      }
+    }
+    return next;
+  }
+
+  private void readEntries(JsonParser p, IParser parser, Consumer<IBaseResource> sink) throws IOException {
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        JsonToken value = p.nextToken();
+        if ("resource".equals(field) && value == JsonToken.START_OBJECT) {
+          StringWriter raw = new StringWriter(1024);
+          try (JsonGenerator g = json.createGenerator(raw)) {
+            g.copyCurrentStructure(p);
+          }
+          sink.accept(parser.parseResource(raw.toString()));
+        } else {
+          p.skipChildren();
+        }
+      }
+    }
+  }
+
+  private String readNextLink(JsonParser p) throws IOException {
+    String next = null;
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      String relation = null;
+      String url = null;
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        p.nextToken();
+        if ("relation".equals(field)) relation = p.getValueAsString();
+        else if ("url".equals(field)) url = p.getValueAsString();
+        else p.skipChildren();
+      }
+      if ("next".equals(relation)) next = url;
+    }
+    return next;
+  }
+}
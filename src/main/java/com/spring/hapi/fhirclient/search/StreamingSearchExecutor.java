@@ -0,0 +1,83 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.parser.IParser;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.client.WireFormat;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.security.OAuth2AccessTokenProvider;
+import com.spring.hapi.fhirclient.util.CallTarget;
+import com.spring.hapi.fhirclient.util.FhirRateLimits;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Executes a search in streaming-response mode: each page is requested over plain HTTP and its body
+ * is fed through {@link StreamingBundleReader}, so entry resources reach the caller one at a time and
+ * no page is ever materialised as a {@code Bundle}.
+ *
+ * <p>{@code next} links are followed until the last page. Pages are not retried: a failure part-way
+ * through a page would otherwise re-deliver resources the sink has already seen. Each page request
+ * takes its tokens from {@link FhirRateLimits} first, and carries the bearer token of the server's
+ * {@code auth} registration (none for {@code auth: none}).</p>
+ *
+ * <p>Requests always ask for JSON; the server's {@code wire} settings add {@code _format} /
+ * {@code _pretty} to the first page and choose the parser's error handling (see {@link WireFormat}).</p>
+ */
+@Component
+public class StreamingSearchExecutor {
+  private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+
+  private final RestTemplate restTemplate;
+  private final StreamingBundleReader reader = new StreamingBundleReader();
+  private final OAuth2AccessTokenProvider tokenProvider;
+  private final FhirRateLimits rateLimits;
+  private final FhirClientProperties props;
+
+  public StreamingSearchExecutor(OAuth2AccessTokenProvider tokenProvider,
+                                 @Qualifier("fhirRestTemplate") RestTemplate restTemplate,
+                                 FhirRateLimits rateLimits,
+                                 FhirClientProperties props) {
+    this.tokenProvider = tokenProvider;
+    this.restTemplate = restTemplate;
+    this.rateLimits = rateLimits;
+    this.props = props;
+  }
+
+  /**
+   * @param vc client whose base URL and FHIR context are used
+   * @param target rate limits to apply to each page request
+   * @param relativeUrl first page, relative to the server base (e.g. {@code Patient?name=x})
+   * @param sink receives every entry resource across all pages
+   * @return number of resources delivered
+   */
+  public long execute(VersionedClient vc, CallTarget target, String relativeUrl, Consumer<IBaseResource> sink) {
+    long[] delivered = {0};
+    Consumer<IBaseResource> counting = r -> { delivered[0]++; sink.accept(r); };
+    String base = vc.client().getServerBase().replaceAll("/+$", "");
+    WireFormat wire = new WireFormat(props.wireFor(base));
+    FhirClientProperties.Server server = props.server(props.serverNameFor(base));
+    String url = wire.decorate(base + "/" + relativeUrl);
+    while (url != null) {
+      rateLimits.acquire(target);
+      IParser parser = wire.newJsonParser(vc.context());
+      // already escaped (first page by CompiledSearch, next links by the server): no template expansion
+      url = restTemplate.execute(URI.create(url), HttpMethod.GET,
+        req -> {
+          req.getHeaders().setAccept(List.of(FHIR_JSON, MediaType.APPLICATION_JSON));
+          if (server.authenticated()) {
+            tokenProvider.getAccessToken(server.auth()).ifPresent(tok -> req.getHeaders().setBearerAuth(tok));
+          }
+        },
+        resp -> reader.read(resp.getBody(), parser, counting));
+    }
+    return delivered[0];
+  }
+}
@@ -1,19 +1,65 @@
 package com.spring.hapi.fhirclient.search;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+import org.yaml.snakeyaml.nodes.Tag;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+/**
+ * Loads YAML search packs into {@link SearchDef}s.
+ *
+ * <p>Packs are read with SnakeYAML's node API ({@code compose}) and mapped by hand rather than through
+ * JavaBean reflection, and several packs are parsed in parallel on a short-lived pool of at most one
+ * thread per processor. Unknown keys are rejected with the pack and line they appear on, as before.
+ * YAML merge keys ({@code <<: *defaults}) are expanded, with a mapping's own keys winning over
+ * merged ones.</p>
+ *
+ * <p>When packs are merged, a later pack still overrides a search of the same name from an earlier
+ * one, but every such duplicate is reported: identical definitions at INFO, conflicting ones at
+ * WARN.</p>
+ *
+ * Thread-safety: safe for concurrent use; each parse uses its own {@link Yaml}.
+ */
 @Component
 public class YamlSearchRepository {
+  private static final Logger LOG = LoggerFactory.getLogger(YamlSearchRepository.class);
+  private static final int MAX_PACK_CHARS = 64 * 1024 * 1024;
+
+  private static final ThreadFactory PARSER_THREADS = r -> {
+    Thread t = new Thread(r, "search-pack-parse");
+    t.setDaemon(true);
+    return t;
+  };
+
   private final PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
 
   /**
@@ -22,22 +68,231 @@ public class YamlSearchRepository {
    * @return
    */
   public Map<String,SearchDef> loadAll(List<String> locations) {
-    Map<String,SearchDef> all = new HashMap<>();
-    Yaml yaml = new Yaml();
+    Map<String, Map<String,SearchDef>> packs = new LinkedHashMap<>();
+    parse(resolve(locations)).forEach((r, searches) -> packs.put(r.getDescription(), searches));
+    return merge(packs);
+  }
+
+  /**
+   * Expand pack locations (which may contain wildcards) into the pack files they currently match,
+   * in location order.
+   */
+  public List<Resource> resolve(List<String> locations) {
+    List<Resource> resources = new ArrayList<>();
     try {
       for (String loc : locations) {
-        for (Resource r : resolver.getResources(loc)) {
-          try (InputStream in = r.getInputStream()) {
-            SearchPack pack = yaml.loadAs(in, SearchPack.class);
-            if (pack!=null && pack.getSearches()!=null) {
-              all.putAll(pack.getSearches());
-            }
-          }
-        }
+        resources.addAll(List.of(resolver.getResources(loc.trim())));
       }
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
+    return resources;
+  }
+
+  /**
+   * Parse several packs in parallel. Reading a pack is blocking I/O, so it runs on a pool of its own
+   * rather than the common ForkJoin pool.
+   *
+   * @return each resource's searches, in the order given
+   * @throws IllegalArgumentException if any pack is not a valid search pack
+   */
+  public Map<Resource, Map<String,SearchDef>> parse(Collection<Resource> resources) {
+    List<Resource> list = List.copyOf(resources);
+    Map<Resource, Map<String,SearchDef>> parsed = new LinkedHashMap<>();
+    if (list.size() <= 1) {
+      list.forEach(r -> parsed.put(r, load(r)));
+      return parsed;
+    }
+    int threads = Math.min(list.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(threads, PARSER_THREADS);
+    try {
+      List<Future<Map<String,SearchDef>>> futures = new ArrayList<>(list.size());
+      for (Resource r : list) futures.add(pool.submit(() -> load(r)));
+      for (int i = 0; i < list.size(); i++) parsed.put(list.get(i), futures.get(i).get());
+      return parsed;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) throw re;
+      if (e.getCause() instanceof Error err) throw err;
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while parsing search packs", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Parse one pack file into its searches (empty if the pack declares none).
+   *
+   * @throws IllegalArgumentException if the pack is not a valid search pack
+   */
+  public Map<String,SearchDef> load(Resource resource) {
+    LoaderOptions options = new LoaderOptions();
+    options.setCodePointLimit(MAX_PACK_CHARS);
+    try (Reader in = new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)) {
+      return toPack(new Yaml(options).compose(in), resource.getDescription());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Merge packs in iteration order; a later pack overrides a search of the same name, and each
+   * override is reported.
+   *
+   * @param packs searches per pack, keyed by a pack description used in the report
+   */
+  public Map<String,SearchDef> merge(Map<String, Map<String,SearchDef>> packs) {
+    Map<String,SearchDef> all = new HashMap<>();
+    Map<String,String> origin = new HashMap<>();
+    packs.forEach((source, searches) -> searches.forEach((name, def) -> {
+      SearchDef previous = all.put(name, def);
+      String previousSource = origin.put(name, source);
+      if (previous == null) return;
+      if (sameDefinition(previous, def)) {
+        LOG.info("Search '{}' is defined identically in {} and {}", name, previousSource, source);
+      } else {
+        LOG.warn("Search '{}' in {} conflicts with the definition in {}; using {}", name, source, previousSource, source);
+      }
+    }));
     return all;
   }
+
+  static boolean sameDefinition(SearchDef a, SearchDef b) {
+    return Objects.equals(a.getServer(), b.getServer())
+      && Objects.equals(a.getResource(), b.getResource())
+      && Objects.equals(a.getPath(), b.getPath())
+      && Objects.equals(a.getParams(), b.getParams())
+      && Objects.equals(a.getCount(), b.getCount())
+      && Objects.equals(a.getSort(), b.getSort())
+      && Objects.equals(a.getSummary(), b.getSummary())
+      && Objects.equals(a.getElements(), b.getElements())
+      && Objects.equals(a.getIncludes(), b.getIncludes())
+      && Objects.equals(a.getRevIncludes(), b.getRevIncludes())
+      && Objects.equals(a.getCacheTtlSeconds(), b.getCacheTtlSeconds());
+  }
+
+  // --- node mapping ---
+
+  private static Map<String,SearchDef> toPack(Node root, String source) {
+    if (root == null) return Map.of();
+    Map<String,SearchDef> searches = new LinkedHashMap<>();
+    for (NodeTuple t : entries(root, source)) {
+      String key = scalar(t.getKeyNode(), source);
+      Node value = t.getValueNode();
+      switch (key) {
+        case "pkg" -> scalar(value, source);
+        case "searches" -> {
+          if (isNull(value)) break;
+          for (NodeTuple s : entries(value, source)) {
+            String name = scalar(s.getKeyNode(), source);
+            // compose() keeps repeated keys, so a second definition would silently replace the first
+            if (searches.containsKey(name)) throw invalid(s.getKeyNode(), source, "search '" + name + "' is defined twice");
+            searches.put(name, toDef(s.getValueNode(), source));
+          }
+        }
+        default -> throw invalid(t.getKeyNode(), source, "unknown pack property '" + key + "'");
+      }
+    }
+    return searches;
+  }
+
+  private static SearchDef toDef(Node node, String source) {
+    SearchDef def = new SearchDef();
+    for (NodeTuple t : entries(node, source)) {
+      String key = scalar(t.getKeyNode(), source);
+      Node v = t.getValueNode();
+      if (isNull(v)) continue;
+      switch (key) {
+        case "server" -> def.setServer(scalar(v, source));
+        case "resource" -> def.setResource(scalar(v, source));
+        case "path" -> def.setPath(scalar(v, source));
+        case "params" -> def.setParams(stringMap(v, source));
+        case "count" -> def.setCount(integer(v, source));
+        case "sort" -> def.setSort(stringList(v, source));
+        case "summary" -> def.setSummary(Tag.BOOL.equals(v.getTag())
+          ? Boolean.valueOf(scalar(v, source)) : scalar(v, source));
+        case "elements" -> def.setElements(stringList(v, source));
+        case "includes" -> def.setIncludes(stringList(v, source));
+        case "revIncludes" -> def.setRevIncludes(stringList(v, source));
+        case "cacheTtlSeconds" -> def.setCacheTtlSeconds(integer(v, source));
+        default -> throw invalid(t.getKeyNode(), source, "unknown search property '" + key + "'");
+      }
+    }
+    return def;
+  }
+
+  /**
+   * Entries of a mapping with its merge keys ({@code <<: *a} or {@code <<: [*a, *b]}) expanded: merged
+   * entries come first, skipping keys the mapping sets itself or an earlier merged mapping already gave.
+   * {@code compose()} leaves merge keys as plain {@code <<} entries; only {@code load()} resolves them.
+   */
+  private static List<NodeTuple> entries(Node node, String source) {
+    List<NodeTuple> own = new ArrayList<>();
+    List<Node> merged = new ArrayList<>();
+    for (NodeTuple t : mapping(node, source).getValue()) {
+      if (!Tag.MERGE.equals(t.getKeyNode().getTag())) {
+        own.add(t);
+      } else if (t.getValueNode() instanceof SequenceNode seq) {
+        merged.addAll(seq.getValue());
+      } else {
+        merged.add(t.getValueNode());
+      }
+    }
+    if (merged.isEmpty()) return own;
+    Set<String> seen = new HashSet<>();
+    for (NodeTuple t : own) seen.add(scalar(t.getKeyNode(), source));
+    List<NodeTuple> out = new ArrayList<>();
+    for (Node m : merged) {
+      for (NodeTuple t : entries(m, source)) {
+        if (seen.add(scalar(t.getKeyNode(), source))) out.add(t);
+      }
+    }
+    out.addAll(own);
+    return out;
+  }
+
+  private static MappingNode mapping(Node node, String source) {
+    if (node instanceof MappingNode m) return m;
+    throw invalid(node, source, "expected a mapping");
+  }
+
+  private static String scalar(Node node, String source) {
+    if (node instanceof ScalarNode s) return s.getValue();
+    throw invalid(node, source, "expected a single value");
+  }
+
+  private static Integer integer(Node node, String source) {
+    String v = scalar(node, source);
+    try {
+      return Integer.valueOf(v.trim());
+    } catch (NumberFormatException e) {
+      throw invalid(node, source, "expected an integer but was '" + v + "'");
+    }
+  }
+
+  private static List<String> stringList(Node node, String source) {
+    if (!(node instanceof SequenceNode seq)) throw invalid(node, source, "expected a list");
+    List<String> out = new ArrayList<>(seq.getValue().size());
+    for (Node item : seq.getValue()) out.add(scalar(item, source));
+    return out;
+  }
+
+  private static Map<String,String> stringMap(Node node, String source) {
+    Map<String,String> out = new LinkedHashMap<>();
+    for (NodeTuple t : entries(node, source)) {
+      out.put(scalar(t.getKeyNode(), source), isNull(t.getValueNode()) ? null : scalar(t.getValueNode(), source));
+    }
+    return out;
+  }
+
+  private static boolean isNull(Node node) {
+    return Tag.NULL.equals(node.getTag());
+  }
+
+  private static IllegalArgumentException invalid(Node node, String source, String problem) {
+    int line = node.getStartMark() == null ? 0 : node.getStartMark().getLine() + 1;
+    return new IllegalArgumentException("Invalid search pack " + source + " (line " + line + "): " + problem);
+  }
 }
@@ -4,72 +4,44 @@ import ca.uhn.fhir.rest.client.api.IClientInterceptor;
 import ca.uhn.fhir.rest.client.api.IHttpRequest;
 import ca.uhn.fhir.rest.client.api.IHttpResponse;
 import com.spring.hapi.fhirclient.config.SecurityProperties;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
-import java.time.Instant;
-import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Bearer-token access for FHIR calls. Tokens come from {@link TokenManager}, which renews them in the
+ * background, so {@link #getAccessToken()} does not block on the IdP once the first token is in.
+ */
 @Component
 public class OAuth2AccessTokenProvider {
   private final SecurityProperties props;
-  private final RestTemplate rest = new RestTemplate();
-  private volatile String tokenValue;
-  private volatile Instant expiresAt = Instant.EPOCH;
+  private final TokenManager tokens;
 
-  public OAuth2AccessTokenProvider(SecurityProperties props) {
+  public OAuth2AccessTokenProvider(SecurityProperties props, TokenManager tokens) {
     this.props = props;
+    this.tokens = tokens;
   }
 
   public Optional<String> getAccessToken() {
-    if (!props.enabled()) return Optional.empty();
-    if (tokenValue == null || Instant.now().isAfter(expiresAt.minusSeconds(60))) {
-      fetchToken();
-    }
-    return Optional.ofNullable(tokenValue);
+    return tokens.token(TokenManager.DEFAULT);
   }
 
-  private synchronized void fetchToken() {
-    if (!props.enabled()) return;
-    if (tokenValue != null && Instant.now().isBefore(expiresAt.minusSeconds(60))) return;
-
-    HttpHeaders headers = new HttpHeaders();
-    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-    MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
-    form.add("grant_type", "client_credentials");
-    if (props.scope()!=null && !props.scope().isBlank()) form.add("scope", props.scope());
-    form.add("client_id", props.clientId());
-    form.add("client_secret", props.clientSecret());
-
-    HttpEntity<MultiValueMap<String, String>> req = new HttpEntity<>(form, headers);
-    ResponseEntity<Map> resp = rest.postForEntity(props.tokenUri(), req, Map.class);
-    Map body = resp.getBody();
-    if (body == null) throw new IllegalStateException("Empty token response");
-    Object at = body.get("access_token");
-    Object exp = body.get("expires_in");
-    if (at == null) throw new IllegalStateException("No access_token in response");
-    tokenValue = String.valueOf(at);
-    long ttl = 3600;
-    if (exp != null) {
-      try { ttl = Long.parseLong(String.valueOf(exp)); } catch (Exception ignored) {}
-    }
-    expiresAt = Instant.now().plusSeconds(ttl);
+  /** Token for a named registration under {@code security.oauth2.registrations}. */
+  public Optional<String> getAccessToken(String registration) {
+    return tokens.token(registration);
   }
 
   public void install(ca.uhn.fhir.rest.client.api.IGenericClient client) {
+    install(client, TokenManager.DEFAULT);
+  }
+
+  /** Register an interceptor that adds {@code registration}'s bearer token to every request. */
+  public void install(ca.uhn.fhir.rest.client.api.IGenericClient client, String registration) {
     if (!props.enabled()) return;
     client.registerInterceptor(new IClientInterceptor() {
       @Override public void interceptRequest(IHttpRequest theRequest) {
-        getAccessToken().ifPresent(tok -> theRequest.addHeader("Authorization", "Bearer " + tok));
+        tokens.token(registration).ifPresent(tok -> theRequest.addHeader("Authorization", "Bearer " + tok));
       }
       @Override public void interceptResponse(IHttpResponse theResponse) throws IOException { }
     });
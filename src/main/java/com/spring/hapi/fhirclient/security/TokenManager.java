@@ -0,0 +1,205 @@
+package com.spring.hapi.fhirclient.security;
+
+import com.spring.hapi.fhirclient.config.SecurityProperties;
+import com.spring.hapi.fhirclient.config.SecurityProperties.Registration;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client-credentials access tokens for one or more registrations, renewed ahead of expiry.
+ *
+ * <p>Each registration holds its current token in an {@link AtomicReference}; {@link #token(String)}
+ * is a volatile read and a {@code nanoTime} comparison. After every successful fetch a renewal is
+ * scheduled at {@code refresh-fraction × expires_in}; the token request runs on {@code fhirExecutor}
+ * while callers keep receiving the old token. A failed renewal is retried with a shorter delay for as
+ * long as the old token is still valid.</p>
+ *
+ * <p>Callers block only when no usable token exists: before the first fetch, or if renewals kept
+ * failing until the token expired. Fetches are serialized per registration with a
+ * {@link ReentrantLock} (not {@code synchronized}, which would pin a virtual thread during the POST).</p>
+ *
+ * <p>Token requests are timed in {@code fhir.oauth.token.fetch} (tags {@code registration},
+ * {@code outcome}).</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class TokenManager {
+  private static final Logger LOG = LoggerFactory.getLogger(TokenManager.class);
+
+  /** Name of the registration built from the top-level {@code security.oauth2} properties. */
+  public static final String DEFAULT = "default";
+
+  private static final long MIN_DELAY_MS = 1_000;
+  private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+  private record Granted(String value, long expiresInSeconds) {}
+
+  private record Token(String value, long usableUntilNanos) {
+    boolean usable(long now) {
+      return now - usableUntilNanos < 0;
+    }
+  }
+
+  private static final class Slot {
+    final String name;
+    final Registration registration;
+    final AtomicReference<Token> current = new AtomicReference<>();
+    final ReentrantLock lock = new ReentrantLock();
+    ScheduledFuture<?> next; // guarded by lock
+
+    Slot(String name, Registration registration) {
+      this.name = name;
+      this.registration = registration;
+    }
+  }
+
+  private final SecurityProperties props;
+  private final RestTemplate rest;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, Slot> slots;
+  private final FhirMetrics metrics;
+
+  public TokenManager(SecurityProperties props,
+                      @Qualifier("fhirRestTemplate") RestTemplate rest,
+                      @Qualifier("fhirExecutor") ExecutorService executor,
+                      @Qualifier("fhirRetryScheduler") ScheduledExecutorService scheduler,
+                      FhirMetrics metrics) {
+    this.props = props;
+    this.metrics = metrics;
+    this.rest = rest;
+    this.executor = executor;
+    this.scheduler = scheduler;
+    Map<String, Slot> s = new HashMap<>();
+    s.put(DEFAULT, new Slot(DEFAULT, new Registration(props.tokenUri(), props.clientId(), props.clientSecret(), props.scope())));
+    props.registrations().forEach((name, r) -> s.put(name, new Slot(name, new Registration(
+      r.tokenUri() != null ? r.tokenUri() : props.tokenUri(),
+      r.clientId() != null ? r.clientId() : props.clientId(),
+      r.clientSecret() != null ? r.clientSecret() : props.clientSecret(),
+      r.scope() != null ? r.scope() : props.scope()))));
+    this.slots = Map.copyOf(s);
+  }
+
+  /** Fetch every registration's first token in the background so the first request does not wait. */
+  @PostConstruct
+  void prewarm() {
+    if (!props.enabled()) return;
+    slots.values().forEach(slot -> executor.execute(() -> renew(slot)));
+  }
+
+  /**
+   * Current token for {@code registration}.
+   *
+   * @param registration registration name ({@link #DEFAULT} for the top-level client)
+   * @return token, or empty when OAuth is disabled
+   * @throws IllegalArgumentException for an unknown registration
+   * @throws IllegalStateException if no valid token exists and the token endpoint fails
+   */
+  public Optional<String> token(String registration) {
+    if (!props.enabled()) return Optional.empty();
+    Slot slot = slots.get(registration);
+    if (slot == null) throw new IllegalArgumentException("Unknown OAuth registration: " + registration);
+    Token t = slot.current.get();
+    if (t != null && t.usable(System.nanoTime())) return Optional.of(t.value());
+    return Optional.of(fetchBlocking(slot));
+  }
+
+  /** Registered names, including {@link #DEFAULT}. */
+  public Set<String> registrations() {
+    return slots.keySet();
+  }
+
+  private String fetchBlocking(Slot slot) {
+    slot.lock.lock();
+    try {
+      Token t = slot.current.get();
+      if (t != null && t.usable(System.nanoTime())) return t.value();
+      return fetchAndSchedule(slot).value();
+    } finally {
+      slot.lock.unlock();
+    }
+  }
+
+  /** Background renewal; keeps the old token and retries sooner on failure. */
+  private void renew(Slot slot) {
+    slot.lock.lock();
+    try {
+      fetchAndSchedule(slot);
+    } catch (RuntimeException e) {
+      Token old = slot.current.get();
+      long remainingMs = old == null ? 0 : TimeUnit.NANOSECONDS.toMillis(old.usableUntilNanos() - System.nanoTime());
+      long delay = remainingMs <= 0 ? MAX_RETRY_DELAY_MS
+        : Math.max(MIN_DELAY_MS, Math.min(MAX_RETRY_DELAY_MS, remainingMs / 2));
+      LOG.warn("OAuth token renewal failed for '{}', retrying in {} ms: {}", slot.name, delay, e.toString());
+      schedule(slot, delay);
+    } finally {
+      slot.lock.unlock();
+    }
+  }
+
+  private Token fetchAndSchedule(Slot slot) {
+    long now = System.nanoTime();
+    Granted g = metrics.timed(() -> requestToken(slot.registration),
+      (outcome, nanos) -> metrics.recordToken(slot.name, outcome, nanos));
+    long ttlMs = TimeUnit.SECONDS.toMillis(g.expiresInSeconds());
+    // Treat the token as expired a little early to absorb clock skew and request latency.
+    long skewMs = Math.min(30_000, ttlMs / 10);
+    Token t = new Token(g.value(), now + TimeUnit.MILLISECONDS.toNanos(ttlMs - skewMs));
+    slot.current.set(t);
+    schedule(slot, Math.max(MIN_DELAY_MS, (long) (ttlMs * props.refreshFraction())));
+    return t;
+  }
+
+  /** Replace the pending renewal, if any. Caller holds {@code slot.lock}. */
+  private void schedule(Slot slot, long delayMs) {
+    if (slot.next != null) slot.next.cancel(false);
+    slot.next = scheduler.schedule(() -> executor.execute(() -> renew(slot)), delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** POST the client-credentials grant. */
+  private Granted requestToken(Registration r) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+    MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+    form.add("grant_type", "client_credentials");
+    if (r.scope() != null && !r.scope().isBlank()) form.add("scope", r.scope());
+    form.add("client_id", r.clientId());
+    form.add("client_secret", r.clientSecret());
+
+    ResponseEntity<Map> resp = rest.postForEntity(r.tokenUri(), new HttpEntity<>(form, headers), Map.class);
+    Map body = resp.getBody();
+    if (body == null) throw new IllegalStateException("Empty token response");
+    Object at = body.get("access_token");
+    Object exp = body.get("expires_in");
+    if (at == null) throw new IllegalStateException("No access_token in response");
+    long ttl = 3600;
+    if (exp != null) {
+      try { ttl = Long.parseLong(String.valueOf(exp)); } catch (Exception ignored) {}
+    }
+    return new Granted(String.valueOf(at), ttl);
+  }
+}
@@ -0,0 +1,147 @@
+package com.spring.hapi.fhirclient.util;
+
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD concurrency limiter for calls to one server.
+ *
+ * <p>While responses come back fast the limit grows additively (about +1 per limit's worth of
+ * calls, i.e. per round trip). A call that {@linkplain #release reports} a drop (overload status,
+ * timeout, connection failure), or whose latency exceeds {@code latencyTolerance} times the smoothed
+ * latency, multiplies the limit by {@code backoffRatio}, at most once per smoothed round trip so a
+ * burst of slow responses is one congestion signal rather than many. The baseline is an
+ * exponentially weighted average, so a lasting shift in latency becomes the new normal.</p>
+ *
+ * <p>Callers over the limit wait (a lock and condition rather than {@code synchronized}, so waiting
+ * virtual threads unmount) for up to {@code maxWaitMs}, then get {@link LimitExceededException}.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+public final class AdaptiveLimiter {
+  private static final double SMOOTHING = 0.05;
+
+  /** Thrown when no permit became available within {@code maxWaitMs}. */
+  public static final class LimitExceededException extends RuntimeException {
+    public LimitExceededException(String message) {
+      super(message);
+    }
+  }
+
+  private final String name;
+  private final ResilienceProperties.Limiter props;
+  private final LongSupplier clock;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+  private double limit;
+  private int inFlight;
+  private double smoothedRttNanos;
+  private long lastDecreaseNanos;
+
+  public AdaptiveLimiter(String name, ResilienceProperties.Limiter props) {
+    this(name, props, System::nanoTime);
+  }
+
+  AdaptiveLimiter(String name, ResilienceProperties.Limiter props, LongSupplier clock) {
+    this.name = name;
+    this.props = props;
+    this.clock = clock;
+    this.limit = props.initialLimit();
+    this.lastDecreaseNanos = clock.getAsLong();
+  }
+
+  /**
+   * Take a permit, waiting up to {@code maxWaitMs}.
+   *
+   * @return start timestamp to pass back to {@link #release}
+   * @throws LimitExceededException if none became free in time
+   */
+  public long acquire() {
+    lock.lock();
+    try {
+      long waitNanos = TimeUnit.MILLISECONDS.toNanos(props.maxWaitMs());
+      while (inFlight >= (int) limit) {
+        if (waitNanos <= 0) {
+          throw new LimitExceededException("Concurrency limit " + (int) limit + " reached for " + name);
+        }
+        try {
+          waitNanos = available.awaitNanos(waitNanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new LimitExceededException("Interrupted waiting for a permit for " + name);
+        }
+      }
+      inFlight++;
+    } finally {
+      lock.unlock();
+    }
+    return clock.getAsLong();
+  }
+
+  /**
+   * Return a permit and feed the call's outcome into the limit.
+   *
+   * @param startNanos value returned by {@link #acquire}
+   * @param dropped true if the call failed in a way that signals overload
+   */
+  public void release(long startNanos, boolean dropped) {
+    long now = clock.getAsLong();
+    long rtt = now - startNanos;
+    lock.lock();
+    try {
+      int inFlightBefore = inFlight--;
+      int floorBefore = (int) limit;
+      boolean slow = smoothedRttNanos > 0 && rtt > smoothedRttNanos * props.latencyTolerance();
+      if (dropped || slow) {
+        if (now - lastDecreaseNanos >= (long) smoothedRttNanos) {
+          limit = Math.max(props.minLimit(), limit * props.backoffRatio());
+          lastDecreaseNanos = now;
+        }
+      } else if (inFlightBefore * 2 >= limit) {
+        // only grow when the current limit is actually being used
+        limit = Math.min(props.maxLimit(), limit + 1.0 / limit);
+      }
+      if (!dropped) {
+        smoothedRttNanos = smoothedRttNanos == 0 ? rtt : smoothedRttNanos + SMOOTHING * (rtt - smoothedRttNanos);
+      }
+      if ((int) limit > floorBefore) available.signalAll();
+      else available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Return a permit without a sample, for a call that never reached the server. */
+  public void cancel() {
+    lock.lock();
+    try {
+      inFlight--;
+      available.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Current limit (rounded down). */
+  public int limit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int inFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
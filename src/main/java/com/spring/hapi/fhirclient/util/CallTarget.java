@@ -0,0 +1,17 @@
+package com.spring.hapi.fhirclient.util;
+
+/**
+ * What a FHIR call is made against, for {@link ResilientExecutor}: the server selects the circuit
+ * breaker, concurrency limiter and server rate limit; the search name and caller tag select optional
+ * further rate limits (see {@link FhirRateLimits}).
+ *
+ * @param server server base URL
+ * @param search named search, or null
+ * @param tag caller-supplied tag (e.g. {@code bulk-extract}), or null
+ */
+public record CallTarget(String server, String search, String tag) {
+
+  public static CallTarget server(String server) {
+    return new CallTarget(server, null, null);
+  }
+}
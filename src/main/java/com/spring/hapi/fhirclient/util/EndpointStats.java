@@ -0,0 +1,109 @@
+package com.spring.hapi.fhirclient.util;
+
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Live load and health of each FHIR base URL, fed by {@link ResilientExecutor} around every attempt
+ * and read by replica selection.
+ *
+ * <p>Per URL it keeps the requests in flight, an exponentially smoothed latency of successful calls
+ * and a run of consecutive failures. After {@code fhir-server.routing.eject-after-failures} failures
+ * in a row (server distress only, see {@link ResilientExecutor#isRetryable}) the URL is ejected for
+ * {@code eject-ms}; the next success ends the run.</p>
+ *
+ * Thread-safety: safe for concurrent use; all updates are single atomic or volatile writes.
+ */
+@Component
+public class EndpointStats {
+  private static final double SMOOTHING = 0.1;
+
+  private final FhirClientProperties.Routing routing;
+  private final LongSupplier clock;
+  private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+  @Autowired
+  public EndpointStats(FhirClientProperties props) {
+    this(props.routing(), System::nanoTime);
+  }
+
+  EndpointStats(FhirClientProperties.Routing routing, LongSupplier clock) {
+    this.routing = routing;
+    this.clock = clock;
+  }
+
+  private static final class Endpoint {
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    volatile double latencyNanos;
+    volatile long ejectedUntil;
+    volatile boolean ejected;
+  }
+
+  /** Mark a request to {@code url} as started; pass the result to {@link #finish}. */
+  public long start(String url) {
+    endpoint(url).outstanding.incrementAndGet();
+    return clock.getAsLong();
+  }
+
+  /**
+   * Mark a request to {@code url} as finished.
+   *
+   * @param startNanos value returned by {@link #start}
+   * @param failed true if the server failed to answer (distress), false for any answer including 4xx
+   */
+  public void finish(String url, long startNanos, boolean failed) {
+    Endpoint e = endpoint(url);
+    e.outstanding.decrementAndGet();
+    long now = clock.getAsLong();
+    if (failed) {
+      if (e.failures.incrementAndGet() >= routing.ejectAfterFailures()) {
+        e.ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(routing.ejectMs());
+        e.ejected = true;
+      }
+      return;
+    }
+    e.failures.set(0);
+    e.ejected = false;
+    double sample = now - startNanos;
+    double prev = e.latencyNanos;
+    e.latencyNanos = prev == 0 ? sample : prev + SMOOTHING * (sample - prev);
+  }
+
+  public int outstanding(String url) {
+    Endpoint e = endpoints.get(key(url));
+    return e == null ? 0 : e.outstanding.get();
+  }
+
+  /** Smoothed latency of successful calls in nanoseconds; 0 if none yet. */
+  public double latencyNanos(String url) {
+    Endpoint e = endpoints.get(key(url));
+    return e == null ? 0 : e.latencyNanos;
+  }
+
+  /** False while {@code url} is ejected. */
+  public boolean healthy(String url) {
+    Endpoint e = endpoints.get(key(url));
+    return e == null || !e.ejected || clock.getAsLong() - e.ejectedUntil >= 0;
+  }
+
+  private Endpoint endpoint(String url) {
+    String key = key(url);
+    Endpoint e = endpoints.get(key);
+    return e != null ? e : endpoints.computeIfAbsent(key, k -> new Endpoint());
+  }
+
+  /** HAPI reports server bases with a trailing slash, configuration without. */
+  private static String key(String url) {
+    int end = url.length();
+    while (end > 0 && url.charAt(end - 1) == '/') end--;
+    return url.substring(0, end);
+  }
+}
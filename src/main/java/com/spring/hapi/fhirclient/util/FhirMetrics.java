@@ -0,0 +1,174 @@
+package com.spring.hapi.fhirclient.util;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for the FHIR client (see {@link MetricsProperties}).
+ *
+ * <table>
+ *   <caption>Meters</caption>
+ *   <tr><td>{@code fhir.search}</td><td>timer: search, resource, outcome</td></tr>
+ *   <tr><td>{@code fhir.search.page}</td><td>timer: mode, outcome; {@code fhir.search.page.entries} summary: mode</td></tr>
+ *   <tr><td>{@code fhir.client.requests}</td><td>timer: method, status; {@code fhir.client.response.size} summary (bytes, when Content-Length is sent)</td></tr>
+ *   <tr><td>{@code fhir.retry.events}</td><td>counter: name, kind (retry, success_after_retry, exhausted)</td></tr>
+ *   <tr><td>{@code fhir.circuit.transitions}</td><td>counter: server, state (closed, open, half_open, ...)</td></tr>
+ *   <tr><td>{@code fhir.client.concurrency.limit}, {@code .inflight}</td><td>gauges: server</td></tr>
+ *   <tr><td>{@code fhir.ratelimit.throttled}</td><td>counter: scope (server, search, tag), outcome (delayed, rejected)</td></tr>
+ *   <tr><td>{@code fhir.oauth.token.fetch}</td><td>timer: registration, outcome</td></tr>
+ *   <tr><td>{@code fhir.client.create}</td><td>timer: outcome</td></tr>
+ *   <tr><td>{@code fhir.capability.fetch}</td><td>timer: outcome</td></tr>
+ * </table>
+ *
+ * <p>Durations come from {@link System#nanoTime()}. Meters are looked up once per tag combination
+ * and then served from a map, so recording costs one map read plus the histogram update. Outcome
+ * is {@code success}, {@code client_error} (4xx), {@code server_error} (5xx) or {@code error}.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class FhirMetrics {
+  public static final String SUCCESS = "success";
+
+  private record Key(String name, String a, String b, String c) {}
+
+  private final MeterRegistry registry;
+  private final Duration[] slo;
+  private final double[] payloadSlo;
+  private final boolean percentileHistogram;
+  private final ConcurrentMap<Key, Timer> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Key, DistributionSummary> summaries = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Key, Counter> counters = new ConcurrentHashMap<>();
+
+  public FhirMetrics(MeterRegistry registry, MetricsProperties props) {
+    // A composite registry with no children hands out no-op meters.
+    this.registry = props.enabled() ? registry : new CompositeMeterRegistry();
+    this.slo = props.sloMs().stream().map(Duration::ofMillis).toArray(Duration[]::new);
+    this.payloadSlo = props.payloadSloBytes().stream().mapToDouble(Long::doubleValue).toArray();
+    this.percentileHistogram = props.percentileHistogram();
+  }
+
+  /** Outcome tag for a call that failed with {@code error} (null means success). */
+  public static String outcome(Throwable error) {
+    if (error == null) return SUCCESS;
+    Throwable e = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+    if (e instanceof BaseServerResponseException bse) {
+      int status = bse.getStatusCode();
+      if (status >= 400 && status < 500) return "client_error";
+      if (status >= 500) return "server_error";
+    }
+    return "error";
+  }
+
+  public void recordSearch(String search, String resource, String outcome, long nanos) {
+    timer(new Key("fhir.search", search, resource, outcome), "search", "resource", "outcome").record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordPage(String mode, String outcome, int entries, long nanos) {
+    timer(new Key("fhir.search.page", mode, outcome, null), "mode", "outcome", null).record(nanos, TimeUnit.NANOSECONDS);
+    if (entries >= 0) {
+      summaries.computeIfAbsent(new Key("fhir.search.page.entries", mode, null, null),
+        k -> DistributionSummary.builder(k.name()).tag("mode", mode).baseUnit("entries").register(registry))
+        .record(entries);
+    }
+  }
+
+  public void recordHttp(String method, int status, long bytes, long nanos) {
+    String s = Integer.toString(status);
+    timer(new Key("fhir.client.requests", method, s, null), "method", "status", null).record(nanos, TimeUnit.NANOSECONDS);
+    if (bytes >= 0) {
+      summaries.computeIfAbsent(new Key("fhir.client.response.size", method, null, null),
+        k -> DistributionSummary.builder(k.name()).tag("method", method).baseUnit("bytes")
+          .serviceLevelObjectives(payloadSlo).publishPercentileHistogram(percentileHistogram).register(registry))
+        .record(bytes);
+    }
+  }
+
+  public void recordRetryEvent(String name, String kind) {
+    counters.computeIfAbsent(new Key("fhir.retry.events", name, kind, null),
+      k -> Counter.builder(k.name()).tag("name", name).tag("kind", kind).register(registry))
+      .increment();
+  }
+
+  public void recordCircuitTransition(String server, String state) {
+    counters.computeIfAbsent(new Key("fhir.circuit.transitions", server, state, null),
+      k -> Counter.builder(k.name()).tag("server", server).tag("state", state).register(registry))
+      .increment();
+  }
+
+  public void registerLimiter(String server, AdaptiveLimiter limiter) {
+    Gauge.builder("fhir.client.concurrency.limit", limiter, AdaptiveLimiter::limit).tag("server", server).register(registry);
+    Gauge.builder("fhir.client.concurrency.inflight", limiter, AdaptiveLimiter::inFlight).tag("server", server).register(registry);
+  }
+
+  public void recordRateLimit(String scope, String outcome) {
+    counters.computeIfAbsent(new Key("fhir.ratelimit.throttled", scope, outcome, null),
+      k -> Counter.builder(k.name()).tag("scope", scope).tag("outcome", outcome).register(registry))
+      .increment();
+  }
+
+  public void recordToken(String registration, String outcome, long nanos) {
+    timer(new Key("fhir.oauth.token.fetch", registration, outcome, null), "registration", "outcome", null).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordClientCreate(String outcome, long nanos) {
+    timer(new Key("fhir.client.create", outcome, null, null), "outcome", null, null).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordCapabilityFetch(String outcome, long nanos) {
+    timer(new Key("fhir.capability.fetch", outcome, null, null), "outcome", null, null).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Time {@code call} and hand the outcome and duration to {@code recorder}, rethrowing any failure.
+   */
+  public <T> T timed(Supplier<T> call, Recorder recorder) {
+    long start = System.nanoTime();
+    try {
+      T result = call.get();
+      recorder.record(SUCCESS, System.nanoTime() - start);
+      return result;
+    } catch (RuntimeException e) {
+      recorder.record(outcome(e), System.nanoTime() - start);
+      throw e;
+    }
+  }
+
+  /** Receives an outcome tag and elapsed nanoseconds. */
+  @FunctionalInterface
+  public interface Recorder {
+    void record(String outcome, long nanos);
+  }
+
+  private Timer timer(Key key, String tagA, String tagB, String tagC) {
+    Timer t = timers.get(key);
+    if (t != null) return t;
+    return timers.computeIfAbsent(key, k -> {
+      Timer.Builder b = Timer.builder(k.name())
+        .serviceLevelObjectives(slo)
+        .publishPercentileHistogram(percentileHistogram);
+      if (tagA != null) b.tag(tagA, nullToNone(k.a()));
+      if (tagB != null) b.tag(tagB, nullToNone(k.b()));
+      if (tagC != null) b.tag(tagC, nullToNone(k.c()));
+      return b.register(registry);
+    });
+  }
+
+  private static String nullToNone(String v) {
+    return v == null ? "none" : v;
+  }
+}
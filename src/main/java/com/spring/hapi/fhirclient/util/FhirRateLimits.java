@@ -0,0 +1,77 @@
+package com.spring.hapi.fhirclient.util;
+
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Client-side rate limits for outgoing FHIR requests (see {@link RateLimitProperties}).
+ *
+ * <p>{@link #acquire} takes a token from the server's bucket, then the search's, then the tag's,
+ * each a lock-free {@link RateLimiter} created on first use and shared by all threads. Waits and
+ * rejections are counted in {@code fhir.ratelimit.throttled} (tags {@code scope} = server, search,
+ * tag; {@code outcome} = delayed, rejected).</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+@Component
+public class FhirRateLimits {
+  /** Cached for keys without a configured limit, so they are resolved only once as well. */
+  private static final Optional<RateLimiter> NONE = Optional.empty();
+
+  private final RateLimitProperties props;
+  private final FhirMetrics metrics;
+  private final ConcurrentMap<String, Optional<RateLimiter>> servers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Optional<RateLimiter>> searches = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Optional<RateLimiter>> tags = new ConcurrentHashMap<>();
+
+  public FhirRateLimits(RateLimitProperties props, FhirMetrics metrics) {
+    this.props = props;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Wait for (or fail on) every rate limit that applies to {@code target}.
+   *
+   * @throws RateLimiter.RateLimitExceededException if a bucket in fail-fast mode is empty, or a
+   *         blocking wait would exceed its {@code maxWaitMs}
+   */
+  public void acquire(CallTarget target) {
+    if (!props.enabled()) return;
+    if (target.server() != null) {
+      String key = target.server().replaceAll("/+$", "");
+      take("server", servers.computeIfAbsent(key, k -> bucket("server " + k, serverLimit(k))));
+    }
+    if (target.search() != null) {
+      take("search", searches.computeIfAbsent(target.search(), k -> bucket("search " + k, props.searches().get(k))));
+    }
+    if (target.tag() != null) {
+      take("tag", tags.computeIfAbsent(target.tag(), k -> bucket("tag " + k, props.tags().get(k))));
+    }
+  }
+
+  private RateLimitProperties.Limit serverLimit(String base) {
+    for (Map.Entry<String, RateLimitProperties.Limit> e : props.servers().entrySet()) {
+      if (e.getKey().replaceAll("/+$", "").equalsIgnoreCase(base)) return e.getValue();
+    }
+    return props.defaultServer();
+  }
+
+  private static Optional<RateLimiter> bucket(String name, RateLimitProperties.Limit limit) {
+    return (limit == null || !limit.limited()) ? NONE : Optional.of(new RateLimiter(name, limit));
+  }
+
+  private void take(String scope, Optional<RateLimiter> bucket) {
+    if (bucket.isEmpty()) return;
+    try {
+      if (bucket.get().acquire() > 0) metrics.recordRateLimit(scope, "delayed");
+    } catch (RateLimiter.RateLimitExceededException e) {
+      metrics.recordRateLimit(scope, "rejected");
+      throw e;
+    }
+  }
+}
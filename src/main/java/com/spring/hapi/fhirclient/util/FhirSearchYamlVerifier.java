@@ -1,6 +1,6 @@
 package com.spring.hapi.fhirclient.util;
 
-import com.spring.hapi.fhirclient.bootstrap.VersionAdaptiveClientFactory;
+import com.spring.hapi.fhirclient.bootstrap.VersionedClientManager;
 import com.spring.hapi.fhirclient.client.FhirRelease;
 import com.spring.hapi.fhirclient.client.VersionedClient;
 import com.spring.hapi.fhirclient.config.SearchProperties;
@@ -17,23 +17,23 @@ import java.util.stream.Collectors;
 public class FhirSearchYamlVerifier {
     private static final Logger LOG = LoggerFactory.getLogger(FhirSearchYamlVerifier.class);
 
-    private final VersionAdaptiveClientFactory factory;
+    private final VersionedClientManager clients;
     private final YamlSearchRepository yamlRepo;
     private final SearchProperties searchProps;
 
     public FhirSearchYamlVerifier(
-            VersionAdaptiveClientFactory factory,
+            VersionedClientManager clients,
             YamlSearchRepository yamlRepo,
             SearchProperties searchProps
     ) {
-        this.factory = factory;
+        this.clients = clients;
         this.yamlRepo = yamlRepo;
         this.searchProps = searchProps;
     }
 
     public void verifyAll() {
         LOG.info("Starting FHIR Search YAML verification (no FHIRPath)...");
-        VersionedClient vc = factory.create();
+        VersionedClient vc = clients.get();
         var release = vc.release();
 
         // Load searches
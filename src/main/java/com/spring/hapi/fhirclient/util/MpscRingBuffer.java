@@ -0,0 +1,75 @@
+package com.spring.hapi.fhirclient.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, lock-free multi-producer / single-consumer ring buffer.
+ *
+ * <p>Producers claim a sequence number with a CAS on {@code tail} and publish into the slot with a
+ * release store; when the buffer is full {@link #offer} returns {@code false} immediately instead of
+ * waiting, so producers never block. The single consumer drains slots in sequence order and clears
+ * each one. A slot that has been claimed but not yet published stops the drain until the producer
+ * finishes, which preserves order.</p>
+ *
+ * Thread-safety: any number of producer threads; {@link #drain} must only be called from one thread.
+ *
+ * @param <E> element type
+ */
+public final class MpscRingBuffer<E> {
+  private final AtomicReferenceArray<E> slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head;
+
+  /**
+   * @param capacity requested capacity; rounded up to a power of two
+   */
+  public MpscRingBuffer(int capacity) {
+    int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /** Publish {@code e}; returns {@code false} without blocking if the buffer is full. */
+  public boolean offer(E e) {
+    long t;
+    do {
+      t = tail.get();
+      if (t - head >= slots.length()) return false;
+    } while (!tail.compareAndSet(t, t + 1));
+    slots.lazySet((int) t & mask, e);
+    return true;
+  }
+
+  /**
+   * Hand up to {@code max} published elements to {@code sink}, oldest first.
+   *
+   * @return number of elements drained
+   */
+  public int drain(Consumer<? super E> sink, int max) {
+    long h = head;
+    int n = 0;
+    while (n < max) {
+      int i = (int) h & mask;
+      E e = slots.get(i);
+      if (e == null) break;
+      slots.lazySet(i, null);
+      h++;
+      head = h;
+      n++;
+      sink.accept(e);
+    }
+    return n;
+  }
+
+  /** Elements claimed but not yet drained (approximate under concurrency). */
+  public int size() {
+    return (int) Math.max(0, tail.get() - head);
+  }
+
+  public int capacity() {
+    return slots.length();
+  }
+}
@@ -0,0 +1,89 @@
+package com.spring.hapi.fhirclient.util;
+
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket in its GCRA form (generic cell rate algorithm).
+ *
+ * <p>The whole bucket is one {@link AtomicLong}: the theoretical arrival time of the next request.
+ * Each request advances it by one emission interval ({@code 1s / permitsPerSecond}) with a CAS; it
+ * conforms immediately if that stays within {@code burst} intervals of now, otherwise it has reserved
+ * a slot that many nanoseconds ahead and waits for it. No thread ever holds a lock, so the bucket can
+ * be shared by any number of platform and virtual threads.</p>
+ *
+ * <p>In {@link RateLimitProperties.Mode#FAIL_FAST} mode, or when the wait would exceed
+ * {@code maxWaitMs}, nothing is reserved and {@link RateLimitExceededException} is thrown.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ */
+public final class RateLimiter {
+
+  /** Thrown when a request may not proceed within the allowed wait. */
+  public static final class RateLimitExceededException extends RuntimeException {
+    public RateLimitExceededException(String message) {
+      super(message);
+    }
+  }
+
+  private final String name;
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final long maxWaitNanos;
+  private final LongSupplier clock;
+  private final AtomicLong tat;
+
+  public RateLimiter(String name, RateLimitProperties.Limit limit) {
+    this(name, limit, System::nanoTime);
+  }
+
+  RateLimiter(String name, RateLimitProperties.Limit limit, LongSupplier clock) {
+    this.name = name;
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / limit.permitsPerSecond()));
+    this.toleranceNanos = intervalNanos * limit.burst();
+    this.maxWaitNanos = limit.mode() == RateLimitProperties.Mode.FAIL_FAST ? 0 : TimeUnit.MILLISECONDS.toNanos(limit.maxWaitMs());
+    this.clock = clock;
+    this.tat = new AtomicLong(clock.getAsLong());
+  }
+
+  /**
+   * Take a token, sleeping until it is due.
+   *
+   * @return nanoseconds waited (0 if the request conformed immediately)
+   * @throws RateLimitExceededException if the token is not due within the allowed wait
+   */
+  public long acquire() {
+    long wait = reserve();
+    if (wait < 0) throw new RateLimitExceededException("Rate limit exceeded for " + name);
+    if (wait > 0) {
+      try {
+        Thread.sleep(Duration.ofNanos(wait));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RateLimitExceededException("Interrupted waiting for rate limit " + name);
+      }
+    }
+    return wait;
+  }
+
+  /**
+   * Reserve the next slot without waiting.
+   *
+   * @return nanoseconds until the slot is due (0 = now), or -1 if it is further away than allowed
+   *         (nothing is reserved in that case)
+   */
+  long reserve() {
+    while (true) {
+      long now = clock.getAsLong();
+      long current = tat.get();
+      long next = Math.max(current, now) + intervalNanos;
+      long wait = next - toleranceNanos - now;
+      if (wait > maxWaitNanos) return -1;
+      if (tat.compareAndSet(current, next)) return Math.max(0, wait);
+    }
+  }
+}
@@ -1,32 +1,311 @@
 package com.spring.hapi.fhirclient.util;
 
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
 import com.spring.hapi.fhirclient.config.RetryProperties;
+import com.spring.hapi.fhirclient.interceptors.RetryAfterIntc;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
 import io.github.resilience4j.retry.RetryRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
 
+import java.io.UncheckedIOException;
 import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 
+/**
+ * Resilience pipeline around blocking and async FHIR calls: retry, then for each attempt the
+ * {@link FhirRateLimits client rate limits}, a per-server {@link AdaptiveLimiter} and a per-server
+ * circuit breaker.
+ *
+ * <ul>
+ *   <li><b>Retry</b> ({@link RetryProperties}): named resilience4j retries for idempotent reads
+ *   ({@link #run}, {@link #runAsync}); non-idempotent calls go through {@link #runOnce}, which is never
+ *   retried. Only retryable statuses (429/5xx by default) and connection failures are retried, with
+ *   exponential back-off and jitter, or the server's {@code Retry-After} when it sends one.</li>
+ *   <li><b>Circuit breaker</b> ({@link ResilienceProperties.CircuitBreaker}): one per server base URL,
+ *   counting every attempt, so an unhealthy server stops receiving retries; rejected calls fail fast
+ *   with {@link CallNotPermittedException}, which is not retried.</li>
+ *   <li><b>Limiter</b> ({@link ResilienceProperties.Limiter}): bounds attempts in flight per server and
+ *   shrinks the bound as latency rises or the server sheds load.</li>
+ *   <li><b>Rate limits</b> ({@link com.spring.hapi.fhirclient.config.RateLimitProperties}): every
+ *   attempt, retries included, takes a token per server, search and caller tag of its
+ *   {@link CallTarget} before it takes a limiter permit, so time spent waiting for a token does not
+ *   count as latency.</li>
+ * </ul>
+ *
+ * <p>Each retry instance reports to {@code fhir.retry.events} (tags {@code name}, {@code kind} =
+ * retry, success_after_retry, exhausted), breakers to {@code fhir.circuit.transitions} and limiters
+ * to the {@code fhir.client.concurrency.*} gauges via {@link FhirMetrics}.</p>
+ */
 @Component
 public class ResilientExecutor {
+  private static final String RETRY_AFTER = "Retry-After";
+
   private final RetryProperties props;
+  private final ResilienceProperties resilience;
   private final RetryRegistry registry;
+  private final CircuitBreakerRegistry breakers;
+  private final ConcurrentMap<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler;
+  private final FhirRateLimits rateLimits;
+  private final EndpointStats endpoints;
+  private final FhirMetrics metrics;
 
-  public ResilientExecutor(RetryProperties props) {
+  public ResilientExecutor(RetryProperties props,
+                           ResilienceProperties resilience,
+                           @Qualifier("fhirRetryScheduler") ScheduledExecutorService scheduler,
+                           FhirRateLimits rateLimits,
+                           EndpointStats endpoints,
+                           FhirMetrics metrics) {
     this.props = props;
+    this.resilience = resilience;
+    this.rateLimits = rateLimits;
+    this.endpoints = endpoints;
+    this.scheduler = scheduler;
+    this.metrics = metrics;
     RetryConfig config = RetryConfig.custom()
         .maxAttempts(props.maxAttempts())
-        .waitDuration(Duration.ofMillis(props.backoffMs()))
+        .intervalBiFunction((attempt, outcome) -> backoffMs(attempt, outcome.isLeft() ? outcome.getLeft() : null))
+        .retryOnException(this::isRetryable)
         .build();
     this.registry = RetryRegistry.of(config);
+    registry.getEventPublisher().onEntryAdded(e -> {
+      Retry retry = e.getAddedEntry();
+      String name = retry.getName();
+      retry.getEventPublisher()
+        .onRetry(ev -> metrics.recordRetryEvent(name, "retry"))
+        .onSuccess(ev -> metrics.recordRetryEvent(name, "success_after_retry"))
+        .onError(ev -> metrics.recordRetryEvent(name, "exhausted"));
+    });
+
+    ResilienceProperties.CircuitBreaker cb = resilience.circuitBreaker();
+    this.breakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+        .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+        .slidingWindowSize(cb.windowSize())
+        .minimumNumberOfCalls(cb.minimumCalls())
+        .failureRateThreshold(cb.failureRateThreshold())
+        .slowCallDurationThreshold(Duration.ofMillis(cb.slowCallMs()))
+        .slowCallRateThreshold(100)
+        .waitDurationInOpenState(Duration.ofMillis(cb.openMs()))
+        .permittedNumberOfCallsInHalfOpenState(cb.halfOpenCalls())
+        .recordException(this::isRetryable)
+        .build());
+    breakers.getEventPublisher().onEntryAdded(e -> {
+      CircuitBreaker breaker = e.getAddedEntry();
+      breaker.getEventPublisher().onStateTransition(ev -> metrics.recordCircuitTransition(
+        breaker.getName(), ev.getStateTransition().getToState().name().toLowerCase(Locale.ROOT)));
+    });
+  }
+
+  /**
+   * Run an idempotent read against {@code server}, retrying per {@link RetryProperties}.
+   *
+   * @param name retry instance name (e.g. {@code search-exec})
+   * @param server server base URL; selects the circuit breaker and limiter
+   * @param supplier blocking call to attempt
+   */
+  public <T> T run(String name, String server, Supplier<T> supplier) {
+    return run(name, CallTarget.server(server), supplier);
+  }
+
+  /** {@link #run(String, String, Supplier)} with search and tag rate limits applied as well. */
+  public <T> T run(String name, CallTarget target, Supplier<T> supplier) {
+    Supplier<T> attempt = guarded(target, supplier);
+    if (!props.enabled()) return attempt.get();
+    return Retry.decorateSupplier(registry.retry(name), attempt).get();
+  }
+
+  /**
+   * Run a non-idempotent call against {@code server} exactly once, still subject to the rate limits,
+   * circuit breaker and limiter.
+   */
+  public <T> T runOnce(String server, Supplier<T> supplier) {
+    return guarded(CallTarget.server(server), supplier).get();
   }
 
-  public <T> T run(String name, Supplier<T> supplier) {
-    if (!props.enabled()) return supplier.get();
+  /**
+   * Async counterpart of {@link #run}: each attempt runs {@code supplier} on {@code executor}, and
+   * back-off between attempts is scheduled rather than slept, so no thread is held while waiting.
+   * Same retry configuration and registry entry ({@code name}) as the blocking variant.
+   *
+   * @param name retry instance name
+   * @param server server base URL; selects the circuit breaker and limiter
+   * @param supplier blocking call to attempt
+   * @param executor where attempts run (e.g. the virtual-thread {@code fhirExecutor})
+   * @return future completing with the first successful result or the last failure
+   */
+  public <T> CompletableFuture<T> runAsync(String name, String server, Supplier<T> supplier, Executor executor) {
+    return runAsync(name, CallTarget.server(server), supplier, executor);
+  }
+
+  /** {@link #runAsync(String, String, Supplier, Executor)} with search and tag rate limits applied as well. */
+  public <T> CompletableFuture<T> runAsync(String name, CallTarget target, Supplier<T> supplier, Executor executor) {
+    Supplier<T> attempt = guarded(target, supplier);
+    if (!props.enabled()) return CompletableFuture.supplyAsync(attempt, executor);
     Retry retry = registry.retry(name);
-    Supplier<T> decorated = Retry.decorateSupplier(retry, supplier);
-    return decorated.get();
+    return Retry.decorateCompletionStage(retry, scheduler, () -> CompletableFuture.supplyAsync(attempt, executor))
+        .get()
+        .toCompletableFuture();
+  }
+
+  /**
+   * One attempt: rate-limit tokens, limiter permit, then breaker, then the call with its
+   * {@code Retry-After} captured and its load and outcome reported to {@link EndpointStats}. Breaker
+   * and limiter are keyed on the base URL without trailing slashes, so both spellings share them.
+   */
+  private <T> Supplier<T> guarded(CallTarget target, Supplier<T> supplier) {
+    String server = FhirClientProperties.normalize(target.server());
+    Supplier<T> call = () -> tracked(server, supplier);
+    if (resilience.circuitBreaker().enabled()) {
+      call = CircuitBreaker.decorateSupplier(breakers.circuitBreaker(server), call);
+    }
+    if (resilience.limiter().enabled()) {
+      call = limited(limiter(server), call);
+    }
+    Supplier<T> limitedCall = call;
+    return () -> {
+      rateLimits.acquire(target);
+      return limitedCall.get();
+    };
+  }
+
+  private <T> Supplier<T> limited(AdaptiveLimiter limiter, Supplier<T> call) {
+    return () -> {
+      long start = limiter.acquire();
+      T result;
+      try {
+        result = call.get();
+      } catch (CallNotPermittedException e) {
+        limiter.cancel();
+        throw e;
+      } catch (RuntimeException e) {
+        limiter.release(start, isRetryable(e));
+        throw e;
+      }
+      limiter.release(start, false);
+      return result;
+    };
+  }
+
+  private AdaptiveLimiter limiter(String server) {
+    AdaptiveLimiter l = limiters.get(server);
+    if (l != null) return l;
+    return limiters.computeIfAbsent(server, s -> {
+      AdaptiveLimiter created = new AdaptiveLimiter(s, resilience.limiter());
+      metrics.registerLimiter(s, created);
+      return created;
+    });
+  }
+
+  private <T> T tracked(String server, Supplier<T> supplier) {
+    long start = endpoints.start(server);
+    T result;
+    try {
+      result = withRetryAfter(supplier);
+    } catch (RuntimeException e) {
+      endpoints.finish(server, start, isRetryable(e));
+      throw e;
+    }
+    endpoints.finish(server, start, false);
+    return result;
+  }
+
+  /** HAPI drops response headers from its exceptions; put back the one the retry needs. */
+  private static <T> T withRetryAfter(Supplier<T> supplier) {
+    try {
+      return supplier.get();
+    } catch (BaseServerResponseException e) {
+      String retryAfter = RetryAfterIntc.take();
+      if (retryAfter != null && header(e.getResponseHeaders(), RETRY_AFTER) == null) {
+        e.addResponseHeader(RETRY_AFTER, retryAfter);
+      }
+      throw e;
+    }
+  }
+
+  /** Server distress worth retrying (and counting against the breaker): retryable status or I/O failure. */
+  boolean isRetryable(Throwable error) {
+    Throwable e = unwrap(error);
+    if (e instanceof FhirClientConnectionException) return true;
+    if (e instanceof BaseServerResponseException bse) return props.retryStatuses().contains(bse.getStatusCode());
+    if (e instanceof RestClientResponseException rre) return props.retryStatuses().contains(rre.getStatusCode().value());
+    return e instanceof ResourceAccessException || e instanceof UncheckedIOException;
+  }
+
+  /**
+   * Wait before retry number {@code attempt} (1-based): {@code Retry-After} if present (capped at
+   * {@code maxRetryAfterMs}), otherwise capped exponential back-off minus a random jitter share.
+   */
+  long backoffMs(int attempt, Throwable error) {
+    long retryAfter = retryAfterMs(unwrap(error), System.currentTimeMillis());
+    if (retryAfter >= 0) return Math.min(retryAfter, props.maxRetryAfterMs());
+    double exp = props.backoffMs() * Math.pow(props.multiplier(), Math.max(0, attempt - 1));
+    long delay = (long) Math.min(props.maxBackoffMs(), exp);
+    return delay - (long) (delay * props.jitter() * ThreadLocalRandom.current().nextDouble());
+  }
+
+  private static long retryAfterMs(Throwable e, long nowMillis) {
+    String value = null;
+    if (e instanceof BaseServerResponseException bse && bse.hasResponseHeaders()) {
+      value = header(bse.getResponseHeaders(), RETRY_AFTER);
+    } else if (e instanceof RestClientResponseException rre && rre.getResponseHeaders() != null) {
+      value = rre.getResponseHeaders().getFirst(RETRY_AFTER);
+    }
+    return parseRetryAfter(value, nowMillis);
+  }
+
+  /**
+   * Milliseconds to wait for a {@code Retry-After} value (delta-seconds or HTTP-date), or -1 if absent
+   * or unparseable.
+   */
+  public static long parseRetryAfter(String value, long nowMillis) {
+    if (value == null || value.isBlank()) return -1;
+    String v = value.trim();
+    try {
+      return Math.max(0, Long.parseLong(v) * 1000);
+    } catch (NumberFormatException ignored) {
+      // not delta-seconds; try HTTP-date
+    }
+    try {
+      return Math.max(0, ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - nowMillis);
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+
+  private static String header(Map<String, List<String>> headers, String name) {
+    if (headers == null) return null;
+    for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+      if (e.getKey() != null && e.getKey().equalsIgnoreCase(name) && !e.getValue().isEmpty()) return e.getValue().get(0);
+    }
+    return null;
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
   }
 }
@@ -0,0 +1,94 @@
+package com.spring.hapi.fhirclient.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent calls with the same key into one execution ("single flight").
+ *
+ * <p>The first caller for a key runs the call; callers arriving while it is in flight wait for it
+ * and receive {@code copier.apply(result)}. If anyone joined, the leader also receives a copy, so the
+ * shared original is never handed out and can be copied safely. Failures are propagated to every
+ * waiter. Nothing is cached: once the call finishes the next caller starts a new flight.</p>
+ *
+ * Thread-safety: safe for concurrent use.
+ *
+ * @param <K> key type (e.g. the final request URL)
+ * @param <V> result type
+ */
+public final class SingleFlight<K, V> {
+  private static final int SEALED = Integer.MIN_VALUE;
+
+  private static final class Flight<V> {
+    final CompletableFuture<V> result = new CompletableFuture<>();
+    final AtomicInteger followers = new AtomicInteger();
+  }
+
+  private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+  private final Runnable onShared;
+
+  /**
+   * @param onShared invoked once per caller served by someone else's flight (e.g. a counter increment)
+   */
+  public SingleFlight(Runnable onShared) {
+    this.onShared = onShared;
+  }
+
+  /**
+   * Run {@code call} for {@code key}, or join the flight already running for it.
+   *
+   * @param key deduplication key
+   * @param call the work; runs on the leader's thread
+   * @param copier produces each caller's private copy when the result is shared
+   * @return the result (a copy when shared)
+   */
+  public V run(K key, Supplier<V> call, UnaryOperator<V> copier) {
+    while (true) {
+      Flight<V> mine = new Flight<>();
+      Flight<V> existing = inFlight.putIfAbsent(key, mine);
+      if (existing == null) return lead(key, mine, call, copier);
+      if (existing.followers.incrementAndGet() > 0) {
+        onShared.run();
+        return copier.apply(join(existing.result));
+      }
+      // Leader already finished and may have returned its original; start a fresh flight.
+    }
+  }
+
+  /** Number of keys currently in flight. */
+  public int inFlight() {
+    return inFlight.size();
+  }
+
+  private V lead(K key, Flight<V> mine, Supplier<V> call, UnaryOperator<V> copier) {
+    V value;
+    try {
+      value = call.get();
+    } catch (Throwable t) {
+      // Errors and sneaky-thrown checked exceptions too, or followers would wait forever
+      inFlight.remove(key, mine);
+      mine.followers.set(SEALED);
+      mine.result.completeExceptionally(t);
+      throw t;
+    }
+    inFlight.remove(key, mine);
+    int followers = mine.followers.getAndSet(SEALED);
+    mine.result.complete(value);
+    return followers > 0 ? copier.apply(value) : value;
+  }
+
+  private static <V> V join(CompletableFuture<V> f) {
+    try {
+      return f.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException re) throw re;
+      if (e.getCause() instanceof Error err) throw err;
+      throw e;
+    }
+  }
+}
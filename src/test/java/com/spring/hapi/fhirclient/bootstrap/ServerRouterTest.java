@@ -0,0 +1,53 @@
+package com.spring.hapi.fhirclient.bootstrap;
+
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.util.EndpointStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerRouterTest {
+  private static final String A = "http://a.test/fhir";
+  private static final String B = "http://b.test/fhir";
+
+  private final FhirClientProperties props = new FhirClientProperties("http://default.test/fhir", 0, 0, 0, null,
+    Map.of("registry", new FhirClientProperties.Server(List.of(A + "/", B), "none", 0, 0, null, null)),
+    new FhirClientProperties.Routing(null, 2, 60_000), null);
+  private final EndpointStats stats = new EndpointStats(props);
+  private final ServerRouter router = new ServerRouter(props, null, stats);
+
+  @Test
+  void spreadsIdleReplicasAndPrefersLeastOutstanding() {
+    Set<String> picked = IntStream.range(0, 4).mapToObj(i -> router.selectUrl("registry")).collect(Collectors.toSet());
+    assertEquals(Set.of(A, B), picked);
+
+    stats.start(A);
+    for (int i = 0; i < 4; i++) assertEquals(B, router.selectUrl("registry"));
+    assertEquals("http://default.test/fhir", router.selectUrl(null));
+    assertEquals("registry", props.serverNameFor(B + "/"));
+  }
+
+  @Test
+  void ejectsFailingReplicaUntilItRecovers() {
+    stats.finish(B, stats.start(B), true);
+    assertTrue(stats.healthy(B));
+    stats.finish(B, stats.start(B), true);
+    assertFalse(stats.healthy(B));
+    for (int i = 0; i < 4; i++) assertEquals(A, router.selectUrl("registry"));
+
+    // with every replica ejected, selection falls back to all of them
+    stats.finish(A, stats.start(A), true);
+    stats.finish(A, stats.start(A), true);
+    assertNotNull(router.selectUrl("registry"));
+
+    stats.finish(B, stats.start(B), false);
+    assertTrue(stats.healthy(B));
+    assertThrows(IllegalArgumentException.class, () -> router.selectUrl("unknown"));
+  }
+}
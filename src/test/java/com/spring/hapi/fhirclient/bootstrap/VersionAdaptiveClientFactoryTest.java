@@ -0,0 +1,123 @@
+package com.spring.hapi.fhirclient.bootstrap;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.spring.hapi.fhirclient.client.FhirContextRegistry;
+import com.spring.hapi.fhirclient.client.FhirRelease;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.CapabilityStoreProperties;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.FhirContextProperties;
+import com.spring.hapi.fhirclient.config.HttpTransportConfig;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
+import com.spring.hapi.fhirclient.config.RetryProperties;
+import com.spring.hapi.fhirclient.interceptors.InterceptorRegistryFactory;
+import com.spring.hapi.fhirclient.metadata.CapabilityStore;
+import com.spring.hapi.fhirclient.util.EndpointStats;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import com.spring.hapi.fhirclient.util.FhirRateLimits;
+import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionAdaptiveClientFactoryTest {
+
+  private static final String CAPABILITY = """
+    {"resourceType":"CapabilityStatement","status":"active","kind":"instance","fhirVersion":"4.0.1",
+     "format":["json"],"rest":[{"mode":"server","resource":[{"type":"Patient",
+       "searchParam":[{"name":"family","type":"string"}]}]}]}""";
+
+  private final WireMockServer server = new WireMockServer(options().dynamicPort());
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  @TempDir Path dir;
+  private String base;
+  private FhirClientProperties props;
+  private FhirContextRegistry contexts;
+
+  @BeforeEach
+  void start() {
+    server.start();
+    base = server.baseUrl() + "/fhir";
+    props = new FhirClientProperties(base, 0, 0, 0, null,
+      Map.of("local", new FhirClientProperties.Server(List.of(base), FhirClientProperties.Server.NO_AUTH, 0, 0, null, null)), null, null);
+    contexts = new FhirContextRegistry(new FhirContextProperties(List.of()), HttpTransportConfig.pooledHttpClient(props.http(), 1000, 1000));
+  }
+
+  @AfterEach
+  void stop() {
+    scheduler.shutdownNow();
+    server.stop();
+  }
+
+  private VersionAdaptiveClientFactory factory() {
+    FhirMetrics metrics = new FhirMetrics(new SimpleMeterRegistry(), new MetricsProperties(null, null, null, false));
+    ResilientExecutor resilient = new ResilientExecutor(new RetryProperties(false, 1, 1, 0, null, null, 0, null),
+      new ResilienceProperties(null, null), scheduler,
+      new FhirRateLimits(new RateLimitProperties(false, null, null, null, null), metrics), new EndpointStats(props), metrics);
+    return new VersionAdaptiveClientFactory(props, null, new InterceptorRegistryFactory(List.of()), resilient,
+      new RestTemplate(), contexts,
+      new CapabilityStore(new CapabilityStoreProperties(true, dir.toString())), metrics);
+  }
+
+  @Test
+  void detectsReleaseAndParsesCapabilityFromOneFetch() {
+    server.stubFor(get("/fhir/metadata").willReturn(okJson(CAPABILITY).withHeader("ETag", "W/\"1\"")));
+
+    VersionedClient vc = factory().create(base + "/");
+    assertEquals(FhirRelease.R4, vc.release());
+    assertSame(contexts.get(FhirRelease.R4), vc.context());
+    assertEquals("Patient", vc.capability().getRestFirstRep().getResourceFirstRep().getType());
+    server.verify(1, getRequestedFor(urlEqualTo("/fhir/metadata")));
+  }
+
+  @Test
+  void startsFromStoredStatementAndRefreshesConditionally() {
+    server.stubFor(get("/fhir/metadata").willReturn(okJson(CAPABILITY).withHeader("ETag", "W/\"1\"")));
+    factory().create(base);
+
+    server.resetRequests();
+    VersionAdaptiveClientFactory restarted = factory();
+    VersionedClient vc = restarted.createFromSnapshot(base).orElseThrow();
+    assertEquals(FhirRelease.R4, vc.release());
+    server.verify(0, getRequestedFor(urlEqualTo("/fhir/metadata")));
+
+    server.stubFor(get("/fhir/metadata").withHeader("If-None-Match", equalTo("W/\"1\""))
+      .willReturn(aResponse().withStatus(304)));
+    assertSame(vc, restarted.refreshCapability(vc));
+
+    server.stubFor(get("/fhir/metadata").withHeader("If-None-Match", equalTo("W/\"1\""))
+      .willReturn(okJson(CAPABILITY.replace("Patient", "Observation")).withHeader("ETag", "W/\"2\"")));
+    VersionedClient refreshed = restarted.refreshCapability(vc);
+    assertNotSame(vc, refreshed);
+    assertEquals("Observation", refreshed.capability().getRestFirstRep().getResourceFirstRep().getType());
+    assertEquals("Observation",
+      factory().createFromSnapshot(base).orElseThrow().capability().getRestFirstRep().getResourceFirstRep().getType());
+  }
+
+  @Test
+  void r5StatementIsReadIntoTheR4ModelDroppingR5OnlyElements() {
+    server.stubFor(get("/fhir/metadata").willReturn(okJson(CAPABILITY
+      .replace("\"4.0.1\"", "\"5.0.0\",\"versionAlgorithmString\":\"semver\"")
+      .replace("\"type\":\"Patient\",", "\"type\":\"Patient\",\"conditionalPatch\":true,"))));
+
+    VersionedClient vc = factory().create(base);
+    assertEquals(FhirRelease.R5, vc.release());
+    assertEquals("family", vc.capability().getRestFirstRep().getResourceFirstRep().getSearchParamFirstRep().getName());
+    assertTrue(vc.capabilityIndex().supportsSearchParam("Patient", "family"));
+  }
+}
@@ -0,0 +1,131 @@
+package com.spring.hapi.fhirclient.bulk;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.spring.hapi.fhirclient.client.FhirRelease;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.BulkExportProperties;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
+import com.spring.hapi.fhirclient.config.RetryProperties;
+import com.spring.hapi.fhirclient.config.SecurityProperties;
+import com.spring.hapi.fhirclient.security.OAuth2AccessTokenProvider;
+import com.spring.hapi.fhirclient.security.TokenManager;
+import com.spring.hapi.fhirclient.util.EndpointStats;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import com.spring.hapi.fhirclient.util.FhirRateLimits;
+import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkExportClientTest {
+
+  private final WireMockServer server = new WireMockServer(options().dynamicPort());
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  @TempDir Path downloads;
+  private BulkExportClient bulk;
+  private VersionedClient vc;
+
+  @BeforeEach
+  void start() {
+    server.start();
+    String base = server.baseUrl() + "/fhir";
+    FhirMetrics metrics = new FhirMetrics(new SimpleMeterRegistry(), new MetricsProperties(null, null, null, false));
+    FhirClientProperties fhir = new FhirClientProperties(base, 0, 0, 0, null, null, null, null);
+    SecurityProperties security = new SecurityProperties(true, "test", server.baseUrl() + "/token", "client", "secret",
+      "system/*.read", 0.8, Map.of());
+    RestTemplate rest = new RestTemplate();
+    TokenManager tokens = new TokenManager(security, rest, executor, scheduler, metrics);
+    ResilientExecutor resilient = new ResilientExecutor(new RetryProperties(true, 3, 1, 0, null, null, 0, null),
+      new ResilienceProperties(null, null), scheduler,
+      new FhirRateLimits(new RateLimitProperties(false, null, null, null, null), metrics), new EndpointStats(fhir), metrics);
+    bulk = new BulkExportClient(new BulkExportProperties(1, 5, null, 10_000, 2, downloads.toString(), false),
+      fhir, null, new OAuth2AccessTokenProvider(security, tokens), rest, resilient, executor);
+
+    FhirContext ctx = FhirContext.forR4Cached();
+    vc = new VersionedClient(ctx, ctx.newRestfulGenericClient(base), new CapabilityStatement(), FhirRelease.R4);
+
+    server.stubFor(post("/token").willReturn(okJson("{\"access_token\":\"tok\",\"expires_in\":3600}")));
+  }
+
+  @AfterEach
+  void stop() {
+    scheduler.shutdownNow();
+    executor.shutdownNow();
+    server.stop();
+  }
+
+  @Test
+  void kicksOffPollsAndStreamsEveryOutputFile() throws Exception {
+    String status = server.baseUrl() + "/status/1";
+    server.stubFor(get(urlPathEqualTo("/fhir/Group/g1/$export"))
+      .withQueryParam("_type", equalTo("Patient,Observation"))
+      .withHeader("Prefer", equalTo("respond-async"))
+      .withHeader("Authorization", equalTo("Bearer tok"))
+      .willReturn(aResponse().withStatus(202).withHeader("Content-Location", status)));
+    server.stubFor(get("/status/1").inScenario("job").whenScenarioStateIs(Scenario.STARTED)
+      .willReturn(aResponse().withStatus(202).withHeader("X-Progress", "50%").withHeader("Retry-After", "0"))
+      .willSetStateTo("done"));
+    server.stubFor(get("/status/1").inScenario("job").whenScenarioStateIs("done")
+      .willReturn(okJson("""
+        {"transactionTime":"2026-01-01T00:00:00Z","request":"x","requiresAccessToken":true,"extra":1,
+         "output":[{"type":"Patient","url":"%1$s/files/p.ndjson","count":2},
+                   {"type":"Observation","url":"%1$s/files/o.ndjson"}],
+         "error":[]}""".formatted(server.baseUrl()))));
+    server.stubFor(get("/files/p.ndjson").willReturn(ok(
+      "{\"resourceType\":\"Patient\",\"id\":\"p1\"}\n\n{\"resourceType\":\"Patient\",\"id\":\"p2\"}\n")));
+    server.stubFor(get("/files/o.ndjson").inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+      .willReturn(aResponse().withStatus(503)).willSetStateTo("up"));
+    server.stubFor(get("/files/o.ndjson").inScenario("flaky").whenScenarioStateIs("up")
+      .willReturn(ok("{\"resourceType\":\"Observation\",\"id\":\"o1\",\"status\":\"final\",\"code\":{\"text\":\"x\"}}")));
+
+    ConcurrentLinkedQueue<String> ids = new ConcurrentLinkedQueue<>();
+    long n = bulk.export(vc, BulkExportRequest.group("g1").withTypes("Patient", "Observation"),
+      (IBaseResource r) -> ids.add(r.getIdElement().getIdPart()));
+
+    assertEquals(3, n);
+    assertEquals(List.of("o1", "p1", "p2"), ids.stream().sorted().toList());
+    server.verify(2, getRequestedFor(urlEqualTo("/status/1")));
+    server.verify(2, getRequestedFor(urlEqualTo("/files/o.ndjson")).withHeader("Authorization", equalTo("Bearer tok")));
+    try (var left = Files.list(downloads)) {
+      assertEquals(0, left.count());
+    }
+  }
+
+  @Test
+  void rejectsSynchronousAnswerToKickOff() {
+    server.stubFor(get(urlPathEqualTo("/fhir/$export")).willReturn(okJson("{}")));
+    assertThrows(BulkExportClient.BulkExportException.class, () -> bulk.kickOff(vc, BulkExportRequest.system()));
+  }
+
+  @Test
+  void buildsKickOffQuery() {
+    assertEquals("Patient/$export?_outputFormat=application%2Ffhir%2Bndjson&_type=Observation"
+        + "&_since=2026-01-01T00%3A00%3A00Z&_typeFilter=Observation%3Fcategory%3Dlaboratory",
+      BulkExportRequest.patients().withTypes("Observation").withSince("2026-01-01T00:00:00Z")
+        .withTypeFilter("Observation?category=laboratory").toRelativeUrl());
+  }
+}
@@ -0,0 +1,53 @@
+package com.spring.hapi.fhirclient.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.client.apache.ApacheRestfulClientFactory;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.FhirContextProperties;
+import com.spring.hapi.fhirclient.config.HttpTransportConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FhirContextRegistryTest {
+
+  private final FhirClientProperties fhir = new FhirClientProperties("http://fhir.test/fhir", 0, 0, 0, null, null, null, null);
+  private final CloseableHttpClient shared = HttpTransportConfig.pooledHttpClient(fhir.http(), 1000, 1000);
+  private final FhirContextRegistry registry = new FhirContextRegistry(new FhirContextProperties(List.of()), shared);
+
+  @AfterEach
+  void close() throws Exception {
+    registry.shutdown();
+    shared.close();
+  }
+
+  @Test
+  void sharesOneConfiguredContextPerRelease() {
+    FhirContext r4 = registry.get(FhirRelease.R4);
+    assertSame(r4, registry.get(FhirRelease.R4));
+    assertNotSame(r4, registry.get(FhirRelease.R5));
+    assertEquals(ServerValidationModeEnum.NEVER, r4.getRestfulClientFactory().getServerValidationMode());
+    assertSame(shared, ((ApacheRestfulClientFactory) r4.getRestfulClientFactory()).getNativeHttpClient());
+
+    IRestfulClientFactory dedicated = registry.clientFactory(FhirRelease.R4,
+      HttpTransportConfig.pooledHttpClient(fhir.http(), 500, 500));
+    assertNotSame(r4.getRestfulClientFactory(), dedicated);
+    assertEquals(ServerValidationModeEnum.NEVER, dedicated.getServerValidationMode());
+    assertSame(r4, dedicated.newGenericClient("http://other.test/fhir").getFhirContext());
+  }
+
+  @Test
+  void prewarmScansKnownTypesAndSkipsUnknownOnes() throws Exception {
+    FhirContext r4 = registry.get(FhirRelease.R4);
+    registry.prewarm(List.of("Observation", "NoSuchResource")).get(10, TimeUnit.SECONDS);
+    assertNotNull(r4.getResourceDefinition("Observation"));
+    assertTrue(registry.prewarm(List.of("Observation")).isDone(), "already scanned types are not queued again");
+  }
+}
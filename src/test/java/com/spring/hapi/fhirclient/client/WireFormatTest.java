@@ -0,0 +1,69 @@
+package com.spring.hapi.fhirclient.client;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.spring.hapi.fhirclient.config.FhirClientProperties.Wire;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireFormatTest {
+  private static final FhirContext CTX = FhirContext.forR4Cached();
+  private static final String UNKNOWN_ELEMENT = "{\"resourceType\":\"Patient\",\"id\":\"p\",\"nickname\":\"x\"}";
+
+  @Test
+  void installsEncodingFormatParamAndPretty() {
+    WireMockServer server = new WireMockServer(options().dynamicPort());
+    server.start();
+    try {
+      server.stubFor(get(urlPathEqualTo("/fhir/Patient"))
+        .willReturn(okJson("{\"resourceType\":\"Bundle\",\"type\":\"searchset\"}")));
+      FhirContext ctx = FhirContext.forR4();
+      ctx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+      IGenericClient client = ctx.newRestfulGenericClient(server.baseUrl() + "/fhir");
+      new WireFormat(new Wire(null, true, false, null)).install(client);
+      client.search().forResource(Patient.class).returnBundle(Bundle.class).execute();
+      server.verify(getRequestedFor(urlPathEqualTo("/fhir/Patient"))
+        .withQueryParam("_format", equalTo("json"))
+        .withQueryParam("_pretty", equalTo("false"))
+        .withHeader("Accept", containing("application/fhir+json")));
+
+      new WireFormat(new Wire(null, null, null, null)).install(client);
+      server.resetRequests();
+      client.search().forResource(Patient.class).returnBundle(Bundle.class).execute();
+      server.verify(getRequestedFor(urlPathEqualTo("/fhir/Patient")).withQueryParam("_format", absent()));
+    } finally {
+      server.stop();
+    }
+
+    IGenericClient xml = CTX.newRestfulGenericClient("http://fhir.test/fhir");
+    new WireFormat(new Wire("XML", null, null, null)).install(xml);
+    assertEquals(EncodingEnum.XML, xml.getEncoding());
+    assertThrows(IllegalArgumentException.class, () -> new Wire("turtle", null, null, null));
+  }
+
+  @Test
+  void decoratesPlainRequestsLikeTheClient() {
+    assertEquals("Patient?name=x&_format=json&_pretty=false",
+      new WireFormat(new Wire(null, true, false, null)).decorate("Patient?name=x"));
+    assertEquals("Patient?_pretty=true", new WireFormat(new Wire(null, false, true, null)).decorate("Patient"));
+    assertEquals("Patient", new WireFormat(new Wire(null, null, null, null)).decorate("Patient"));
+    assertEquals("Patient?_pretty=true&_format=json", new WireFormat(new Wire(null, true, false, null)).decorate("Patient?_pretty=true"));
+  }
+
+  @Test
+  void parserErrorHandlingFollowsLenientFlag() {
+    Patient p = new WireFormat(new Wire(null, null, null, true)).newJsonParser(CTX).parseResource(Patient.class, UNKNOWN_ELEMENT);
+    assertEquals("p", p.getIdElement().getIdPart());
+    assertThrows(DataFormatException.class,
+      () -> new WireFormat(new Wire(null, null, null, false)).newJsonParser(CTX).parseResource(Patient.class, UNKNOWN_ELEMENT));
+  }
+}
@@ -0,0 +1,112 @@
+package com.spring.hapi.fhirclient.config;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpTransportConfigTest {
+
+  private final WireMockServer server = new WireMockServer(options().dynamicPort());
+  private final HttpTransportConfig config = new HttpTransportConfig();
+
+  @BeforeEach
+  void start() {
+    server.start();
+    server.stubFor(get("/metadata").willReturn(aResponse()
+      .withHeader("Content-Type", "application/json")
+      .withHeader("Content-Encoding", "gzip")
+      .withBody(gzip("{\"fhirVersion\":\"4.0.1\"}"))));
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop();
+  }
+
+  @Test
+  void pooledTemplateSendsHeadersAndDecodesGzip() throws Exception {
+    check(new FhirClientProperties(server.baseUrl(), 0, 0, 0, null, null, null, null));
+  }
+
+  @Test
+  void http2TemplateDecodesGzip() throws Exception {
+    check(new FhirClientProperties(server.baseUrl(), 0, 0, 0,
+      new FhirClientProperties.Http(0, 0, 0, 0, true, true, null), null, null, null));
+  }
+
+  @Test
+  void offersConfiguredEncodingsAndDecodesBrotli() throws Exception {
+    server.stubFor(get("/br").willReturn(aResponse()
+      .withHeader("Content-Type", "application/json")
+      .withHeader("Content-Encoding", "br")
+      .withBody(brotliStored("{\"resourceType\":\"Bundle\"}"))));
+    for (boolean http2 : new boolean[] {false, true}) {
+      FhirClientProperties props = new FhirClientProperties(server.baseUrl(), 0, 0, 0,
+        new FhirClientProperties.Http(0, 0, 0, 0, true, http2, List.of("br", "GZIP")), null, null, null);
+      try (CloseableHttpClient http = config.fhirHttpClient(props)) {
+        RestTemplate rest = HttpTransportConfig.restTemplate(props, http);
+        assertEquals("{\"resourceType\":\"Bundle\"}", rest.getForObject(server.baseUrl() + "/br", String.class), "http2=" + http2);
+      }
+    }
+    server.verify(2, getRequestedFor(urlEqualTo("/br")).withHeader("Accept-Encoding", matching("br, ?gzip")));
+    assertThrows(IllegalArgumentException.class, () -> new FhirClientProperties.Http(0, 0, 0, 0, true, false, List.of("zstd")));
+  }
+
+  private void check(FhirClientProperties props) throws Exception {
+    try (CloseableHttpClient http = config.fhirHttpClient(props)) {
+      RestTemplate rest = HttpTransportConfig.restTemplate(props, http);
+      HttpHeaders headers = new HttpHeaders();
+      headers.setBearerAuth("tok");
+      for (int i = 0; i < 2; i++) {
+        ResponseEntity<String> resp = rest.exchange(server.baseUrl() + "/metadata", HttpMethod.GET,
+          new HttpEntity<>(headers), String.class);
+        assertEquals("{\"fhirVersion\":\"4.0.1\"}", resp.getBody());
+      }
+      server.verify(2, getRequestedFor(urlEqualTo("/metadata"))
+        .withHeader("Authorization", equalTo("Bearer tok"))
+        .withHeader("Accept-Encoding", containing("gzip")));
+    }
+  }
+
+  /**
+   * {@code s} as a Brotli stream of one uncompressed meta-block (RFC 7932 section 9.2), so the
+   * test needs no Brotli encoder.
+   */
+  private static byte[] brotliStored(String s) {
+    byte[] data = s.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    // WINDOW = 16 (1 bit 0), ISLAST = 0, MNIBBLES = 4 (2 bits 0), MLEN - 1 (16 bits), ISUNCOMPRESSED = 1
+    int header = ((data.length - 1) << 4) | (1 << 20);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(header & 0xff);
+    out.write((header >> 8) & 0xff);
+    out.write((header >> 16) & 0xff);
+    out.writeBytes(data);
+    out.write(0x03); // ISLAST = 1, ISLASTEMPTY = 1
+    return out.toByteArray();
+  }
+
+  private static byte[] gzip(String s) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+      gz.write(s.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    } catch (java.io.IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return out.toByteArray();
+  }
+}
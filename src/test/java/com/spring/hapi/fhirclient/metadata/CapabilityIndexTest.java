@@ -0,0 +1,73 @@
+package com.spring.hapi.fhirclient.metadata;
+
+import com.spring.hapi.fhirclient.search.SearchDef;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapabilityIndexTest {
+
+  private static CapabilityStatement statement() {
+    CapabilityStatement cs = new CapabilityStatement();
+    var rest = cs.addRest();
+    rest.addInteraction().setCode(CapabilityStatement.SystemRestfulInteraction.BATCH);
+    var patient = rest.addResource().setType("Patient");
+    patient.addSearchParam().setName("identifier");
+    patient.addSearchParam().setName("family");
+    patient.addSearchInclude("Patient:general-practitioner");
+    patient.addSearchRevInclude("Provenance:target");
+    patient.addInteraction().setCode(CapabilityStatement.TypeRestfulInteraction.SEARCHTYPE);
+    return cs;
+  }
+
+  private static SearchDef def(String resource, Map<String, String> params) {
+    SearchDef d = new SearchDef();
+    d.setResource(resource);
+    d.setParams(params);
+    return d;
+  }
+
+  @Test
+  void indexesResourceAndSystemCapabilities() {
+    CapabilityIndex idx = CapabilityIndex.of(statement());
+    assertTrue(idx.supportsSearchParam("Patient", "identifier"));
+    assertFalse(idx.supportsSearchParam("Patient", "birthdate"));
+    assertTrue(idx.supportsInclude("Patient", "Patient:general-practitioner"));
+    assertTrue(idx.supportsRevInclude("Patient", "Provenance:target"));
+    assertTrue(idx.supportsInteraction("Patient", "search-type"));
+    assertTrue(idx.supportsSystemInteraction("batch"));
+    assertFalse(idx.supportsSystemInteraction("transaction"));
+    assertTrue(idx.searchParams("Observation").isEmpty());
+  }
+
+  @Test
+  void validatesAndMemoizesPerDefinition() {
+    CapabilityIndex idx = CapabilityIndex.of(statement());
+    SearchDef ok = def("Patient", Map.of("identifier", "a|b", "_has:Observation:subject:code", "x|y"));
+    SearchDef bad = def("Patient", Map.of("birthdate", "2020"));
+
+    assertNull(idx.validate(ok));
+    String problem = idx.validate(bad);
+    assertNotNull(problem);
+    assertSame(problem, idx.validate(bad));
+    assertThrows(IllegalArgumentException.class, () -> idx.assertSupported(bad));
+  }
+
+  @Test
+  void retainVerdictsDropsReplacedDefinitions() {
+    CapabilityIndex idx = CapabilityIndex.of(statement());
+    SearchDef before = def("Patient", Map.of("family", "x"));
+    SearchDef reloaded = def("Patient", Map.of("family", "y"));
+    idx.validate(before);
+    idx.validate(reloaded);
+    assertEquals(2, idx.verdictCount());
+
+    idx.retainVerdicts(List.of(reloaded));
+    assertEquals(1, idx.verdictCount());
+    assertNull(idx.validate(reloaded));
+  }
+}
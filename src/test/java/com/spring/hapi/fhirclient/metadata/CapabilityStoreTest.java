@@ -0,0 +1,63 @@
+package com.spring.hapi.fhirclient.metadata;
+
+import com.spring.hapi.fhirclient.config.CapabilityStoreProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapabilityStoreTest {
+
+  @TempDir Path dir;
+
+  @Test
+  void roundTripsSnapshotPerBaseUrl() {
+    CapabilityStore store = new CapabilityStore(new CapabilityStoreProperties(true, dir.toString()));
+    CapabilityStore.Snapshot snap = new CapabilityStore.Snapshot("4.0.1", "W/\"3\"", null,
+      "{\"resourceType\":\"CapabilityStatement\",\"fhirVersion\":\"4.0.1\",\n \"publisher\":\"Zürich\"}");
+    store.save("http://a.test/fhir", snap);
+
+    assertEquals(snap, store.load("http://a.test/fhir").orElseThrow());
+    assertTrue(store.load("http://b.test/fhir").isEmpty());
+
+    CapabilityStore.Snapshot newer = new CapabilityStore.Snapshot("4.0.1", "W/\"4\"", "Mon, 01 Jun 2026 00:00:00 GMT", "{}");
+    store.save("http://a.test/fhir", newer);
+    assertEquals(newer, store.load("http://a.test/fhir").orElseThrow());
+  }
+
+  @Test
+  void disabledStoreNeitherReadsNorWrites() throws Exception {
+    new CapabilityStore(new CapabilityStoreProperties(true, dir.toString()))
+      .save("http://a.test/fhir", new CapabilityStore.Snapshot(null, null, null, "{}"));
+    CapabilityStore off = new CapabilityStore(new CapabilityStoreProperties(false, dir.toString()));
+    off.save("http://b.test/fhir", new CapabilityStore.Snapshot(null, null, null, "{}"));
+
+    assertTrue(off.load("http://a.test/fhir").isEmpty());
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(1, files.count(), "only the enabled store wrote its snapshot");
+    }
+  }
+
+  @Test
+  void failedWriteKeepsNoTemporaryFiles() throws Exception {
+    CapabilityStore store = new CapabilityStore(new CapabilityStoreProperties(true, dir.toString()));
+    store.save("http://a.test/fhir", new CapabilityStore.Snapshot(null, null, null, "{}"));
+    Path target;
+    try (Stream<Path> files = Files.list(dir)) {
+      target = files.findFirst().orElseThrow();
+    }
+    // a non-empty directory in place of the snapshot makes the final move fail
+    Files.delete(target);
+    Files.createDirectories(target.resolve("blocker"));
+
+    store.save("http://a.test/fhir", new CapabilityStore.Snapshot(null, null, null, "{}"));
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(java.util.List.of(target), files.toList());
+    }
+    assertTrue(store.load("http://a.test/fhir").isEmpty());
+  }
+}
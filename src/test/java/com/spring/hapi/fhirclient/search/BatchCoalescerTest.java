@@ -0,0 +1,156 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.spring.hapi.fhirclient.client.FhirRelease;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.CoalescingProperties;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
+import com.spring.hapi.fhirclient.config.RetryProperties;
+import com.spring.hapi.fhirclient.util.EndpointStats;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import com.spring.hapi.fhirclient.util.FhirRateLimits;
+import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCoalescerTest {
+
+  private final WireMockServer server = new WireMockServer(options().dynamicPort());
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private ResilientExecutor resilient;
+  private VersionedClient vc;
+
+  @BeforeEach
+  void start() {
+    server.start();
+    String base = server.baseUrl() + "/fhir";
+    FhirMetrics metrics = new FhirMetrics(new SimpleMeterRegistry(), new MetricsProperties(null, null, null, false));
+    resilient = new ResilientExecutor(new RetryProperties(false, 1, 1, 0, null, null, 0, null),
+      new ResilienceProperties(null, null), scheduler,
+      new FhirRateLimits(new RateLimitProperties(false, null, null, null, null), metrics),
+      new EndpointStats(new FhirClientProperties(base, 0, 0, 0, null, null, null, null)), metrics);
+    FhirContext ctx = FhirContext.forR4();
+    ctx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    vc = new VersionedClient(ctx, ctx.newRestfulGenericClient(base), new CapabilityStatement(), FhirRelease.R4);
+  }
+
+  @AfterEach
+  void stop() {
+    scheduler.shutdownNow();
+    executor.shutdownNow();
+    server.stop();
+  }
+
+  private BatchCoalescer coalescer(long windowMs, int flushSize, int maxEntries) {
+    return new BatchCoalescer(new CoalescingProperties(true, windowMs, flushSize, maxEntries), resilient, executor, scheduler);
+  }
+
+  /** batch-response whose i-th entry is a search-set with {@code total = totals[i]}; a negative total is a 404. */
+  private static String batchResponse(int... totals) {
+    StringBuilder sb = new StringBuilder("{\"resourceType\":\"Bundle\",\"type\":\"batch-response\",\"entry\":[");
+    for (int i = 0; i < totals.length; i++) {
+      if (i > 0) sb.append(',');
+      sb.append(totals[i] < 0
+        ? "{\"response\":{\"status\":\"404 Not Found\"}}"
+        : "{\"resource\":{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"total\":" + totals[i]
+          + "},\"response\":{\"status\":\"200 OK\"}}");
+    }
+    return sb.append("]}").toString();
+  }
+
+  @Test
+  void windowCollectsEntriesAndRoutesResponsesByPosition() throws Exception {
+    server.stubFor(post("/fhir").willReturn(okJson(batchResponse(1, -1, 3))));
+    BatchCoalescer coalescer = coalescer(100, 20, 100);
+
+    CompletableFuture<Bundle> a = coalescer.submit(vc, "Patient?name=a");
+    CompletableFuture<Bundle> b = coalescer.submit(vc, "Patient?name=b");
+    CompletableFuture<Bundle> c = coalescer.submit(vc, "Patient?name=c");
+
+    assertEquals(1, a.get(5, TimeUnit.SECONDS).getTotal());
+    assertEquals(3, c.get(5, TimeUnit.SECONDS).getTotal());
+    ExecutionException failed = assertThrows(ExecutionException.class, () -> b.get(5, TimeUnit.SECONDS));
+    assertTrue(failed.getCause().getMessage().contains("Patient?name=b"));
+    server.verify(1, postRequestedFor(urlEqualTo("/fhir"))
+      .withRequestBody(matchingJsonPath("$.entry[0].request.url", equalTo("Patient?name=a")))
+      .withRequestBody(matchingJsonPath("$.entry[2].request.url", equalTo("Patient?name=c"))));
+  }
+
+  @Test
+  void flushSizeSendsAtOnceAndStartsAFreshWindow() throws Exception {
+    server.stubFor(post("/fhir").willReturn(okJson(batchResponse(1, 2))));
+    BatchCoalescer coalescer = coalescer(600, 2, 100);
+
+    long start = System.nanoTime();
+    CompletableFuture<Bundle> a = coalescer.submit(vc, "Patient?name=a");
+    coalescer.submit(vc, "Patient?name=b");
+    a.get(5, TimeUnit.SECONDS);
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 600, "full buffer waits for no window");
+
+    // the first batch's timer would have fired ~600 ms after "a"; the next entry must wait a whole window of its own
+    Thread.sleep(300);
+    server.stubFor(post("/fhir").willReturn(okJson(batchResponse(7))));
+    long second = System.nanoTime();
+    CompletableFuture<Bundle> c = coalescer.submit(vc, "Patient?name=c");
+    assertEquals(7, c.get(5, TimeUnit.SECONDS).getTotal());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - second) >= 550, "new batch keeps its own window");
+    server.verify(2, postRequestedFor(urlEqualTo("/fhir")));
+  }
+
+  @Test
+  void baseWithAndWithoutTrailingSlashShareOneBatch() throws Exception {
+    server.stubFor(post("/fhir/").willReturn(okJson(batchResponse(1, 2))));
+    server.stubFor(post("/fhir").willReturn(okJson(batchResponse(1, 2))));
+    FhirContext ctx = vc.context();
+    VersionedClient slashed = new VersionedClient(ctx, ctx.newRestfulGenericClient(server.baseUrl() + "/fhir/"),
+      new CapabilityStatement(), FhirRelease.R4);
+    BatchCoalescer coalescer = coalescer(100, 20, 100);
+
+    CompletableFuture<Bundle> a = coalescer.submit(vc, "Patient?name=a");
+    CompletableFuture<Bundle> b = coalescer.submit(slashed, "Patient?name=b");
+
+    assertEquals(1, a.get(5, TimeUnit.SECONDS).getTotal());
+    assertEquals(2, b.get(5, TimeUnit.SECONDS).getTotal());
+    assertEquals(1, server.getAllServeEvents().size());
+  }
+
+  @Test
+  void largeFlushIsSplitIntoMaxEntriesChunks() throws Exception {
+    server.stubFor(post("/fhir").withRequestBody(containing("name=a"))
+      .willReturn(okJson(batchResponse(1, 2))));
+    server.stubFor(post("/fhir").withRequestBody(containing("name=c"))
+      .willReturn(okJson(batchResponse(3))));
+    BatchCoalescer coalescer = coalescer(1_000, 3, 2);
+
+    CompletableFuture<Bundle> a = coalescer.submit(vc, "Patient?name=a");
+    CompletableFuture<Bundle> b = coalescer.submit(vc, "Patient?name=b");
+    CompletableFuture<Bundle> c = coalescer.submit(vc, "Patient?name=c");
+
+    assertEquals(1, a.get(5, TimeUnit.SECONDS).getTotal());
+    assertEquals(2, b.get(5, TimeUnit.SECONDS).getTotal());
+    assertEquals(3, c.get(5, TimeUnit.SECONDS).getTotal());
+    server.verify(2, postRequestedFor(urlEqualTo("/fhir")));
+    server.verify(1, postRequestedFor(urlEqualTo("/fhir")).withRequestBody(matchingJsonPath("$.entry.length()", equalTo("2"))));
+  }
+}
@@ -0,0 +1,96 @@
+package com.spring.hapi.fhirclient.search;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BundleEntrySpliteratorTest {
+
+  private final Map<String, Bundle> linked = new HashMap<>();
+  private final List<String> followed = new ArrayList<>();
+  private final AtomicInteger searches = new AtomicInteger();
+
+  /** Search-set holding patients {@code ids}, linking to {@code next} (reachable through the loader) when not null. */
+  private Bundle searchSet(String next, String... ids) {
+    Bundle b = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+    for (String id : ids) b.addEntry().setResource(new Patient().setId(id));
+    if (next != null) b.addLink().setRelation("next").setUrl(next);
+    return b;
+  }
+
+  /** Spliterator over {@code first} and the pages registered in {@link #linked}. */
+  private BundleEntrySpliterator over(Bundle first) {
+    return new BundleEntrySpliterator(() -> { searches.incrementAndGet(); return first; },
+      url -> { followed.add(url); return linked.get(url); });
+  }
+
+  private static List<String> ids(Stream<IBaseResource> s) {
+    return s.map(r -> r.getIdElement().getIdPart()).toList();
+  }
+
+  @Test
+  void isAnOrderedNonNullSourceOfUnknownSizeThatNeverSplits() {
+    linked.put("p2", searchSet("p3", "c", "d"));
+    linked.put("p3", searchSet(null, "e"));
+    BundleEntrySpliterator s = over(searchSet("p2", "a", "b"));
+
+    assertEquals(Spliterator.ORDERED | Spliterator.NONNULL, s.characteristics());
+    assertFalse(s.hasCharacteristics(Spliterator.SIZED));
+    assertEquals(Long.MAX_VALUE, s.estimateSize());
+    assertEquals(-1, s.getExactSizeIfKnown());
+    assertNull(s.trySplit());
+    assertEquals(0, searches.get(), "inspecting the spliterator runs no search");
+
+    // a parallel stream cannot split it, so pages are still walked once each, in order
+    assertEquals(List.of("a", "b", "c", "d", "e"), ids(StreamSupport.stream(s, true)));
+    assertEquals(List.of("p2", "p3"), followed);
+  }
+
+  @Test
+  void searchRunsOnlyWhenTheTerminalOperationStarts() {
+    Stream<IBaseResource> s = StreamSupport.stream(over(searchSet(null, "a", "b")), false).filter(r -> true);
+    assertEquals(0, searches.get());
+    assertEquals(2, s.count());
+    assertEquals(1, searches.get());
+  }
+
+  @Test
+  void shortCircuitingNeverRequestsPagesItDoesNotReach() {
+    linked.put("p2", searchSet("p3", "c", "d"));
+    linked.put("p3", searchSet(null, "e"));
+
+    assertEquals(List.of("a"), ids(StreamSupport.stream(over(searchSet("p2", "a", "b")), false).limit(1)));
+    assertEquals(List.of(), followed);
+
+    assertEquals(List.of("a", "b", "c"), ids(StreamSupport.stream(over(searchSet("p2", "a", "b")), false).limit(3)));
+    assertEquals(List.of("p2"), followed);
+  }
+
+  @Test
+  void skipsEntriesWithoutResourceAndReleasesTheOnesYielded() {
+    Bundle first = searchSet(null, "a", "b");
+    first.getEntry().add(1, new Bundle.BundleEntryComponent());
+    BundleEntrySpliterator s = over(first);
+
+    assertTrue(s.tryAdvance(r -> assertEquals("a", r.getIdElement().getIdPart())));
+    assertNull(first.getEntry().get(0));
+    assertNotNull(first.getEntry().get(2));
+
+    List<String> rest = new ArrayList<>();
+    s.forEachRemaining(r -> rest.add(r.getIdElement().getIdPart()));
+    assertEquals(List.of("b"), rest);
+    assertTrue(first.getEntry().stream().allMatch(e -> e == null));
+  }
+}
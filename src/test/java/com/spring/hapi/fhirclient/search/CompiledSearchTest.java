@@ -0,0 +1,128 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.gclient.ICriterionInternal;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledSearchTest {
+
+  /** Records the outgoing URL and aborts before any I/O. */
+  static final class Capture implements IClientInterceptor {
+    String url;
+    @Override public void interceptRequest(IHttpRequest request) {
+      url = request.getUri();
+      throw new IllegalStateException("captured");
+    }
+    @Override public void interceptResponse(IHttpResponse response) { }
+  }
+
+  static IGenericClient client;
+  static Capture capture;
+
+  @BeforeAll
+  static void setUp() {
+    FhirContext ctx = FhirContext.forR4();
+    ctx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    client = ctx.newRestfulGenericClient("http://localhost:1/fhir");
+    capture = new Capture();
+    client.registerInterceptor(capture);
+  }
+
+  static String urlOf(IQuery<Bundle> q) {
+    capture.url = null;
+    assertThrows(RuntimeException.class, q::execute);
+    return capture.url;
+  }
+
+  static SearchDef observations() {
+    SearchDef d = new SearchDef();
+    d.setResource("Observation");
+    Map<String, String> params = new LinkedHashMap<>();
+    params.put("code", "${codes}");
+    params.put("date", "ge${since}");
+    params.put("subject", "Patient/${patientId}");
+    params.put("category", "http://terminology.hl7.org/CodeSystem/observation-category\\|vital-signs");
+    d.setParams(params);
+    d.setIncludes(List.of("Observation:subject"));
+    d.setSort(List.of("-date", "code"));
+    d.setSummary("data");
+    d.setElements(List.of("id", "code"));
+    d.setCount(100);
+    return d;
+  }
+
+  @Test
+  void producesSameUrlAsQueryBuilder() {
+    SearchDef def = observations();
+    Map<String, Object> vars = new HashMap<>();
+    vars.put("codes", "http://loinc.org|8480-6,http://loinc.org|8462-4");
+    vars.put("since", "2024-01-01");
+    vars.put("patientId", "123");
+
+    String expected = urlOf(new QueryBuilder().build(client, vars, def));
+    String actual = urlOf(CompiledSearch.compile(def).bind(client, vars));
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  void relativeUrlMatchesHapiRendering() {
+    SearchDef def = observations();
+    def.setElements(List.of("code", "id"));
+    Map<String, Object> vars = Map.of("codes", "http://loinc.org|8480-6", "since", "2024-01-01", "patientId", "123");
+
+    String hapi = urlOf(CompiledSearch.compile(def).bind(client, vars));
+    String relative = CompiledSearch.compile(def).toRelativeUrl(client.getFhirContext(), vars);
+    assertEquals(hapi, "http://localhost:1/fhir/" + relative);
+  }
+
+  @Test
+  void serverBasePlusRelativeUrlIsTheUrlHapiSends() {
+    SearchDef def = observations();
+    def.setIncludes(List.of("Observation:subject", "Observation:performer"));
+    def.setRevIncludes(List.of("Provenance:target"));
+    def.setSort(List.of("-date"));
+    def.setSummary("count");
+    def.setElements(null);
+    def.setCount(null);
+    Map<String, Object> vars = Map.of("codes", "a,b c", "since", "2024-01-01", "patientId", "123");
+    CompiledSearch plan = CompiledSearch.compile(def);
+
+    String relative = plan.toRelativeUrl(client.getFhirContext(), vars);
+    String sent = urlOf(plan.bind(client, vars));
+    assertEquals(sent, FhirSearchService.searchKey(client.getServerBase(), relative));
+    assertEquals(sent, FhirSearchService.searchKey(client.getServerBase() + "/", relative));
+  }
+
+  @Test
+  void resolvesConstantParamsAtCompileTime() {
+    SearchDef def = observations();
+    CompiledSearch.Param category = CompiledSearch.Param.compile("category", def.getParams().get("category"));
+    ICriterionInternal fixed = (ICriterionInternal) category.fixed();
+    assertEquals("http://terminology.hl7.org/CodeSystem/observation-category|vital-signs",
+      fixed.getParameterValue(client.getFhirContext()));
+    assertSame(fixed, category.criterion(Map.of()));
+    assertNull(CompiledSearch.Param.compile("code", "${codes}").fixed());
+  }
+
+  @Test
+  void unboundVariablesAreLeftInPlace() {
+    CompiledSearch.Template t = CompiledSearch.Template.parse("${system}|${value}");
+    assertEquals("urn:mrn|${value}", t.render(Map.of("system", "urn:mrn")));
+    assertEquals("${system}|${value}", t.render(null));
+  }
+}
@@ -0,0 +1,143 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefetchingPageIteratorTest {
+
+  private final WireMockServer server = new WireMockServer(options().dynamicPort());
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private IGenericClient client;
+
+  @BeforeEach
+  void start() {
+    server.start();
+    FhirContext ctx = FhirContext.forR4();
+    ctx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    client = ctx.newRestfulGenericClient(server.baseUrl() + "/fhir");
+  }
+
+  @AfterEach
+  void stop() {
+    executor.shutdownNow();
+    server.stop();
+  }
+
+  private PrefetchingPageIterator iterator(Bundle first, int readAhead) {
+    return new PrefetchingPageIterator(first,
+      url -> client.loadPage().byUrl(url).andReturnBundle(Bundle.class).execute(), readAhead, executor);
+  }
+
+  /**
+   * Serves {@code /fhir?page=2..pages}, each answering after {@code delayMs}; returns page 1.
+   * Page {@code n} reports {@code total = n}.
+   */
+  private Bundle serve(int pages, int delayMs) {
+    for (int n = 2; n <= pages; n++) {
+      server.stubFor(get(urlEqualTo("/fhir?page=" + n)).willReturn(okJson(searchSet(n, n < pages)).withFixedDelay(delayMs)));
+    }
+    return client.getFhirContext().newJsonParser().parseResource(Bundle.class, searchSet(1, pages > 1));
+  }
+
+  private String searchSet(int n, boolean more) {
+    String next = more ? ",\"link\":[{\"relation\":\"next\",\"url\":\"" + server.baseUrl() + "/fhir?page=" + (n + 1) + "\"}]" : "";
+    return "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"total\":" + n + next + "}";
+  }
+
+  private int requests() {
+    return server.getAllServeEvents().size();
+  }
+
+
+  private static void await(IntSupplier value, int atLeast) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (value.getAsInt() < atLeast && System.nanoTime() < deadline) Thread.onSpinWait();
+  }
+
+  @Test
+  void nextPageIsFetchedWhileTheCallerWorksOnTheCurrentOne() throws Exception {
+    try (PrefetchingPageIterator it = iterator(serve(3, 200), 2)) {
+      assertEquals(1, it.next().getTotal());
+      Thread.sleep(500); // the caller "processes" page 1; the producer loads pages 2 and 3 meanwhile
+      assertEquals(2, requests());
+
+      long start = System.nanoTime();
+      assertEquals(2, it.next().getTotal());
+      assertEquals(3, it.next().getTotal());
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 150, "buffered pages need no round trip");
+      assertFalse(it.hasNext());
+    }
+  }
+
+  @Test
+  void readAheadBoundsHowFarTheProducerRunsAhead() throws Exception {
+    try (PrefetchingPageIterator it = iterator(serve(20, 0), 2)) {
+      assertEquals(1, it.next().getTotal());
+      await(this::requests, 3);
+      Thread.sleep(200);
+      // two buffered pages plus the one the producer holds while it waits for room
+      assertEquals(3, requests());
+
+      assertEquals(2, it.next().getTotal());
+      await(this::requests, 4);
+      Thread.sleep(200);
+      assertEquals(4, requests(), "one page taken frees room for exactly one more load");
+    }
+  }
+
+  @Test
+  void loadFailureSurfacesAfterThePagesBeforeIt() {
+    Bundle first = serve(5, 0);
+    server.stubFor(get(urlEqualTo("/fhir?page=3")).willReturn(aResponse().withStatus(500)));
+
+    try (PrefetchingPageIterator it = iterator(first, 2)) {
+      assertEquals(1, it.next().getTotal());
+      assertEquals(2, it.next().getTotal());
+      assertThrows(InternalErrorException.class, it::hasNext);
+      assertFalse(it.hasNext(), "a failed iterator is closed");
+    }
+    server.verify(0, getRequestedFor(urlEqualTo("/fhir?page=4")));
+  }
+
+  @Test
+  void closeStopsTheProducer() throws Exception {
+    PrefetchingPageIterator it = iterator(serve(20, 50), 2);
+    assertEquals(1, it.next().getTotal());
+    it.close();
+    assertFalse(it.hasNext());
+
+    Thread.sleep(200);
+    int afterClose = requests();
+    Thread.sleep(300);
+    assertEquals(afterClose, requests());
+    assertTrue(afterClose <= 1, "only a load already in flight is sent, and only once: " + afterClose);
+  }
+
+  @Test
+  void errorInTheLoaderReachesTheConsumerInsteadOfHangingIt() {
+    Error boom = new Error("page loader died");
+    Bundle first = serve(3, 0);
+    try (PrefetchingPageIterator it = new PrefetchingPageIterator(first, url -> { throw boom; }, 2, executor)) {
+      assertEquals(1, it.next().getTotal());
+      assertSame(boom, assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(Error.class, it::hasNext)));
+      assertFalse(it.hasNext());
+    }
+  }
+}
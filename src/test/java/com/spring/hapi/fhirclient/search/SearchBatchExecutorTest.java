@@ -0,0 +1,120 @@
+package com.spring.hapi.fhirclient.search;
+
+import com.spring.hapi.fhirclient.config.BatchProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchBatchExecutorTest {
+
+  /**
+   * Stand-in for the search service: search {@code "<server>:<n>"} runs on {@code server}, sleeps
+   * {@code n} ms and returns a Bundle with {@code total = n}; {@code n < 0} fails.
+   */
+  static final class FakeSearches extends FhirSearchService {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final Map<String, AtomicInteger> runningPerServer = new ConcurrentHashMap<>();
+    final Map<String, AtomicInteger> maxPerServer = new ConcurrentHashMap<>();
+
+    FakeSearches() {
+      super(null, null, null, null, null, null, null, null, null, new SimpleMeterRegistry(), null);
+    }
+
+    @Override
+    public String serverKey(String searchName) {
+      return searchName.substring(0, searchName.indexOf(':'));
+    }
+
+    @Override
+    public Bundle run(String searchName, Map<String, Object> variables, String tag) {
+      String server = serverKey(searchName);
+      int n = Integer.parseInt(searchName.substring(searchName.indexOf(':') + 1));
+      AtomicInteger perServer = runningPerServer.computeIfAbsent(server, k -> new AtomicInteger());
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      maxPerServer.computeIfAbsent(server, k -> new AtomicInteger())
+        .accumulateAndGet(perServer.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(Math.abs(n));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        perServer.decrementAndGet();
+        running.decrementAndGet();
+      }
+      if (n < 0) throw new IllegalStateException("search " + searchName + " failed");
+      return new Bundle().setTotal(n);
+    }
+  }
+
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final FakeSearches searches = new FakeSearches();
+
+  @AfterEach
+  void stop() {
+    executor.shutdownNow();
+  }
+
+  private static List<SearchRequest> requests(String... names) {
+    List<SearchRequest> out = new ArrayList<>();
+    for (String n : names) out.add(new SearchRequest(n, Map.of()));
+    return out;
+  }
+
+  private static void awaitAll(List<CompletableFuture<Bundle>> futures) {
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).handle((v, e) -> null).join();
+  }
+
+  @Test
+  void perServerLimitBoundsEachServerSeparately() {
+    SearchBatchExecutor batch = new SearchBatchExecutor(searches, new BatchProperties(10, 2), executor);
+    awaitAll(batch.runAll(requests("a:50", "a:50", "a:50", "a:50", "a:50", "b:50", "b:50", "b:50")));
+
+    assertEquals(2, searches.maxPerServer.get("a").get());
+    assertEquals(2, searches.maxPerServer.get("b").get());
+    assertTrue(searches.maxRunning.get() <= 4);
+  }
+
+  @Test
+  void globalLimitBoundsAllServersTogether() {
+    SearchBatchExecutor batch = new SearchBatchExecutor(searches, new BatchProperties(3, 10), executor);
+    awaitAll(batch.runAll(requests("a:50", "a:50", "a:50", "b:50", "b:50", "c:50", "c:50")));
+
+    assertEquals(3, searches.maxRunning.get());
+  }
+
+  @Test
+  void runAllKeepsRequestOrderAndIsolatesFailures() throws Exception {
+    SearchBatchExecutor batch = new SearchBatchExecutor(searches, new BatchProperties(10, 10), executor);
+    List<CompletableFuture<Bundle>> futures = batch.runAll(requests("a:150", "a:-10", "b:1"));
+
+    assertEquals(150, futures.get(0).get(5, TimeUnit.SECONDS).getTotal());
+    ExecutionException failed = assertThrows(ExecutionException.class, () -> futures.get(1).get(5, TimeUnit.SECONDS));
+    assertInstanceOf(IllegalStateException.class, failed.getCause());
+    assertEquals(1, futures.get(2).get(5, TimeUnit.SECONDS).getTotal());
+  }
+
+  @Test
+  void runAllByCompletionYieldsFastestFirst() {
+    SearchBatchExecutor batch = new SearchBatchExecutor(searches, new BatchProperties(10, 10), executor);
+    List<SearchResult> results = batch.runAllByCompletion(requests("a:300", "b:-150", "c:1")).toList();
+
+    assertEquals(List.of("c:1", "b:-150", "a:300"), results.stream().map(r -> r.request().searchName()).toList());
+    assertInstanceOf(IllegalStateException.class, results.get(1).error());
+    assertEquals(300, results.get(2).bundle().getTotal());
+  }
+}
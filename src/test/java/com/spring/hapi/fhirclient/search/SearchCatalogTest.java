@@ -0,0 +1,139 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.spring.hapi.fhirclient.bootstrap.ServerRouter;
+import com.spring.hapi.fhirclient.bootstrap.VersionedClientManager;
+import com.spring.hapi.fhirclient.client.FhirContextRegistry;
+import com.spring.hapi.fhirclient.client.FhirRelease;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.FhirContextProperties;
+import com.spring.hapi.fhirclient.config.SearchProperties;
+import com.spring.hapi.fhirclient.util.EndpointStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCatalogTest {
+
+  @TempDir Path dir;
+  private Path pack;
+  private SearchCatalog catalog;
+  private final List<Set<String>> changes = new ArrayList<>();
+  private final List<VersionedClient> clients = new ArrayList<>();
+
+  @BeforeEach
+  void load() throws Exception {
+    pack = dir.resolve("test.searches.yml");
+    write("""
+      searches:
+        a:
+          resource: Patient
+          params: { name: "${name}" }
+        b:
+          resource: Observation
+          params: { code: "${code}" }
+      """);
+    FhirClientProperties props = new FhirClientProperties("http://fhir.test/fhir", 0, 0, 0, null, null, null, null);
+    catalog = new SearchCatalog(new SearchProperties(List.of("file:" + pack), false, 0, null), new YamlSearchRepository(),
+      new QueryBuilder(), new ServerRouter(props, null, new EndpointStats(props)),
+      new VersionedClientManager(null, props) {
+        @Override
+        public Collection<VersionedClient> cached() {
+          return List.copyOf(clients);
+        }
+      }, new FhirContextRegistry(new FhirContextProperties(List.of()), null),
+      new SimpleMeterRegistry());
+    catalog.init();
+    catalog.addListener(changes::add);
+  }
+
+  private void write(String yaml) throws Exception {
+    long previous = Files.exists(pack) ? Files.getLastModifiedTime(pack).toMillis() : 0;
+    Files.writeString(pack, yaml);
+    Files.setLastModifiedTime(pack, FileTime.fromMillis(Math.max(previous + 2000, System.currentTimeMillis())));
+  }
+
+  @Test
+  void swapsInChangedPackAndReusesUnchangedPlans() throws Exception {
+    CompiledSearch a = catalog.plan("a");
+    assertFalse(catalog.reload(), "nothing changed");
+
+    write("""
+      searches:
+        a:
+          resource: Patient
+          params: { family: "${name}" }
+        c:
+          resource: Encounter
+      """);
+    assertTrue(catalog.reload());
+    assertEquals(Set.of("a", "c"), catalog.names());
+    assertNotSame(a, catalog.plan("a"));
+    assertEquals(List.of(Set.of("a", "b", "c")), changes);
+  }
+
+  @Test
+  void keepsPreviousDefinitionsWhenPackIsBroken() throws Exception {
+    CompiledSearch a = catalog.plan("a");
+    write("searches:\n  a: [unterminated\n");
+    assertFalse(catalog.reload());
+    assertFalse(catalog.reload(), "a broken file is not retried until it changes");
+
+    write("""
+      searches:
+        a:
+          resource: Patient
+          server: nowhere
+      """);
+    assertFalse(catalog.reload());
+    assertSame(a, catalog.plan("a"));
+    assertEquals(Set.of("a", "b"), catalog.names());
+    assertTrue(changes.isEmpty());
+  }
+
+  @Test
+  void keepsPreviousDefinitionsWhenASupportedSearchWouldBecomeUnsupported() throws Exception {
+    CapabilityStatement cs = new CapabilityStatement();
+    cs.addRest().addResource().setType("Patient").addSearchParam().setName("name");
+    FhirContext ctx = FhirContext.forR4Cached();
+    clients.add(new VersionedClient(ctx, ctx.newRestfulGenericClient("http://fhir.test/fhir"), cs, FhirRelease.R4));
+    CompiledSearch a = catalog.plan("a");
+
+    write("""
+      searches:
+        a:
+          resource: Patient
+          params: { family: "${name}" }
+        b:
+          resource: Observation
+          params: { code: "${code}" }
+      """);
+    assertFalse(catalog.reload(), "'a' is supported now and would not be after the reload");
+    assertSame(a, catalog.plan("a"));
+
+    write("""
+      searches:
+        a:
+          resource: Patient
+          params: { name: "${name}", _count: "5" }
+        b:
+          resource: Observation
+          params: { code: "${code}", date: "${date}" }
+      """);
+    assertTrue(catalog.reload(), "'b' was unsupported already, so it does not block the reload");
+    assertNotSame(a, catalog.plan("a"));
+  }
+}
@@ -0,0 +1,132 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.PagingProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
+import com.spring.hapi.fhirclient.config.RetryProperties;
+import com.spring.hapi.fhirclient.util.EndpointStats;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import com.spring.hapi.fhirclient.util.FhirRateLimits;
+import com.spring.hapi.fhirclient.util.ResilientExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchPagerTest {
+
+  private final WireMockServer server = new WireMockServer(options().dynamicPort());
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private SearchPager pager;
+  private IGenericClient client;
+
+  @BeforeEach
+  void start() {
+    server.start();
+    String base = server.baseUrl() + "/fhir";
+    FhirMetrics metrics = new FhirMetrics(new SimpleMeterRegistry(), new MetricsProperties(null, null, null, false));
+    ResilientExecutor resilient = new ResilientExecutor(new RetryProperties(true, 3, 1, 0, null, null, 0, null),
+      new ResilienceProperties(null, null), scheduler,
+      new FhirRateLimits(new RateLimitProperties(false, null, null, null, null), metrics),
+      new EndpointStats(new FhirClientProperties(base, 0, 0, 0, null, null, null, null)), metrics);
+    pager = new SearchPager(new PagingProperties(2), executor, executor, resilient, metrics);
+    FhirContext ctx = FhirContext.forR4();
+    ctx.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    client = ctx.newRestfulGenericClient(base);
+  }
+
+  @AfterEach
+  void stop() {
+    scheduler.shutdownNow();
+    executor.shutdownNow();
+    server.stop();
+  }
+
+  /** Search-set page {@code n} of {@code last}, linking to {@code ?_getpages=p&page=n+1} unless last. */
+  private Bundle page(int n, int last) {
+    Bundle b = new Bundle().setType(Bundle.BundleType.SEARCHSET).setTotal(n);
+    if (n < last) b.addLink().setRelation("next").setUrl(server.baseUrl() + "/fhir?_getpages=p&page=" + (n + 1));
+    return b;
+  }
+
+  @Test
+  void everyModeRetriesAPageThatFailsWith503() {
+    server.stubFor(get(urlEqualTo("/fhir?_getpages=p&page=2")).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+      .willReturn(aResponse().withStatus(503)).willSetStateTo("recovered"));
+    server.stubFor(get(urlEqualTo("/fhir?_getpages=p&page=2")).inScenario("flaky").whenScenarioStateIs("recovered")
+      .willReturn(okJson(client.getFhirContext().newJsonParser().encodeResourceToString(page(2, 2)))));
+
+    List<Integer> sync = new ArrayList<>();
+    pager.forEach(page(1, 2), client, p -> sync.add(p.getTotal()));
+    assertEquals(List.of(1, 2), sync);
+
+    server.setScenarioState("flaky", Scenario.STARTED);
+    List<Integer> prefetched = new ArrayList<>();
+    pager.forEachPrefetched(page(1, 2), client, p -> prefetched.add(p.getTotal()));
+    assertEquals(List.of(1, 2), prefetched);
+
+    server.setScenarioState("flaky", Scenario.STARTED);
+    List<Integer> iterated = new ArrayList<>();
+    pager.iterable(page(1, 2), client).forEach(p -> iterated.add(p.getTotal()));
+    assertEquals(List.of(1, 2), iterated);
+
+    server.verify(6, getRequestedFor(urlEqualTo("/fhir?_getpages=p&page=2")));
+  }
+
+  @Test
+  void forEachAsyncConsumesPagesInOrderOffTheCallingThread() throws Exception {
+    for (int n = 2; n <= 4; n++) {
+      server.stubFor(get(urlEqualTo("/fhir?_getpages=p&page=" + n))
+        .willReturn(okJson(client.getFhirContext().newJsonParser().encodeResourceToString(page(n, 4)))));
+    }
+    List<Integer> seen = new CopyOnWriteArrayList<>();
+    Thread caller = Thread.currentThread();
+    List<Thread> consumers = new CopyOnWriteArrayList<>();
+
+    CompletableFuture<Void> done = pager.forEachAsync(page(1, 4), client, p -> {
+      seen.add(p.getTotal());
+      consumers.add(Thread.currentThread());
+    });
+    done.get(5, TimeUnit.SECONDS);
+
+    assertEquals(List.of(1, 2, 3, 4), seen);
+    assertFalse(consumers.contains(caller));
+  }
+
+  @Test
+  void forEachAsyncFailsWithTheLoadErrorAfterRetries() {
+    server.stubFor(get(urlEqualTo("/fhir?_getpages=p&page=2")).willReturn(aResponse().withStatus(503)));
+    List<Integer> seen = new CopyOnWriteArrayList<>();
+
+    CompletableFuture<Void> done = pager.forEachAsync(page(1, 3), client, p -> seen.add(p.getTotal()));
+    ExecutionException e = assertThrows(ExecutionException.class, () -> done.get(5, TimeUnit.SECONDS));
+
+    assertInstanceOf(BaseServerResponseException.class, e.getCause());
+    assertEquals(List.of(1), seen);
+    server.verify(3, getRequestedFor(urlEqualTo("/fhir?_getpages=p&page=2")));
+  }
+}
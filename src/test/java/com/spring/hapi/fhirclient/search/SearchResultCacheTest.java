@@ -0,0 +1,67 @@
+package com.spring.hapi.fhirclient.search;
+
+import com.spring.hapi.fhirclient.config.CacheProperties;
+import com.spring.hapi.fhirclient.interceptors.ResponseValidatorsIntc.Validators;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final SearchResultCache cache = new SearchResultCache(new CacheProperties(true, 100, 3600), registry);
+
+  private double count(String result) {
+    return registry.get("fhir.search.cache.requests").tag("result", result).counter().count();
+  }
+
+  @Test
+  void keyIgnoresVariableOrder() {
+    assertEquals(SearchResultCache.key("s", Map.of("a", 1, "b", 2)),
+                 SearchResultCache.key("s", new java.util.LinkedHashMap<>(Map.of("b", 2, "a", 1))));
+  }
+
+  @Test
+  void keyEscapesSeparatorsInVariables() {
+    assertNotEquals(SearchResultCache.key("s", Map.of("a", "1&b=2")), SearchResultCache.key("s", Map.of("a", "1", "b", "2")));
+    assertNotEquals(SearchResultCache.key("s", Map.of("a=1&b", "2")), SearchResultCache.key("s", Map.of("a", "1&b=2")));
+
+    cache.get("s?x", Map.of("a", 1), 60, v -> SearchResultCache.Fetched.of(new Bundle().setTotal(1), null));
+    cache.get("s", Map.of("a", 1), 60, v -> SearchResultCache.Fetched.of(new Bundle().setTotal(2), null));
+    cache.invalidate(java.util.Set.of("s?x"));
+    assertEquals(2, cache.get("s", Map.of("a", 1), 60, v -> fail("other search must stay cached")).getTotal());
+    assertEquals(3, cache.get("s?x", Map.of("a", 1), 60, v -> SearchResultCache.Fetched.of(new Bundle().setTotal(3), null)).getTotal());
+  }
+
+  @Test
+  void servesFreshEntriesAsCopies() {
+    List<Validators> calls = new ArrayList<>();
+    Bundle first = cache.get("s", Map.of("x", 1), 60, v -> { calls.add(v); return SearchResultCache.Fetched.of(new Bundle().setTotal(3), null); });
+    Bundle second = cache.get("s", Map.of("x", 1), 60, v -> fail("should be served from cache"));
+
+    assertEquals(1, calls.size());
+    assertEquals(3, second.getTotal());
+    assertNotSame(first, second);
+    assertEquals(1, count("miss"));
+    assertEquals(1, count("hit"));
+  }
+
+  @Test
+  void revalidatesStaleEntriesWithValidators() {
+    Validators etag = new Validators("W/\"1\"", null);
+    cache.get("s", null, 0, v -> SearchResultCache.Fetched.of(new Bundle().setTotal(7), etag));
+
+    List<Validators> sent = new ArrayList<>();
+    Bundle b = cache.get("s", null, 60, v -> { sent.add(v); return SearchResultCache.Fetched.NOT_MODIFIED; });
+
+    assertEquals(List.of(etag), sent);
+    assertEquals(7, b.getTotal());
+    assertEquals(1, count("revalidated"));
+  }
+}
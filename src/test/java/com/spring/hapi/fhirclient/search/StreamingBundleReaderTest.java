@@ -0,0 +1,44 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingBundleReaderTest {
+  private static final FhirContext CTX = FhirContext.forR4();
+
+  @Test
+  void yieldsEachEntryResourceAndNextLink() throws Exception {
+    Bundle page = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+    page.addEntry().setResource(new Patient().addName(new org.hl7.fhir.r4.model.HumanName().setFamily("A")).setId("1"));
+    page.addEntry().setResource(new Patient().setId("2"));
+    page.addLink().setRelation("self").setUrl("http://x/fhir/Patient");
+    page.addLink().setRelation("next").setUrl("http://x/fhir?_getpages=abc");
+    byte[] json = CTX.newJsonParser().encodeResourceToString(page).getBytes(StandardCharsets.UTF_8);
+
+    List<IBaseResource> seen = new ArrayList<>();
+    String next = new StreamingBundleReader().read(new ByteArrayInputStream(json), CTX.newJsonParser(), seen::add);
+
+    assertEquals("http://x/fhir?_getpages=abc", next);
+    assertEquals(2, seen.size());
+    assertEquals("A", ((Patient) seen.get(0)).getNameFirstRep().getFamily());
+    assertEquals("2", seen.get(1).getIdElement().getIdPart());
+  }
+
+  @Test
+  void lastPageHasNoNextLink() throws Exception {
+    byte[] json = "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"total\":0}".getBytes(StandardCharsets.UTF_8);
+    List<IBaseResource> seen = new ArrayList<>();
+    assertNull(new StreamingBundleReader().read(new ByteArrayInputStream(json), CTX.newJsonParser(), seen::add));
+    assertTrue(seen.isEmpty());
+  }
+}
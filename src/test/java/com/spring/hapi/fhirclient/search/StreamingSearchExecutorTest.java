@@ -0,0 +1,109 @@
+package com.spring.hapi.fhirclient.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.spring.hapi.fhirclient.client.FhirRelease;
+import com.spring.hapi.fhirclient.client.VersionedClient;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import com.spring.hapi.fhirclient.config.SecurityProperties;
+import com.spring.hapi.fhirclient.security.OAuth2AccessTokenProvider;
+import com.spring.hapi.fhirclient.security.TokenManager;
+import com.spring.hapi.fhirclient.util.CallTarget;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import com.spring.hapi.fhirclient.util.FhirRateLimits;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CapabilityStatement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingSearchExecutorTest {
+
+  private final WireMockServer server = new WireMockServer(options().dynamicPort());
+  private final ExecutorService tokenExecutor = Executors.newVirtualThreadPerTaskExecutor();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private StreamingSearchExecutor executor;
+  private VersionedClient vc;
+  private VersionedClient open;
+
+  @BeforeEach
+  void start() {
+    server.start();
+    String base = server.baseUrl() + "/fhir";
+    FhirMetrics metrics = new FhirMetrics(new SimpleMeterRegistry(), new MetricsProperties(null, null, null, false));
+    String openBase = server.baseUrl() + "/open";
+    FhirClientProperties fhir = new FhirClientProperties(base, 0, 0, 0, null,
+      Map.of("open", new FhirClientProperties.Server(List.of(openBase), FhirClientProperties.Server.NO_AUTH, 0, 0, null, null)),
+      null, null);
+    SecurityProperties security = new SecurityProperties(true, "test", server.baseUrl() + "/token", "client", "secret",
+      null, 0.8, Map.of());
+    RestTemplate rest = new RestTemplate();
+    OAuth2AccessTokenProvider tokens = new OAuth2AccessTokenProvider(security,
+      new TokenManager(security, rest, tokenExecutor, scheduler, metrics));
+    executor = new StreamingSearchExecutor(tokens, rest,
+      new FhirRateLimits(new RateLimitProperties(false, null, null, null, null), metrics), fhir);
+    FhirContext ctx = FhirContext.forR4Cached();
+    vc = new VersionedClient(ctx, ctx.newRestfulGenericClient(base), new CapabilityStatement(), FhirRelease.R4);
+    open = new VersionedClient(ctx, ctx.newRestfulGenericClient(openBase), new CapabilityStatement(), FhirRelease.R4);
+
+    server.stubFor(post("/token").willReturn(okJson("{\"access_token\":\"tok\",\"expires_in\":3600}")));
+  }
+
+  @AfterEach
+  void stop() {
+    scheduler.shutdownNow();
+    tokenExecutor.shutdownNow();
+    server.stop();
+  }
+
+  @Test
+  void sendsEscapedQueryAndNextLinksUnchanged() {
+    SearchDef def = new SearchDef();
+    def.setResource("Patient");
+    def.setParams(Map.of("identifier", "${id}"));
+    String relative = CompiledSearch.compile(def).toRelativeUrl(vc.context(), Map.of("id", "urn:oid:1.2|42"));
+    assertEquals("Patient?identifier=urn%3Aoid%3A1.2%7C42", relative);
+
+    String next = server.baseUrl() + "/fhir?_getpages=a%7Cb";
+    server.stubFor(get(urlEqualTo("/fhir/Patient?identifier=urn%3Aoid%3A1.2%7C42")).willReturn(okJson(
+      "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"link\":[{\"relation\":\"next\",\"url\":\"" + next + "\"}],"
+        + "\"entry\":[{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"1\"}}]}")));
+    server.stubFor(get(urlEqualTo("/fhir?_getpages=a%7Cb")).willReturn(okJson(
+      "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"entry\":[{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"2\"}}]}")));
+
+    List<IBaseResource> seen = new ArrayList<>();
+    long n = executor.execute(vc, CallTarget.server("local"), relative, seen::add);
+
+    assertEquals(2, n);
+    assertEquals("2", seen.get(1).getIdElement().getIdPart());
+    server.verify(1, getRequestedFor(urlEqualTo("/fhir/Patient?identifier=urn%3Aoid%3A1.2%7C42"))
+      .withHeader("Authorization", equalTo("Bearer tok")));
+    server.verify(1, getRequestedFor(urlEqualTo("/fhir?_getpages=a%7Cb")).withHeader("Authorization", equalTo("Bearer tok")));
+  }
+
+  @Test
+  void sendsNoTokenToAServerWithoutAuth() {
+    server.stubFor(get(urlEqualTo("/open/Patient?name=x")).willReturn(okJson(
+      "{\"resourceType\":\"Bundle\",\"type\":\"searchset\",\"entry\":[{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"1\"}}]}")));
+
+    assertEquals(1, executor.execute(open, CallTarget.server("open"), "Patient?name=x", r -> { }));
+
+    server.verify(1, getRequestedFor(urlEqualTo("/open/Patient?name=x")).withoutHeader("Authorization"));
+    server.verify(0, postRequestedFor(urlEqualTo("/token")));
+  }
+}
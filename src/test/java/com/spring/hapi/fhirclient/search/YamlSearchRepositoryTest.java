@@ -0,0 +1,172 @@
+package com.spring.hapi.fhirclient.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class YamlSearchRepositoryTest {
+  private final YamlSearchRepository repo = new YamlSearchRepository();
+
+  private static ByteArrayResource pack(String yaml, String name) {
+    return new ByteArrayResource(yaml.getBytes(StandardCharsets.UTF_8), name);
+  }
+
+  @Test
+  void mapsNodesToDefinitions() {
+    Map<String, SearchDef> searches = repo.load(pack("""
+      pkg: "t"
+      searches:
+        cohort:
+          server: registry
+          resource: Patient
+          params:
+            identifier: "${system}|${value}"
+            _count: 5
+          count: 25
+          summary: true
+          sort: ["-date"]
+          elements: [id, name]
+          cacheTtlSeconds: 60
+        counted:
+          resource: Patient
+          summary: count
+          includes: []
+      """, "t"));
+
+    SearchDef cohort = searches.get("cohort");
+    assertEquals("registry", cohort.getServer());
+    assertEquals(Map.of("identifier", "${system}|${value}", "_count", "5"), cohort.getParams());
+    assertEquals(25, cohort.getCount());
+    assertEquals(Boolean.TRUE, cohort.getSummary());
+    assertEquals(List.of("id", "name"), cohort.getElements());
+    assertEquals(60, cohort.getCacheTtlSeconds());
+    assertEquals("count", searches.get("counted").getSummary());
+    assertEquals(List.of(), searches.get("counted").getIncludes());
+  }
+
+  @Test
+  void rejectsUnknownPropertiesWithTheirLine() {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> repo.load(pack("""
+      searches:
+        s:
+          resource: Patient
+          cuont: 5
+      """, "broken pack")));
+    assertTrue(e.getMessage().contains("broken pack"), e.getMessage());
+    assertTrue(e.getMessage().contains("line 4"), e.getMessage());
+    assertThrows(IllegalArgumentException.class, () -> repo.load(pack("searches:\n  s:\n    count: many\n", "p")));
+  }
+
+  @Test
+  void rejectsASearchDefinedTwiceInOnePack() {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> repo.load(pack("""
+      searches:
+        s:
+          resource: Patient
+        s:
+          resource: Observation
+      """, "dup pack")));
+    assertTrue(e.getMessage().contains("search 's' is defined twice"), e.getMessage());
+    assertTrue(e.getMessage().contains("line 4"), e.getMessage());
+  }
+
+  @Test
+  void expandsMergeKeysWithOwnKeysWinning() {
+    Map<String, SearchDef> searches = repo.load(pack("""
+      searches:
+        active: &defaults
+          server: registry
+          resource: Patient
+          count: 50
+          params: &params { active: "true", _count: 10 }
+        recent:
+          <<: *defaults
+          count: 5
+        filtered:
+          <<: [*defaults, { summary: count }]
+          resource: Observation
+          params:
+            <<: *params
+            code: "${code}"
+      """, "anchored"));
+
+    SearchDef recent = searches.get("recent");
+    assertEquals("registry", recent.getServer());
+    assertEquals("Patient", recent.getResource());
+    assertEquals(5, recent.getCount());
+    assertEquals(Map.of("active", "true", "_count", "10"), recent.getParams());
+    SearchDef filtered = searches.get("filtered");
+    assertEquals("Observation", filtered.getResource());
+    assertEquals(50, filtered.getCount());
+    assertEquals("count", filtered.getSummary());
+    assertEquals(Map.of("active", "true", "_count", "10", "code", "${code}"), filtered.getParams());
+  }
+
+  @Test
+  void laterPackWinsAndFilesAreLoadedInLocationOrder(@TempDir Path dir) throws Exception {
+    for (int i = 0; i < 8; i++) {
+      Files.writeString(dir.resolve("p" + i + ".searches.yml"),
+        "searches:\n  shared:\n    resource: Patient\n    count: " + i + "\n  own-" + i + ":\n    resource: Patient\n");
+    }
+    Map<String, SearchDef> all = repo.loadAll(List.of("file:" + dir + "/p*.searches.yml"));
+    assertEquals(9, all.size());
+
+    Map<String, Map<String, SearchDef>> ordered = new LinkedHashMap<>();
+    ordered.put("a", repo.load(pack("searches:\n  s:\n    resource: Patient\n    count: 1\n", "a")));
+    ordered.put("b", repo.load(pack("searches:\n  s:\n    resource: Patient\n    count: 2\n", "b")));
+    assertEquals(2, repo.merge(ordered).get("s").getCount());
+    assertTrue(YamlSearchRepository.sameDefinition(ordered.get("a").get("s"), ordered.get("a").get("s")));
+    assertFalse(YamlSearchRepository.sameDefinition(ordered.get("a").get("s"), ordered.get("b").get("s")));
+  }
+
+  @Test
+  void brokenPackFailsTheParseWithItsOwnError(@TempDir Path dir) throws Exception {
+    for (int i = 0; i < 4; i++) {
+      Files.writeString(dir.resolve("p" + i + ".searches.yml"), "searches:\n  s" + i + ":\n    resource: Patient\n");
+    }
+    Files.writeString(dir.resolve("p2.searches.yml"), "searches:\n  s2:\n    resuorce: Patient\n");
+
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+      () -> repo.parse(repo.resolve(List.of("file:" + dir + "/p*.searches.yml"))));
+    assertTrue(e.getMessage().contains("p2.searches.yml"), e.getMessage());
+  }
+
+  @Test
+  void snapshotRoundTripsDefinitions(@TempDir Path dir) throws Exception {
+    Map<String, SearchDef> searches = repo.load(pack("""
+      searches:
+        s:
+          resource: Observation
+          path: /Observation
+          params: { code: "${code}", date: "ge${since}" }
+          count: 100
+          summary: data
+          sort: ["-date"]
+          includes: ["Observation:subject"]
+        t:
+          resource: Patient
+          summary: true
+      """, "p"));
+    Path file = dir.resolve("cache/packs.bin");
+    SearchCatalog.Stamp stamp = new SearchCatalog.Stamp(42, 7);
+    PackSnapshotCache.write(file, Map.of("p", new SearchCatalog.Pack(stamp, searches)));
+
+    SearchCatalog.Pack read = PackSnapshotCache.read(file).get("p");
+    assertEquals(stamp, read.stamp());
+    assertEquals(searches.keySet(), read.searches().keySet());
+    searches.forEach((name, def) -> assertTrue(YamlSearchRepository.sameDefinition(def, read.searches().get(name)), name));
+
+    Files.writeString(file, "not a snapshot");
+    assertTrue(PackSnapshotCache.read(file).isEmpty());
+    assertTrue(PackSnapshotCache.read(dir.resolve("missing.bin")).isEmpty());
+  }
+}
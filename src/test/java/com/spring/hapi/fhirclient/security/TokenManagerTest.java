@@ -0,0 +1,72 @@
+package com.spring.hapi.fhirclient.security;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.SecurityProperties;
+import com.spring.hapi.fhirclient.util.FhirMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenManagerTest {
+
+  private final WireMockServer idp = new WireMockServer(options().dynamicPort());
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private TokenManager tokens;
+
+  @BeforeEach
+  void start() {
+    idp.start();
+    idp.stubFor(post("/token").inScenario("rotate").whenScenarioStateIs(Scenario.STARTED)
+      .willReturn(okJson("{\"access_token\":\"a\",\"expires_in\":2}")).willSetStateTo("second"));
+    idp.stubFor(post("/token").inScenario("rotate").whenScenarioStateIs("second")
+      .willReturn(okJson("{\"access_token\":\"b\",\"expires_in\":3600}")));
+    SecurityProperties props = new SecurityProperties(true, "test", idp.baseUrl() + "/token", "client", "secret",
+      "system/*.read", 0.5, Map.of("bulk", new SecurityProperties.Registration(null, null, null, "system/Group.read")));
+    tokens = new TokenManager(props, new RestTemplate(), executor, scheduler,
+      new FhirMetrics(new SimpleMeterRegistry(), new MetricsProperties(null, null, null, false)));
+  }
+
+  @AfterEach
+  void stop() {
+    scheduler.shutdownNow();
+    executor.shutdownNow();
+    idp.stop();
+  }
+
+  @Test
+  void servesCachedTokenAndRenewsInBackground() throws Exception {
+    assertEquals("a", tokens.token(TokenManager.DEFAULT).orElseThrow());
+    assertEquals("a", tokens.token(TokenManager.DEFAULT).orElseThrow());
+    idp.verify(1, postRequestedFor(urlEqualTo("/token")));
+
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (!"b".equals(tokens.token(TokenManager.DEFAULT).orElseThrow()) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals("b", tokens.token(TokenManager.DEFAULT).orElseThrow());
+    idp.verify(2, postRequestedFor(urlEqualTo("/token")));
+  }
+
+  @Test
+  void extraRegistrationInheritsEndpointAndUsesItsScope() {
+    assertTrue(tokens.token("bulk").isPresent());
+    idp.verify(postRequestedFor(urlEqualTo("/token"))
+      .withRequestBody(containing("scope=system%2FGroup.read"))
+      .withRequestBody(containing("client_id=client")));
+    assertThrows(IllegalArgumentException.class, () -> tokens.token("nope"));
+  }
+}
@@ -0,0 +1,54 @@
+package com.spring.hapi.fhirclient.util;
+
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  void growsWhileFastAndBacksOffOnLatencyOrDrops() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter("s", new ResilienceProperties.Limiter(true, 4, 2, 8, 0.5, 2.0, 1), now::get);
+
+    // saturate the limit with fast calls: the limit climbs additively
+    for (int round = 0; round < 40; round++) {
+      int n = limiter.limit();
+      long[] starts = new long[n];
+      for (int i = 0; i < n; i++) starts[i] = limiter.acquire();
+      now.addAndGet(10);
+      for (long s : starts) limiter.release(s, false);
+    }
+    assertEquals(8, limiter.limit());
+
+    // a call far slower than the baseline halves it once, not once per slow call
+    long a = limiter.acquire();
+    long b = limiter.acquire();
+    now.addAndGet(100);
+    limiter.release(a, false);
+    limiter.release(b, false);
+    assertEquals(4, limiter.limit());
+
+    now.addAndGet(1_000);
+    limiter.release(limiter.acquire(), true);
+    assertEquals(2, limiter.limit());
+    now.addAndGet(1_000);
+    limiter.release(limiter.acquire(), true);
+    assertEquals(2, limiter.limit(), "never below min-limit");
+  }
+
+  @Test
+  void rejectsWhenNoPermitFreesUpInTime() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter("s", new ResilienceProperties.Limiter(true, 2, 2, 2, null, null, 1));
+    limiter.acquire();
+    limiter.acquire();
+    assertThrows(AdaptiveLimiter.LimitExceededException.class, limiter::acquire);
+    limiter.cancel();
+    limiter.acquire();
+    assertEquals(2, limiter.inFlight());
+  }
+}
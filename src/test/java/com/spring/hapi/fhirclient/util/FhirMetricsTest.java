@@ -0,0 +1,54 @@
+package com.spring.hapi.fhirclient.util;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FhirMetricsTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  @Test
+  void timersUseConfiguredSloBuckets() {
+    FhirMetrics metrics = new FhirMetrics(registry, new MetricsProperties(true, List.of(10L, 100L), null, false));
+    metrics.recordSearch("patients", "Patient", FhirMetrics.SUCCESS, TimeUnit.MILLISECONDS.toNanos(50));
+
+    Timer t = registry.get("fhir.search").tag("search", "patients").tag("resource", "Patient").tag("outcome", "success").timer();
+    assertEquals(1, t.count());
+    CountAtBucket[] buckets = t.takeSnapshot().histogramCounts();
+    assertEquals(2, buckets.length);
+    assertEquals(0, buckets[0].count());
+    assertEquals(1, buckets[1].count());
+  }
+
+  @Test
+  void timedRecordsFailureOutcomeAndRethrows() {
+    FhirMetrics metrics = new FhirMetrics(registry, new MetricsProperties(null, null, null, false));
+    assertThrows(ResourceNotFoundException.class, () -> metrics.timed(() -> {
+      throw new ResourceNotFoundException("gone");
+    }, metrics::recordClientCreate));
+    assertEquals(1, registry.get("fhir.client.create").tag("outcome", "client_error").timer().count());
+
+    assertEquals("server_error", FhirMetrics.outcome(new CompletionException(new InternalErrorException("x"))));
+    assertEquals("error", FhirMetrics.outcome(new IllegalStateException()));
+    assertEquals("success", FhirMetrics.outcome(null));
+  }
+
+  @Test
+  void disabledMetricsRegisterNothing() {
+    FhirMetrics metrics = new FhirMetrics(registry, new MetricsProperties(false, null, null, false));
+    metrics.recordHttp("GET", 200, 1024, 1_000);
+    metrics.recordRetryEvent("search-exec", "retry");
+    assertTrue(registry.getMeters().isEmpty());
+  }
+}
@@ -0,0 +1,66 @@
+package com.spring.hapi.fhirclient.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MpscRingBufferTest {
+
+  @Test
+  void drainsInOrderAndRejectsWhenFull() {
+    MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(3);
+    assertEquals(4, buffer.capacity());
+    for (int i = 0; i < 4; i++) assertTrue(buffer.offer(i));
+    assertFalse(buffer.offer(99));
+
+    List<Integer> out = new ArrayList<>();
+    assertEquals(2, buffer.drain(out::add, 2));
+    assertTrue(buffer.offer(4));
+    assertEquals(3, buffer.drain(out::add, 10));
+    assertEquals(List.of(0, 1, 2, 3, 4), out);
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  void concurrentProducersLoseNothingThatWasAccepted() throws Exception {
+    MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(1024);
+    int producers = 4;
+    int perProducer = 20_000;
+    ExecutorService pool = Executors.newFixedThreadPool(producers);
+    CountDownLatch done = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      int base = p * perProducer;
+      pool.submit(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          while (!buffer.offer(base + i)) Thread.onSpinWait();
+        }
+        done.countDown();
+      });
+    }
+
+    Set<Integer> seen = new HashSet<>();
+    int[] lastPerProducer = new int[producers];
+    Arrays.fill(lastPerProducer, -1);
+    while (seen.size() < producers * perProducer) {
+      buffer.drain(v -> {
+        assertTrue(seen.add(v));
+        int p = v / perProducer;
+        assertTrue(v > lastPerProducer[p], "per-producer order");
+        lastPerProducer[p] = v;
+      }, 512);
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    pool.shutdown();
+    assertEquals(0, buffer.size());
+  }
+}
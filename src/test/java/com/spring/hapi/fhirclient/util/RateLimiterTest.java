@@ -0,0 +1,61 @@
+package com.spring.hapi.fhirclient.util;
+
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties.Limit;
+import com.spring.hapi.fhirclient.config.RateLimitProperties.Mode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicLong now = new AtomicLong(1_000 * MS);
+
+  @Test
+  void allowsBurstThenSpacesRequestsAtTheRate() {
+    RateLimiter limiter = new RateLimiter("s", new Limit(10, 3, Mode.BLOCK, 1_000), now::get);
+    assertEquals(0, limiter.reserve());
+    assertEquals(0, limiter.reserve());
+    assertEquals(0, limiter.reserve());
+    assertEquals(100 * MS, limiter.reserve());
+    assertEquals(200 * MS, limiter.reserve());
+
+    // after an idle second the full burst is available again
+    now.addAndGet(1_300 * MS);
+    assertEquals(0, limiter.reserve());
+  }
+
+  @Test
+  void failFastReservesNothingWhenEmpty() {
+    RateLimiter limiter = new RateLimiter("s", new Limit(10, 1, Mode.FAIL_FAST, 0), now::get);
+    assertEquals(0, limiter.reserve());
+    assertEquals(-1, limiter.reserve());
+    now.addAndGet(100 * MS);
+    assertEquals(0, limiter.reserve());
+    assertThrows(RateLimiter.RateLimitExceededException.class, limiter::acquire);
+  }
+
+  @Test
+  void appliesServerSearchAndTagBuckets() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    FhirMetrics metrics = new FhirMetrics(registry, new MetricsProperties(null, null, null, false));
+    RateLimitProperties props = new RateLimitProperties(true, null,
+      Map.of("http://fhir.test/r4/", new Limit(1_000, 100, null, 0)),
+      Map.of("patients", new Limit(1_000, 100, null, 0)),
+      Map.of("bulk", new Limit(1, 1, Mode.FAIL_FAST, 0)));
+    FhirRateLimits limits = new FhirRateLimits(props, metrics);
+
+    limits.acquire(new CallTarget("http://fhir.test/r4", "patients", "bulk"));
+    assertThrows(RateLimiter.RateLimitExceededException.class,
+      () -> limits.acquire(new CallTarget("http://fhir.test/r4", "patients", "bulk")));
+    limits.acquire(new CallTarget("http://other.test", "other", null));
+    assertEquals(1, registry.get("fhir.ratelimit.throttled").tag("scope", "tag").tag("outcome", "rejected").counter().count());
+  }
+}
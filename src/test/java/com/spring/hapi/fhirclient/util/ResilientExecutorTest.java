@@ -0,0 +1,174 @@
+package com.spring.hapi.fhirclient.util;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.spring.hapi.fhirclient.config.FhirClientProperties;
+import com.spring.hapi.fhirclient.config.MetricsProperties;
+import com.spring.hapi.fhirclient.config.RateLimitProperties;
+import com.spring.hapi.fhirclient.config.ResilienceProperties;
+import com.spring.hapi.fhirclient.config.RetryProperties;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientExecutorTest {
+  private static final String SERVER = "http://fhir.test/fhir";
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  @AfterEach
+  void stop() {
+    scheduler.shutdownNow();
+  }
+
+  private ResilientExecutor executor(RetryProperties retry, ResilienceProperties resilience) {
+    FhirMetrics metrics = new FhirMetrics(registry, new MetricsProperties(null, null, null, false));
+    return new ResilientExecutor(retry, resilience, scheduler,
+      new FhirRateLimits(new RateLimitProperties(false, null, null, null, null), metrics),
+      new EndpointStats(new FhirClientProperties(SERVER, 0, 0, 0, null, null, null, null)), metrics);
+  }
+
+  @Test
+  void retriesServerDistressButNotClientErrors() {
+    ResilientExecutor exec = executor(new RetryProperties(true, 3, 1, 0, null, null, 0, null), new ResilienceProperties(null, null));
+
+    AtomicInteger calls = new AtomicInteger();
+    String result = exec.run("t", SERVER, () -> {
+      if (calls.incrementAndGet() < 3) throw BaseServerResponseException.newInstance(503, "busy");
+      return "ok";
+    });
+    assertEquals("ok", result);
+    assertEquals(3, calls.get());
+
+    calls.set(0);
+    assertThrows(ResourceNotFoundException.class, () -> exec.run("t", SERVER, () -> {
+      calls.incrementAndGet();
+      throw new ResourceNotFoundException("gone");
+    }));
+    assertEquals(1, calls.get());
+
+    calls.set(0);
+    assertThrows(BaseServerResponseException.class, () -> exec.runOnce(SERVER, () -> {
+      calls.incrementAndGet();
+      throw BaseServerResponseException.newInstance(503, "busy");
+    }));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  void backoffIsJitteredExponentialUnlessServerSendsRetryAfter() {
+    ResilientExecutor exec = executor(new RetryProperties(true, 5, 100, 300, 2.0, 0.5, 5_000, null), new ResilienceProperties(null, null));
+    BaseServerResponseException busy = BaseServerResponseException.newInstance(503, "busy");
+    for (int i = 0; i < 20; i++) {
+      long first = exec.backoffMs(1, busy);
+      long third = exec.backoffMs(3, busy);
+      assertTrue(first >= 50 && first <= 100, "first=" + first);
+      assertTrue(third >= 150 && third <= 300, "third (capped)=" + third);
+    }
+
+    busy.addResponseHeader("Retry-After", "2");
+    assertEquals(2_000, exec.backoffMs(1, busy));
+    busy.getResponseHeaders().put("Retry-After", List.of("3600"));
+    assertEquals(5_000, exec.backoffMs(1, busy));
+
+    long now = System.currentTimeMillis();
+    String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10));
+    long parsed = ResilientExecutor.parseRetryAfter(date, now);
+    assertTrue(parsed > 8_000 && parsed <= 10_000, "parsed=" + parsed);
+    assertEquals(-1, ResilientExecutor.parseRetryAfter("soon", now));
+  }
+
+  @Test
+  void openBreakerFailsFastWithoutCallingServer() {
+    ResilienceProperties resilience = new ResilienceProperties(
+      new ResilienceProperties.CircuitBreaker(true, 50, 0, 4, 4, 60_000, 1), null);
+    ResilientExecutor exec = executor(new RetryProperties(true, 1, 1, 0, null, null, 0, null), resilience);
+
+    AtomicInteger calls = new AtomicInteger();
+    for (int i = 0; i < 4; i++) {
+      assertThrows(BaseServerResponseException.class, () -> exec.run("t", SERVER, () -> {
+        calls.incrementAndGet();
+        throw BaseServerResponseException.newInstance(502, "bad gateway");
+      }));
+    }
+    assertThrows(CallNotPermittedException.class, () -> exec.run("t", SERVER, () -> calls.incrementAndGet()));
+    assertEquals(4, calls.get());
+    assertEquals("ok", exec.run("t", "http://other.test/fhir", () -> "ok"));
+    assertEquals(1, registry.get("fhir.circuit.transitions").tag("state", "open").counter().count());
+  }
+
+  @Test
+  void baseUrlWithAndWithoutTrailingSlashShareOneBreakerAndLimiter() {
+    ResilienceProperties resilience = new ResilienceProperties(
+      new ResilienceProperties.CircuitBreaker(true, 50, 0, 4, 4, 60_000, 1), null);
+    ResilientExecutor exec = executor(new RetryProperties(true, 1, 1, 0, null, null, 0, null), resilience);
+
+    for (int i = 0; i < 4; i++) {
+      String server = i % 2 == 0 ? SERVER + "/" : SERVER;
+      assertThrows(BaseServerResponseException.class, () -> exec.run("t", server, () -> {
+        throw BaseServerResponseException.newInstance(502, "bad gateway");
+      }));
+    }
+    assertThrows(CallNotPermittedException.class, () -> exec.run("t", SERVER, () -> "ok"));
+    assertThrows(CallNotPermittedException.class, () -> exec.run("t", SERVER + "/", () -> "ok"));
+    assertEquals(1, registry.get("fhir.circuit.transitions").counters().size());
+    assertEquals(1, registry.find("fhir.client.concurrency.limit").gauges().size());
+    assertEquals(SERVER, registry.get("fhir.client.concurrency.limit").gauge().getId().getTag("server"));
+  }
+
+  @Test
+  void runAsyncRetriesOnTheSchedulerWithoutBlockingTheCaller() throws Exception {
+    ResilientExecutor exec = executor(new RetryProperties(true, 3, 1, 0, null, null, 0, null), new ResilienceProperties(null, null));
+    ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+    try {
+      AtomicInteger calls = new AtomicInteger();
+      Set<Thread> threads = ConcurrentHashMap.newKeySet();
+      CompletableFuture<String> ok = exec.runAsync("t", SERVER, () -> {
+        threads.add(Thread.currentThread());
+        if (calls.incrementAndGet() < 3) throw BaseServerResponseException.newInstance(503, "busy");
+        return "ok";
+      }, pool);
+      assertEquals("ok", ok.get(5, TimeUnit.SECONDS));
+      assertEquals(3, calls.get());
+      assertFalse(threads.contains(Thread.currentThread()));
+
+      calls.set(0);
+      CompletableFuture<String> exhausted = exec.runAsync("t", SERVER, () -> {
+        calls.incrementAndGet();
+        throw BaseServerResponseException.newInstance(503, "busy");
+      }, pool);
+      ExecutionException e = assertThrows(ExecutionException.class, () -> exhausted.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(BaseServerResponseException.class, e.getCause());
+      assertEquals(3, calls.get());
+
+      calls.set(0);
+      CompletableFuture<String> notFound = exec.runAsync("t", SERVER, () -> {
+        calls.incrementAndGet();
+        throw new ResourceNotFoundException("gone");
+      }, pool);
+      e = assertThrows(ExecutionException.class, () -> notFound.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(ResourceNotFoundException.class, e.getCause());
+      assertEquals(1, calls.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
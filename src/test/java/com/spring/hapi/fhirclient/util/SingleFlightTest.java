@@ -0,0 +1,97 @@
+package com.spring.hapi.fhirclient.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+  private final AtomicInteger shared = new AtomicInteger();
+  private final SingleFlight<String, StringBuilder> flight = new SingleFlight<>(shared::incrementAndGet);
+
+  @Test
+  void concurrentCallersShareOneExecutionAndGetCopies() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      CompletableFuture<StringBuilder> leader = CompletableFuture.supplyAsync(() -> flight.run("k", () -> {
+        calls.incrementAndGet();
+        await(release);
+        return new StringBuilder("page");
+      }, StringBuilder::new), pool);
+      while (flight.inFlight() == 0) Thread.onSpinWait();
+
+      List<CompletableFuture<StringBuilder>> followers = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        followers.add(CompletableFuture.supplyAsync(
+          () -> flight.run("k", () -> fail("should join the leader"), StringBuilder::new), pool));
+      }
+      while (shared.get() < 3) Thread.onSpinWait();
+      release.countDown();
+
+      StringBuilder first = leader.get(5, TimeUnit.SECONDS);
+      assertEquals(1, calls.get());
+      for (CompletableFuture<StringBuilder> f : followers) {
+        StringBuilder b = f.get(5, TimeUnit.SECONDS);
+        assertEquals("page", b.toString());
+        assertNotSame(first, b);
+      }
+      assertEquals(0, flight.inFlight());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void failureReachesCallerAndNextCallStartsFresh() {
+    assertThrows(IllegalStateException.class,
+      () -> flight.run("k", () -> { throw new IllegalStateException("boom"); }, StringBuilder::new));
+    assertEquals("ok", flight.run("k", () -> new StringBuilder("ok"), StringBuilder::new).toString());
+    assertEquals(0, shared.get());
+  }
+
+  @Test
+  void errorInLeaderReleasesFollowersAndKey() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      CompletableFuture<StringBuilder> leader = CompletableFuture.supplyAsync(() -> flight.run("k", () -> {
+        await(release);
+        throw new AssertionError("leader died");
+      }, StringBuilder::new), pool);
+      while (flight.inFlight() == 0) Thread.onSpinWait();
+      CompletableFuture<StringBuilder> follower = CompletableFuture.supplyAsync(
+        () -> flight.run("k", () -> fail("should join the leader"), StringBuilder::new), pool);
+      while (shared.get() < 1) Thread.onSpinWait();
+      release.countDown();
+
+      ExecutionException led = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+      ExecutionException joined = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(AssertionError.class, led.getCause());
+      assertInstanceOf(AssertionError.class, joined.getCause());
+      assertEquals(0, flight.inFlight());
+      assertEquals("ok", flight.run("k", () -> new StringBuilder("ok"), StringBuilder::new).toString());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}